@@ -21,6 +21,7 @@ package org.apache.sling.servlets.post;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -82,6 +83,16 @@ public abstract class AbstractJakartaPostResponse implements JakartaPostResponse
      */
     private final Map<String, Object> properties = new HashMap<String, Object>();
 
+    /**
+     * Supplier of the location not computed yet
+     */
+    private Supplier<String> locationSupplier;
+
+    /**
+     * Supplier of the parent location not computed yet
+     */
+    private Supplier<String> parentLocationSupplier;
+
     // ---------- Settings for the response ------------------------------------
 
     /**
@@ -131,13 +142,23 @@ public abstract class AbstractJakartaPostResponse implements JakartaPostResponse
      * {@inheritDoc}
      */
     public String getLocation() {
+        resolveLocations();
         return getProperty(PN_LOCATION, String.class);
     }
 
     public void setLocation(String location) {
+        this.locationSupplier = null;
         setProperty(PN_LOCATION, location);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLocationSupplier(Supplier<String> location) {
+        this.locationSupplier = location;
+    }
+
     /**
      * Returns the parent location of the modification. this is the externalized
      * form of the parent node of the current path.
@@ -145,13 +166,50 @@ public abstract class AbstractJakartaPostResponse implements JakartaPostResponse
      * @return the location of the modification.
      */
     public String getParentLocation() {
+        resolveLocations();
         return getProperty(PN_PARENT_LOCATION, String.class);
     }
 
     public void setParentLocation(String parentLocation) {
+        this.parentLocationSupplier = null;
         setProperty(PN_PARENT_LOCATION, parentLocation);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setParentLocationSupplier(Supplier<String> parentLocation) {
+        this.parentLocationSupplier = parentLocation;
+    }
+
+    /**
+     * Resets the response to its initial state, such that the instance can
+     * be reused for another request. Extensions keeping additional state
+     * must overwrite this method and call the super implementation.
+     * @since 2.6.0
+     */
+    public void reset() {
+        this.properties.clear();
+        this.locationSupplier = null;
+        this.parentLocationSupplier = null;
+    }
+
+    /**
+     * Computes the locations set by a supplier, such that they are available
+     * as properties.
+     */
+    private void resolveLocations() {
+        final Supplier<String> location = this.locationSupplier;
+        if (location != null) {
+            setLocation(location.get());
+        }
+        final Supplier<String> parentLocation = this.parentLocationSupplier;
+        if (parentLocation != null) {
+            setParentLocation(parentLocation.get());
+        }
+    }
+
     /**
      * Sets the title of the response message
      *
@@ -279,6 +337,7 @@ public abstract class AbstractJakartaPostResponse implements JakartaPostResponse
      * prepares the response properties
      */
     private void prepare(final HttpServletResponse response, final boolean setStatus) {
+        resolveLocations();
         String path = getPath();
         if (getProperty(PN_STATUS_CODE) == null) {
             if (getError() != null) {
@@ -19,6 +19,7 @@
 package org.apache.sling.servlets.post;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -77,6 +78,11 @@ public abstract class AbstractJakartaPostResponseWrapper implements JakartaPostR
         return getWrapped().getLocation();
     }
 
+    @Override
+    public void setLocationSupplier(Supplier<String> location) {
+        getWrapped().setLocationSupplier(location);
+    }
+
     @Override
     public void setParentLocation(String parentLocation) {
         getWrapped().setParentLocation(parentLocation);
@@ -87,6 +93,11 @@ public abstract class AbstractJakartaPostResponseWrapper implements JakartaPostR
         return getWrapped().getParentLocation();
     }
 
+    @Override
+    public void setParentLocationSupplier(Supplier<String> parentLocation) {
+        getWrapped().setParentLocationSupplier(parentLocation);
+    }
+
     @Override
     public void setTitle(String title) {
         getWrapped().setTitle(title);
@@ -236,12 +236,20 @@ public abstract class AbstractPostOperation implements PostOperation {
     /**
      * Get the versioning configuration.
      * @param request The http request
-     * @return The versioning configuration
+     * @return The versioning configuration, which can be modified
      */
     protected VersioningConfiguration getVersioningConfiguration(SlingHttpServletRequest request) {
         VersioningConfiguration versionableConfiguration =
                 (VersioningConfiguration) request.getAttribute(VersioningConfiguration.class.getName());
-        return versionableConfiguration != null ? versionableConfiguration : new VersioningConfiguration();
+        if (versionableConfiguration == null) {
+            return new VersioningConfiguration();
+        }
+        if (!versionableConfiguration.isModifiable()) {
+            // the post servlet stores a shared configuration, replace it with a copy
+            versionableConfiguration = versionableConfiguration.clone();
+            request.setAttribute(VersioningConfiguration.class.getName(), versionableConfiguration);
+        }
+        return versionableConfiguration;
     }
 
     /**
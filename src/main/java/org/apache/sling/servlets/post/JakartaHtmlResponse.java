@@ -95,6 +95,16 @@ public class JakartaHtmlResponse extends AbstractJakartaPostResponse {
         changes.append(");<br/>");
     }
 
+    /**
+     * {@inheritDoc}
+     * @since 2.6.0
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        changes.setLength(0);
+    }
+
     // ---------- Response Generation ------------------------------------------
 
     /**
@@ -76,6 +76,19 @@ public class JakartaJSONResponse extends AbstractJakartaPostResponse {
         changes.add(change);
     }
 
+    /**
+     * {@inheritDoc}
+     * @since 2.6.0
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        json.clear();
+        jsonCached.clear();
+        changes.clear();
+        error = null;
+    }
+
     @Override
     public void setError(Throwable error) {
         this.error = error;
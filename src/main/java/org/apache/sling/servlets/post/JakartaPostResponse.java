@@ -19,6 +19,7 @@
 package org.apache.sling.servlets.post;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -94,6 +95,20 @@ public interface JakartaPostResponse {
      */
     public String getLocation();
 
+    /**
+     * Sets the location of this modification to be computed by the supplier
+     * when it is read for the first time. This allows to avoid externalizing
+     * the path if the location is not used, for example when redirecting.
+     * <p>
+     * The default implementation calls the supplier immediately.
+     *
+     * @param location the supplier of the location
+     * @since 2.6.0
+     */
+    default void setLocationSupplier(final Supplier<String> location) {
+        setLocation(location.get());
+    }
+
     /**
      * Sets the parent location of the modification. This is the externalized
      * form of the parent node of the {@link #getPath() current path}.
@@ -110,6 +125,20 @@ public interface JakartaPostResponse {
      */
     public String getParentLocation();
 
+    /**
+     * Sets the parent location of the modification to be computed by the
+     * supplier when it is read for the first time.
+     * <p>
+     * The default implementation calls the supplier immediately.
+     *
+     * @param parentLocation the supplier of the parent location
+     * @since 2.6.0
+     * @see #setLocationSupplier(Supplier)
+     */
+    default void setParentLocationSupplier(final Supplier<String> parentLocation) {
+        setParentLocation(parentLocation.get());
+    }
+
     /**
      * Sets the title of the response message
      *
@@ -28,5 +28,15 @@ import org.osgi.annotation.versioning.ConsumerType;
  */
 @ConsumerType
 public interface JakartaPostResponseCreator {
+
+    /**
+     * Name of the optional service property listing the content types of the
+     * responses created by the service (value is "sling.post.response.contentTypes").
+     * If the property is set, the service is only called for requests accepting
+     * at least one of these content types.
+     * @since 2.6.0
+     */
+    String PROP_CONTENT_TYPES = "sling.post.response.contentTypes";
+
     JakartaPostResponse createPostResponse(SlingJakartaHttpServletRequest req);
 }
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import jakarta.servlet.ServletContext;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * The <code>MimeTypeResolver</code> interface defines a service API to be
+ * implemented by service providers determining the mime type stored with
+ * uploaded files. The Sling default POST servlet uses the service with the
+ * highest ranking for regular and streamed uploads. If no such service is
+ * registered, it uses its own resolver mapping file names with the servlet
+ * context, which can optionally detect well known file formats.
+ * @since 2.6.0
+ */
+@ConsumerType
+public interface MimeTypeResolver {
+
+    /**
+     * The mime type of uploads whose type is not known.
+     */
+    String MT_APP_OCTET = "application/octet-stream";
+
+    /**
+     * Returns the mime type of an upload from the content type declared by
+     * the client or, if that is missing or {@link #MT_APP_OCTET}, from the
+     * name of the uploaded file.
+     *
+     * @param servletContext the servlet context used to map file names to mime types, may be <code>null</code>
+     * @param declaredType the content type declared by the client, may be <code>null</code>
+     * @param fileName the name of the uploaded file, may be <code>null</code>
+     * @return the mime type, or <code>null</code> if it is to be detected from
+     *         the content by {@link #detectMimeType(InputStream)}
+     */
+    String getMimeType(ServletContext servletContext, String declaredType, String fileName);
+
+    /**
+     * Detects the mime type from the first bytes of the content. The stream
+     * must support mark and is reset before returning, such that the content
+     * can be read from its beginning.
+     *
+     * @param in the content of the uploaded file
+     * @return the mime type, {@link #MT_APP_OCTET} if it cannot be detected
+     * @throws IOException if the content cannot be read
+     */
+    String detectMimeType(InputStream in) throws IOException;
+}
@@ -38,6 +38,16 @@ import org.osgi.annotation.versioning.ConsumerType;
 @ConsumerType
 public interface SlingJakartaPostProcessor {
 
+    /**
+     * The name of the service property marking a post processor as critical
+     * (value is "sling.post.processor.critical"). Post processors are critical
+     * unless this property is set to <code>false</code>. A post processor which
+     * is not critical may be skipped by the servlet for some time if it exceeds
+     * the configured time budget.
+     * @since 2.6.0
+     */
+    String PROP_CRITICAL = "sling.post.processor.critical";
+
     /**
      * Process the current request.
      * The post processor can inspect the list of changes and perform additional
@@ -540,6 +540,74 @@ public interface SlingPostConstants {
      */
     public static final String SUFFIX_COMPLETED = "@Completed";
 
+    /**
+     * Name of the request parameter suffix supplying the digest of an uploaded
+     * file as <code>&lt;algorithm&gt;=&lt;value&gt;</code>, for example
+     * <code>SHA-256=&lt;base64 or hex value&gt;</code>. The upload is rejected
+     * if the digest does not match the uploaded content.
+     * @since 2.6.0
+     */
+    public static final String SUFFIX_DIGEST = "@Digest";
+
+    /**
+     * Name of the request parameter controlling how the changes of the
+     * operation are reported in the response (value is ":changes"). The
+     * parameter is one of {@link #CHANGES_VALUE_FULL} (the default),
+     * {@link #CHANGES_VALUE_SUMMARY} or {@link #CHANGES_VALUE_NONE}.
+     * @since 2.6.0
+     */
+    public static final String RP_CHANGES = RP_PREFIX + "changes";
+
+    /**
+     * Value of the {@link #RP_CHANGES} parameter to report every change
+     * (value is "full"). This is the default.
+     * @since 2.6.0
+     */
+    public static final String CHANGES_VALUE_FULL = "full";
+
+    /**
+     * Value of the {@link #RP_CHANGES} parameter to report only the first and
+     * the last changes followed by a <code>summary</code> change with the
+     * number of changes per type as <code>type:count</code> arguments
+     * (value is "summary").
+     * @since 2.6.0
+     */
+    public static final String CHANGES_VALUE_SUMMARY = "summary";
+
+    /**
+     * Value of the {@link #RP_CHANGES} parameter to report no changes at all
+     * (value is "none").
+     * @since 2.6.0
+     */
+    public static final String CHANGES_VALUE_NONE = "none";
+
+    /**
+     * Optional request parameter of the modify operation: the number of
+     * modifications after which the pending changes are committed while the
+     * request is processed, instead of a single commit at the end. The value
+     * is limited by the configuration of the servlet, the parameter is ignored
+     * if incremental commits are not enabled.
+     * <p>
+     * If the operation fails, the changes committed so far are kept. The
+     * number of commits and the last committed modification are reported in
+     * the JSON response.
+     * @since 2.6.0
+     */
+    public static final String RP_COMMIT_INTERVAL = RP_PREFIX + "commitInterval";
+
+    /**
+     * Optional request parameter: if set to <code>true</code> the operation
+     * is run asynchronously. The request is answered with status 202 and the
+     * location of a job resource, which records the status of the operation,
+     * the number of changes per change type and the final status code. The
+     * parameter is ignored if asynchronous operations are not enabled in the
+     * configuration of the servlet.
+     * <p>
+     * Requests with file uploads cannot be run asynchronously.
+     * @since 2.6.0
+     */
+    public static final String RP_ASYNC = RP_PREFIX + "async";
+
     /**
      * Name of the request parameter indicating request operation is applicable
      * to chunks.
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * The <code>SlingPostMetrics</code> interface defines a service API to be
+ * implemented by service providers collecting metrics of the Sling default
+ * POST servlet. The servlet uses the service with the highest ranking and
+ * reports the duration of each request and of its phases, and counters like
+ * the number of changes and the number of bytes uploaded.
+ * <p>
+ * All metrics are reported with the name of the operation, which is the
+ * value of the {@link SlingPostConstants#RP_OPERATION} parameter if it names
+ * a registered operation, {@link #OPERATION_MODIFY} respectively
+ * {@link #OPERATION_STREAMED_UPLOAD} for requests without that parameter, or
+ * {@link #OPERATION_UNKNOWN} otherwise. Implementations are called on the
+ * request threads and must not block.
+ * @since 2.6.0
+ */
+@ConsumerType
+public interface SlingPostMetrics {
+
+    /**
+     * The name of the default create and modify operation.
+     */
+    String OPERATION_MODIFY = "modify";
+
+    /**
+     * The name of the operation handling streamed uploads.
+     */
+    String OPERATION_STREAMED_UPLOAD = "streamedUpload";
+
+    /**
+     * The name reported for requests asking for an operation which is not
+     * registered.
+     */
+    String OPERATION_UNKNOWN = "unknown";
+
+    /**
+     * Phase in which the operation performs its changes.
+     */
+    String PHASE_RUN = "run";
+
+    /**
+     * Phase in which the post processors are called.
+     */
+    String PHASE_PROCESSORS = "processors";
+
+    /**
+     * Phase in which the changes are committed.
+     */
+    String PHASE_COMMIT = "commit";
+
+    /**
+     * Phase in which the nodes are checked in.
+     */
+    String PHASE_CHECKIN = "checkin";
+
+    /**
+     * Phase in which the response is sent.
+     */
+    String PHASE_SEND = "send";
+
+    /**
+     * Phase in which an uploaded file is written, reported once per file.
+     */
+    String PHASE_UPLOAD = "upload";
+
+    /**
+     * Counter of the changes made by the operation.
+     */
+    String COUNT_CHANGES = "changes";
+
+    /**
+     * Counter of the bytes of the request body.
+     */
+    String COUNT_REQUEST_BYTES = "requestBytes";
+
+    /**
+     * Counter of the bytes of an uploaded file, reported once per file.
+     */
+    String COUNT_UPLOAD_BYTES = "uploadBytes";
+
+    /**
+     * Counter of the bytes of the form fields read by streamed uploads.
+     */
+    String COUNT_FORM_FIELD_BYTES = "formFieldBytes";
+
+    /**
+     * Counter of the commits done by streamed uploads.
+     */
+    String COUNT_COMMITS = "commits";
+
+    /**
+     * Counter of the post processors skipped because they exceeded their time budget.
+     */
+    String COUNT_SKIPPED_PROCESSORS = "skippedProcessors";
+
+    /**
+     * Counter of the retries of an operation after commit conflicts.
+     */
+    String COUNT_RETRIES = "retries";
+
+    /**
+     * Counter of the requests merged into a single run of the modify operation.
+     */
+    String COUNT_COALESCED_REQUESTS = "coalescedRequests";
+
+    /**
+     * Counter of the requests which had to wait for the operation limit,
+     * reported with the value 1 for each such request.
+     */
+    String COUNT_QUEUED = "queued";
+
+    /**
+     * Counter of the requests rejected because the operation limit was reached.
+     */
+    String COUNT_REJECTED = "rejected";
+
+    /**
+     * Gauge of the number of requests currently waiting for the limits of
+     * the operation.
+     */
+    String GAUGE_QUEUE_DEPTH = "queueDepth";
+
+    /**
+     * Called when a request has been handled.
+     * @param operation The name of the operation.
+     * @param status The status code of the response.
+     * @param durationNanos The duration of the request in nanoseconds.
+     */
+    void onRequest(String operation, int status, long durationNanos);
+
+    /**
+     * Called when a phase of a request has been completed.
+     * @param operation The name of the operation.
+     * @param phase The phase, one of the <code>PHASE_</code> constants.
+     * @param durationNanos The duration of the phase in nanoseconds.
+     */
+    void onPhase(String operation, String phase, long durationNanos);
+
+    /**
+     * Called when a post processor has been called.
+     * @param operation The name of the operation.
+     * @param processor The name of the post processor, which is its class name.
+     * @param durationNanos The duration of the call in nanoseconds.
+     */
+    void onProcessor(String operation, String processor, long durationNanos);
+
+    /**
+     * Called to report a counter of a request.
+     * @param operation The name of the operation.
+     * @param name The name of the counter, one of the <code>COUNT_</code> constants.
+     * @param value The value of the counter for the request.
+     */
+    void onCount(String operation, String name, long value);
+
+    /**
+     * Called when the current value of a gauge has changed.
+     * @param operation The name of the operation.
+     * @param name The name of the gauge, one of the <code>GAUGE_</code> constants.
+     * @param value The current value of the gauge.
+     */
+    void onGauge(String operation, String name, long value);
+}
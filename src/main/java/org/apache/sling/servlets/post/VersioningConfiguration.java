@@ -21,15 +21,70 @@ package org.apache.sling.servlets.post;
 /**
  * Data structure to hold the various options associated with how versionable
  * nodes are handled in the post servlet.
+ * <p>
+ * The instances returned by {@link #valueOf(boolean, boolean, boolean)} are
+ * shared and can not be modified, use {@link #clone()} to get a modifiable
+ * copy. The post servlet stores a shared configuration in the request attribute
+ * named by this class; to change the configuration of a request, replace the
+ * attribute with a modifiable copy first.
  */
 public class VersioningConfiguration implements Cloneable {
 
+    /** The shared instances, indexed by {@link #index(boolean, boolean, boolean)}. */
+    private static final VersioningConfiguration[] SHARED = new VersioningConfiguration[8];
+
+    static {
+        for (int i = 0; i < SHARED.length; i++) {
+            final VersioningConfiguration cfg = new VersioningConfiguration();
+            cfg.checkinOnNewVersionableNode = (i & 4) != 0;
+            cfg.autoCheckout = (i & 2) != 0;
+            cfg.autoCheckin = (i & 1) != 0;
+            cfg.shared = true;
+            SHARED[i] = cfg;
+        }
+    }
+
     private boolean autoCheckout = false;
 
     private boolean checkinOnNewVersionableNode = false;
 
     private boolean autoCheckin = true;
 
+    private boolean shared;
+
+    /**
+     * Get the shared, unmodifiable configuration with the given options.
+     * @param checkinOnNewVersionableNode Whether new versionable nodes are checked in
+     * @param autoCheckout Whether nodes are checked out automatically
+     * @param autoCheckin Whether nodes are checked in automatically
+     * @return The shared configuration
+     * @since 2.6.0
+     */
+    public static VersioningConfiguration valueOf(
+            final boolean checkinOnNewVersionableNode, final boolean autoCheckout, final boolean autoCheckin) {
+        return SHARED[index(checkinOnNewVersionableNode, autoCheckout, autoCheckin)];
+    }
+
+    private static int index(
+            final boolean checkinOnNewVersionableNode, final boolean autoCheckout, final boolean autoCheckin) {
+        return (checkinOnNewVersionableNode ? 4 : 0) | (autoCheckout ? 2 : 0) | (autoCheckin ? 1 : 0);
+    }
+
+    /**
+     * Whether this configuration can be modified.
+     * @return {@code false} for the shared configurations
+     * @since 2.6.0
+     */
+    public boolean isModifiable() {
+        return !shared;
+    }
+
+    private void checkModifiable() {
+        if (shared) {
+            throw new UnsupportedOperationException("Shared versioning configuration can not be modified.");
+        }
+    }
+
     @Override
     public VersioningConfiguration clone() {
         VersioningConfiguration cfg = new VersioningConfiguration();
@@ -52,14 +107,17 @@ public class VersioningConfiguration implements Cloneable {
     }
 
     public void setAutoCheckin(boolean autoCheckin) {
+        checkModifiable();
         this.autoCheckin = autoCheckin;
     }
 
     public void setAutoCheckout(boolean autoCheckout) {
+        checkModifiable();
         this.autoCheckout = autoCheckout;
     }
 
     public void setCheckinOnNewVersionableNode(boolean checkinOnNewVersionableNode) {
+        checkModifiable();
         this.checkinOnNewVersionableNode = checkinOnNewVersionableNode;
     }
 }
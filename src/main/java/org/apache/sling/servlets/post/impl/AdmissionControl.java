@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AdmissionControl</code> limits the number of requests of an
+ * operation running at the same time. Requests exceeding the limit wait in
+ * a bounded queue for a running request to finish, and are rejected if the
+ * queue is full or the wait time is over.
+ * <p>
+ * A limit is configured as <code>operation[@pathPrefix]=concurrent[,queued]</code>,
+ * for example <code>import=2,10</code> or <code>copy@/content/dam=1</code>.
+ * If several limits of an operation match, the one with the longest path
+ * prefix applies.
+ */
+final class AdmissionControl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControl.class);
+
+    /** The ticket of requests without a limit. */
+    static final Ticket UNLIMITED = new Ticket(null, 0);
+
+    private final Limit[] limits;
+
+    private final long timeout;
+
+    /**
+     * Create a new admission control
+     * @param config the configured limits, invalid entries are ignored
+     * @param timeout the maximum time in milliseconds a request waits in the queue
+     */
+    AdmissionControl(final String[] config, final long timeout) {
+        final List<Limit> parsed = new ArrayList<>();
+        if (config != null) {
+            for (final String entry : config) {
+                final Limit limit = Limit.parse(entry);
+                if (limit != null) {
+                    parsed.add(limit);
+                }
+            }
+        }
+        this.limits = parsed.toArray(new Limit[parsed.size()]);
+        this.timeout = Math.max(0, timeout);
+    }
+
+    /**
+     * @return whether any limit is configured
+     */
+    boolean isEmpty() {
+        return limits.length == 0;
+    }
+
+    /**
+     * Admit a request, waiting if the limit of the operation is reached. The
+     * number of requests waiting for the limits of the operation is reported
+     * as {@link SlingPostMetrics#GAUGE_QUEUE_DEPTH} when the request enters
+     * and leaves the queue.
+     * @param operation the name of the operation
+     * @param path the path of the request resource
+     * @param metrics the metrics of the request
+     * @return the ticket which must be {@link Ticket#release() released} after
+     *         the operation, or <code>null</code> if the request is rejected
+     */
+    Ticket acquire(final String operation, final String path, final RequestMetrics metrics) {
+        final Limit limit = getLimit(operation, path);
+        if (limit == null) {
+            return UNLIMITED;
+        }
+        if (limit.permits.tryAcquire()) {
+            return new Ticket(limit, 0);
+        }
+        final int queued = limit.waiting.incrementAndGet();
+        metrics.gauge(SlingPostMetrics.GAUGE_QUEUE_DEPTH, getWaiting(operation));
+        try {
+            if (queued > limit.maxQueued) {
+                return null;
+            }
+            if (timeout > 0 && limit.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                return new Ticket(limit, queued);
+            }
+            return null;
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            limit.waiting.decrementAndGet();
+            metrics.gauge(SlingPostMetrics.GAUGE_QUEUE_DEPTH, getWaiting(operation));
+        }
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @return the number of requests currently waiting for the limits of the operation
+     */
+    int getWaiting(final String operation) {
+        int waiting = 0;
+        for (final Limit limit : limits) {
+            if (limit.operation.equals(operation)) {
+                waiting += limit.waiting.get();
+            }
+        }
+        return waiting;
+    }
+
+    private Limit getLimit(final String operation, final String path) {
+        Limit result = null;
+        for (final Limit limit : limits) {
+            if (limit.operation.equals(operation)
+                    && (limit.pathPrefix == null || isPrefix(limit.pathPrefix, path))
+                    && (result == null || length(limit) > length(result))) {
+                result = limit;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPrefix(final String prefix, final String path) {
+        return path.startsWith(prefix)
+                && (path.length() == prefix.length() || prefix.endsWith("/") || path.charAt(prefix.length()) == '/');
+    }
+
+    private static int length(final Limit limit) {
+        return limit.pathPrefix == null ? -1 : limit.pathPrefix.length();
+    }
+
+    /**
+     * The permission of a request to run.
+     */
+    static final class Ticket {
+
+        private final Limit limit;
+
+        private final int queued;
+
+        private Ticket(final Limit limit, final int queued) {
+            this.limit = limit;
+            this.queued = queued;
+        }
+
+        /**
+         * @return the number of requests waiting, including this one, when this request had to wait
+         */
+        int getQueued() {
+            return queued;
+        }
+
+        /**
+         * Release the ticket after the operation.
+         */
+        void release() {
+            if (limit != null) {
+                limit.permits.release();
+            }
+        }
+    }
+
+    private static final class Limit {
+
+        final String operation;
+
+        final String pathPrefix;
+
+        final Semaphore permits;
+
+        final int maxQueued;
+
+        final AtomicInteger waiting = new AtomicInteger();
+
+        private Limit(final String operation, final String pathPrefix, final int concurrent, final int maxQueued) {
+            this.operation = operation;
+            this.pathPrefix = pathPrefix;
+            this.permits = new Semaphore(concurrent, true);
+            this.maxQueued = maxQueued;
+        }
+
+        static Limit parse(final String entry) {
+            final int eq = entry == null ? -1 : entry.indexOf('=');
+            if (eq <= 0) {
+                LOG.warn("Ignoring invalid operation limit {}", entry);
+                return null;
+            }
+            String operation = entry.substring(0, eq).trim();
+            String pathPrefix = null;
+            final int at = operation.indexOf('@');
+            if (at >= 0) {
+                pathPrefix = operation.substring(at + 1).trim();
+                operation = operation.substring(0, at).trim();
+            }
+            final String[] values = entry.substring(eq + 1).split(",");
+            try {
+                final int concurrent = Integer.parseInt(values[0].trim());
+                final int maxQueued = values.length > 1 ? Integer.parseInt(values[1].trim()) : 0;
+                if (operation.isEmpty() || concurrent <= 0 || maxQueued < 0) {
+                    LOG.warn("Ignoring invalid operation limit {}", entry);
+                    return null;
+                }
+                return new Limit(
+                        operation,
+                        pathPrefix == null || pathPrefix.isEmpty() ? null : pathPrefix,
+                        concurrent,
+                        maxQueued);
+            } catch (final NumberFormatException nfe) {
+                LOG.warn("Ignoring invalid operation limit {}", entry);
+                return null;
+            }
+        }
+    }
+}
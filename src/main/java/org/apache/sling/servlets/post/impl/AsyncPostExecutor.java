@@ -0,0 +1,572 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceNotFoundException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaPostOperation;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.VersioningConfiguration;
+import org.apache.sling.servlets.post.exceptions.PreconditionViolatedPersistenceException;
+import org.apache.sling.servlets.post.impl.helper.JCRSupport;
+import org.apache.sling.servlets.post.impl.operations.PayloadTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AsyncPostExecutor</code> runs operations requested with the
+ * {@link SlingPostConstants#RP_ASYNC} parameter on a bounded thread pool.
+ * Every request gets a job resource below the job root, which records the
+ * {@link #PN_STATUS status} of the job, the number of changes per change
+ * type and the status code of the operation once it is done.
+ * <p>
+ * The operations run with the service resource resolver of the
+ * <code>{@value #SUBSERVICE_NAME}</code> subservice impersonating the user of
+ * the request, the job resources are written with the service resource
+ * resolver itself. The subservice must be mapped to a service user allowed
+ * to impersonate the users, to write the job resources and to modify their
+ * access control. The job root is not readable by the users, instead every
+ * job resource grants read access to the user of the request in a JCR
+ * repository.
+ * <p>
+ * Finished jobs are removed once they are older than the configured time to
+ * live, as are jobs not finished within that time, for example because the
+ * instance running them stopped.
+ */
+final class AsyncPostExecutor {
+
+    /** The name of the subservice used to get the service resource resolver. */
+    static final String SUBSERVICE_NAME = "async-post";
+
+    /** The default path below which the job resources are created. */
+    static final String DEFAULT_JOB_ROOT = "/var/sling/post/jobs";
+
+    /** The user id the repository reports for requests without authentication. */
+    static final String ANONYMOUS_USER_ID = "anonymous";
+
+    static final String PN_STATUS = "status";
+
+    static final String PN_OPERATION = "operation";
+
+    static final String PN_PATH = "path";
+
+    static final String PN_USER_ID = "userId";
+
+    static final String PN_CREATED = "created";
+
+    static final String PN_STARTED = "started";
+
+    static final String PN_FINISHED = "finished";
+
+    static final String PN_STATUS_CODE = "statusCode";
+
+    static final String PN_STATUS_MESSAGE = "statusMessage";
+
+    static final String PN_CHANGES = "changes";
+
+    static final String PN_ERROR = "error";
+
+    static final String STATUS_QUEUED = "queued";
+
+    static final String STATUS_RUNNING = "running";
+
+    static final String STATUS_SUCCEEDED = "succeeded";
+
+    static final String STATUS_FAILED = "failed";
+
+    /** The time in milliseconds to wait for running jobs when shutting down. */
+    static final long SHUTDOWN_TIMEOUT = 10_000;
+
+    /** The maximum time in milliseconds between two removals of expired jobs. */
+    static final long CLEANUP_INTERVAL = 600_000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPostExecutor.class);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final String jobRoot;
+
+    private final long ttl;
+
+    private final ThreadPoolExecutor executor;
+
+    /** Runs the removal of expired jobs, dropping it while a removal is still running. */
+    private final ThreadPoolExecutor cleaner;
+
+    /** The jobs which are queued or running by job path. */
+    private final ConcurrentMap<String, Job> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextCleanup = new AtomicLong();
+
+    /**
+     * Create a new executor
+     * @param jobRoot the path below which the job resources are created
+     * @param threads the number of threads running operations
+     * @param queueSize the number of jobs waiting for a thread, further jobs are rejected
+     * @param ttl the time in milliseconds after which finished jobs are removed,
+     *            <code>0</code> to keep them
+     */
+    AsyncPostExecutor(final String jobRoot, final int threads, final int queueSize, final long ttl) {
+        this.jobRoot = jobRoot;
+        this.ttl = Math.max(0, ttl);
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                AsyncPostExecutor::newThread);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.cleaner = new ThreadPoolExecutor(
+                0,
+                1,
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                AsyncPostExecutor::newThread,
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private static Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "sling-post-async-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Checks whether the request can be run asynchronously. Only requests
+     * whose parameters are all form fields can be run after the request is
+     * done, as uploaded files are not available anymore. Requests of the
+     * anonymous user are not accepted, as their jobs cannot be told apart.
+     * @param request the request
+     * @return <code>true</code> if the request can be run asynchronously
+     */
+    static boolean accepts(final SlingJakartaHttpServletRequest request) {
+        final String userId = request.getResourceResolver().getUserID();
+        if (userId == null || ANONYMOUS_USER_ID.equals(userId)) {
+            return false;
+        }
+        for (final RequestParameter[] values : request.getRequestParameterMap().values()) {
+            for (final RequestParameter value : values) {
+                if (!value.isFormField()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the job resource and queues the operation.
+     * @param factory the resource resolver factory
+     * @param request the request
+     * @param operationName the name of the operation
+     * @param operation the operation
+     * @param processors the post processors
+     * @return the path of the job resource, or <code>null</code> if the queue is full
+     * @throws LoginException if the subservice is not mapped
+     * @throws PersistenceException if the job resource cannot be created
+     */
+    String submit(
+            final ResourceResolverFactory factory,
+            final SlingJakartaHttpServletRequest request,
+            final String operationName,
+            final JakartaPostOperation operation,
+            final SlingJakartaPostProcessor[] processors)
+            throws LoginException, PersistenceException {
+        final Job job = new Job(factory, request, operationName, operation, processors);
+        try (final ResourceResolver resolver = getServiceResolver(factory, null)) {
+            final Resource root = ResourceUtil.getOrCreateResource(
+                    resolver,
+                    jobRoot,
+                    Collections.singletonMap("jcr:primaryType", "sling:Folder"),
+                    "sling:Folder",
+                    false);
+            final Map<String, Object> props = new HashMap<>();
+            props.put("jcr:primaryType", "nt:unstructured");
+            props.put(PN_STATUS, STATUS_QUEUED);
+            props.put(PN_OPERATION, operationName);
+            props.put(PN_PATH, job.path);
+            props.put(PN_USER_ID, job.userId);
+            props.put(PN_CREATED, Calendar.getInstance());
+            final Resource resource = resolver.create(root, job.id, props);
+            if (!JCRSupport.INSTANCE.grantRead(resource, job.userId)) {
+                LOG.debug("Unable to grant read access on job {} to {}", resource.getPath(), job.userId);
+            }
+            resolver.commit();
+            job.jobPath = resource.getPath();
+        }
+
+        pending.put(job.jobPath, job);
+        try {
+            executor.execute(job);
+        } catch (final RejectedExecutionException ree) {
+            LOG.debug("Rejecting asynchronous job {}, queue is full", job.jobPath);
+            pending.remove(job.jobPath);
+            removeJob(factory, job.jobPath);
+            return null;
+        }
+        cleanUpIfDue(factory);
+        return job.jobPath;
+    }
+
+    /**
+     * Removes the expired jobs in the background, at most once per
+     * {@link #CLEANUP_INTERVAL} or time to live.
+     */
+    private void cleanUpIfDue(final ResourceResolverFactory factory) {
+        if (ttl == 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long next = nextCleanup.get();
+        if (now >= next && nextCleanup.compareAndSet(next, now + Math.min(ttl, CLEANUP_INTERVAL))) {
+            cleaner.execute(() -> removeExpiredJobs(factory));
+        }
+    }
+
+    /**
+     * Removes the jobs finished before the time to live, and the jobs created
+     * before it which are not queued or running anymore.
+     * @param factory the resource resolver factory
+     * @return the number of removed jobs
+     */
+    int removeExpiredJobs(final ResourceResolverFactory factory) {
+        final long threshold = System.currentTimeMillis() - ttl;
+        int removed = 0;
+        try (final ResourceResolver resolver = getServiceResolver(factory, null)) {
+            final Resource root = resolver.getResource(jobRoot);
+            if (root == null) {
+                return 0;
+            }
+            for (final Iterator<Resource> jobs = root.listChildren(); jobs.hasNext(); ) {
+                final Resource job = jobs.next();
+                final ValueMap values = job.getValueMap();
+                final Calendar finished = values.get(PN_FINISHED, Calendar.class);
+                final Calendar created = values.get(PN_CREATED, Calendar.class);
+                final boolean expired = finished != null
+                        ? finished.getTimeInMillis() < threshold
+                        : created != null
+                                && created.getTimeInMillis() < threshold
+                                && !pending.containsKey(job.getPath());
+                if (expired) {
+                    resolver.delete(job);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                resolver.commit();
+                LOG.debug("Removed {} expired asynchronous jobs", removed);
+            }
+        } catch (final LoginException | PersistenceException e) {
+            LOG.warn("Unable to remove expired jobs below {}", jobRoot, e);
+            return 0;
+        }
+        return removed;
+    }
+
+    /**
+     * Stops taking new jobs, interrupts the running jobs and waits for them
+     * to finish. Jobs still queued and jobs still running after the timeout
+     * are marked as failed.
+     * @param timeout the maximum time in milliseconds to wait for the running jobs
+     */
+    void shutdown(final long timeout) {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Asynchronous jobs still running after {}ms, marking them as failed", timeout);
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (final Job job : pending.values()) {
+            job.abort();
+        }
+    }
+
+    private static ResourceResolver getServiceResolver(final ResourceResolverFactory factory, final String userId)
+            throws LoginException {
+        final Map<String, Object> authenticationInfo = new HashMap<>();
+        authenticationInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+        if (userId != null) {
+            authenticationInfo.put(ResourceResolverFactory.USER_IMPERSONATION, userId);
+        }
+        return factory.getServiceResourceResolver(authenticationInfo);
+    }
+
+    private static void removeJob(final ResourceResolverFactory factory, final String jobPath) {
+        try (final ResourceResolver resolver = getServiceResolver(factory, null)) {
+            final Resource resource = resolver.getResource(jobPath);
+            if (resource != null) {
+                resolver.delete(resource);
+                resolver.commit();
+            }
+        } catch (final LoginException | PersistenceException e) {
+            LOG.warn("Unable to remove rejected job {}", jobPath, e);
+        }
+    }
+
+    private static void updateJob(
+            final ResourceResolverFactory factory, final String jobPath, final Map<String, Object> properties) {
+        try (final ResourceResolver resolver = getServiceResolver(factory, null)) {
+            final Resource resource = resolver.getResource(jobPath);
+            final ModifiableValueMap values = resource == null ? null : resource.adaptTo(ModifiableValueMap.class);
+            if (values == null) {
+                LOG.warn("Unable to update job {}, job resource is missing or not modifiable", jobPath);
+                return;
+            }
+            values.putAll(properties);
+            resolver.commit();
+        } catch (final LoginException | PersistenceException e) {
+            LOG.warn("Unable to update job {}", jobPath, e);
+        }
+    }
+
+    /**
+     * An operation to run, with the parts of the request needed to build the
+     * request of the operation again.
+     */
+    private final class Job implements Runnable {
+
+        final String id = UUID.randomUUID().toString();
+
+        final ResourceResolverFactory factory;
+
+        final String operationName;
+
+        final JakartaPostOperation operation;
+
+        final SlingJakartaPostProcessor[] processors;
+
+        final String path;
+
+        final boolean synthetic;
+
+        final String[] selectors;
+
+        final String extension;
+
+        final String suffix;
+
+        final Map<String, String[]> parameters;
+
+        final String userId;
+
+        final Object versioningConfiguration;
+
+        String jobPath;
+
+        /** Whether the job is finished or aborted, guarded by the job. */
+        private boolean done;
+
+        Job(
+                final ResourceResolverFactory factory,
+                final SlingJakartaHttpServletRequest request,
+                final String operationName,
+                final JakartaPostOperation operation,
+                final SlingJakartaPostProcessor[] processors) {
+            this.factory = factory;
+            this.operationName = operationName;
+            this.operation = operation;
+            this.processors = processors;
+            this.path = request.getResource().getPath();
+            this.synthetic = ResourceUtil.isSyntheticResource(request.getResource());
+            this.selectors = request.getRequestPathInfo().getSelectors();
+            this.extension = request.getRequestPathInfo().getExtension();
+            this.suffix = request.getRequestPathInfo().getSuffix();
+            this.parameters = new LinkedHashMap<>(request.getParameterMap());
+            // do not run the operation asynchronously again
+            this.parameters.remove(SlingPostConstants.RP_ASYNC);
+            this.userId = request.getResourceResolver().getUserID();
+            this.versioningConfiguration = request.getAttribute(VersioningConfiguration.class.getName());
+        }
+
+        @Override
+        public void run() {
+            final Map<String, Object> started = new HashMap<>();
+            started.put(PN_STATUS, STATUS_RUNNING);
+            started.put(PN_STARTED, Calendar.getInstance());
+            updateJob(factory, jobPath, started);
+
+            final JobResponse response = new JobResponse();
+            int statusCode;
+            String statusMessage;
+            Throwable error = null;
+            try (final ResourceResolver resolver = getServiceResolver(factory, userId)) {
+                Resource resource = synthetic ? null : resolver.getResource(path);
+                if (resource == null) {
+                    resource = new NonExistingResource(resolver, path);
+                }
+                final SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(resource)
+                        .withRequestMethod("POST")
+                        .withSelectors(selectors)
+                        .withExtension(extension)
+                        .withSuffix(suffix)
+                        .withParameters(parameters)
+                        .buildJakartaRequest();
+                request.setAttribute(VersioningConfiguration.class.getName(), versioningConfiguration);
+                operation.run(request, response, processors);
+                response.prepare();
+                statusCode = response.getStatusCode();
+                statusMessage = response.getStatusMessage();
+                error = response.getError();
+            } catch (final ResourceNotFoundException e) {
+                statusCode = HttpServletResponse.SC_NOT_FOUND;
+                statusMessage = e.getMessage();
+            } catch (final PayloadTooLargeException e) {
+                statusCode = HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+                statusMessage = "request entity too large";
+                error = e;
+            } catch (final PreconditionViolatedPersistenceException e) {
+                statusCode = 422;
+                statusMessage = "invalid payload";
+                error = e;
+            } catch (final PersistenceException e) {
+                statusCode = HttpServletResponse.SC_CONFLICT;
+                statusMessage = "repository state conflicting with request";
+                error = e;
+            } catch (final Exception e) {
+                statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                statusMessage = e.getMessage();
+                error = e;
+            }
+            if (error != null) {
+                LOG.warn("Asynchronous {} operation on {} failed", operationName, path, error);
+            }
+
+            final Map<String, Object> finished = new HashMap<>();
+            finished.put(PN_STATUS, statusCode / 100 == 2 && error == null ? STATUS_SUCCEEDED : STATUS_FAILED);
+            finished.put(PN_FINISHED, Calendar.getInstance());
+            finished.put(PN_STATUS_CODE, (long) statusCode);
+            if (statusMessage != null) {
+                finished.put(PN_STATUS_MESSAGE, statusMessage);
+            }
+            finished.put(PN_CHANGES, response.getChanges());
+            if (error != null) {
+                finished.put(PN_ERROR, String.valueOf(error.getMessage()));
+            }
+            finish(finished);
+        }
+
+        /**
+         * Marks the job as failed if it is not finished yet.
+         */
+        void abort() {
+            final Map<String, Object> aborted = new HashMap<>();
+            aborted.put(PN_STATUS, STATUS_FAILED);
+            aborted.put(PN_FINISHED, Calendar.getInstance());
+            aborted.put(PN_STATUS_CODE, (long) HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            aborted.put(PN_STATUS_MESSAGE, "job aborted by shutdown");
+            if (finish(aborted)) {
+                LOG.warn("Asynchronous {} operation on {} aborted by shutdown", operationName, path);
+            }
+        }
+
+        /**
+         * Records the outcome of the job, unless it is already recorded.
+         * @return <code>true</code> if the outcome was recorded
+         */
+        private synchronized boolean finish(final Map<String, Object> properties) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            updateJob(factory, jobPath, properties);
+            pending.remove(jobPath);
+            return true;
+        }
+    }
+
+    /**
+     * Counts the changes of the operation per change type.
+     */
+    private static final class JobResponse extends AbstractJakartaPostResponse {
+
+        private final Map<String, int[]> changeCounts = new LinkedHashMap<>();
+
+        @Override
+        public void onChange(final String type, final String... arguments) {
+            changeCounts.computeIfAbsent(type, t -> new int[1])[0]++;
+        }
+
+        /**
+         * Sets the status from the outcome, like sending the response does.
+         */
+        void prepare() {
+            if (getStatusCode() == HttpServletResponse.SC_OK && getError() == null && getStatusMessage() == null) {
+                if (isCreateRequest()) {
+                    setStatus(HttpServletResponse.SC_CREATED, "Created");
+                }
+            } else if (getError() != null && getStatusMessage() == null) {
+                setStatus(
+                        HttpServletResponse.SC_INTERNAL_SERVER_ERROR, getError().toString());
+            }
+        }
+
+        /**
+         * @return the number of changes per change type as <code>type:count</code>
+         */
+        String[] getChanges() {
+            final String[] changes = new String[changeCounts.size()];
+            int index = 0;
+            for (final Map.Entry<String, int[]> entry : changeCounts.entrySet()) {
+                changes[index++] = entry.getKey() + ':' + entry.getValue()[0];
+            }
+            return changes;
+        }
+
+        @Override
+        protected void doSend(final HttpServletResponse response) {
+            // recorded on the job resource instead
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>DefaultSlingPostMetrics</code> is the default implementation of
+ * the {@link SlingPostMetrics} service, registered with the lowest ranking
+ * such that any other implementation is preferred by the servlet.
+ * <p>
+ * It keeps the number of events, their total and their maximum in memory for
+ * each operation and metric, available through {@link #getStatistics()}, and
+ * logs a warning for requests and phases taking longer than a configured
+ * threshold. For durations, a latency histogram is kept as well. Gauges only
+ * keep their current value, available through {@link #getGauges()}. The class
+ * can be used without OSGi by creating it with its default constructor. The
+ * statistics are published through JMX as {@link SlingPostMetricsMXBean}.
+ */
+@Component(
+        service = {SlingPostMetrics.class, SlingPostMetricsMXBean.class},
+        property = {
+            "service.description=Apache Sling Post Servlet Metrics",
+            "service.vendor=The Apache Software Foundation",
+            "jmx.objectname=org.apache.sling.servlets.post:type=SlingPostMetrics",
+            Constants.SERVICE_RANKING + ":Integer=" + Integer.MIN_VALUE
+        })
+@Designate(ocd = DefaultSlingPostMetrics.Config.class)
+public class DefaultSlingPostMetrics implements SlingPostMetrics, SlingPostMetricsMXBean {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Post Servlet Metrics",
+            description = "Collects the metrics of the Sling POST servlet in memory")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Slow Threshold",
+                description = "Requests and phases of requests taking longer than this number of milliseconds "
+                        + "are logged as warning. A value of 0 disables the logging (default: 0).")
+        long slow_threshold() default 0;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    private volatile long slowThresholdNanos;
+
+    @Activate
+    @Modified
+    protected void configure(final Config config) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.slow_threshold()));
+    }
+
+    @Override
+    public void onRequest(final String operation, final int status, final long durationNanos) {
+        record(operation + ".requests", durationNanos, true);
+        record(operation + ".status." + status, durationNanos, true);
+        logIfSlow(operation, "request", durationNanos);
+    }
+
+    @Override
+    public void onPhase(final String operation, final String phase, final long durationNanos) {
+        record(operation + "." + phase, durationNanos, true);
+        logIfSlow(operation, phase, durationNanos);
+    }
+
+    @Override
+    public void onProcessor(final String operation, final String processor, final long durationNanos) {
+        record(operation + ".processor." + processor, durationNanos, true);
+    }
+
+    @Override
+    public void onCount(final String operation, final String name, final long value) {
+        record(operation + "." + name, value, false);
+    }
+
+    @Override
+    public void onGauge(final String operation, final String name, final long value) {
+        gauges.computeIfAbsent(operation + "." + name, key -> new AtomicLong()).set(value);
+    }
+
+    /**
+     * @return the statistics by metric name, which is the operation name
+     *         followed by a dot and the name of the phase or counter,
+     *         <code>processor.&lt;class name&gt;</code> for post processors, or
+     *         <code>requests</code> and <code>status.&lt;code&gt;</code> for
+     *         the duration of requests. Durations are in nanoseconds.
+     */
+    @Override
+    public Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(new TreeMap<>(statistics));
+    }
+
+    /**
+     * @return the current value of the gauges by metric name, which is the
+     *         operation name followed by a dot and the name of the gauge
+     */
+    @Override
+    public Map<String, Long> getGauges() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<String, AtomicLong> entry : gauges.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public long[] getHistogramBounds() {
+        return Statistics.getHistogramBounds();
+    }
+
+    private void record(final String name, final long value, final boolean duration) {
+        Statistics stats = statistics.get(name);
+        if (stats == null) {
+            stats = statistics.computeIfAbsent(name, key -> new Statistics(duration));
+        }
+        stats.record(value);
+    }
+
+    private void logIfSlow(final String operation, final String phase, final long durationNanos) {
+        final long threshold = this.slowThresholdNanos;
+        if (threshold > 0 && durationNanos > threshold) {
+            log.warn("Slow {} of operation {}: {}ms", phase, operation, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        }
+    }
+
+    /**
+     * The statistics of a metric.
+     */
+    public static final class Statistics {
+
+        /**
+         * The upper bounds in milliseconds of the buckets of the latency histogram. The last
+         * bucket of the histogram counts the durations above the last bound.
+         */
+        private static final long[] BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        private final AtomicLongArray histogram;
+
+        Statistics(final boolean duration) {
+            this.histogram = duration ? new AtomicLongArray(BUCKETS.length + 1) : null;
+        }
+
+        void record(final long value) {
+            count.increment();
+            total.add(value);
+            max.accumulateAndGet(value, Math::max);
+            if (histogram != null) {
+                final long millis = TimeUnit.NANOSECONDS.toMillis(value);
+                int bucket = 0;
+                while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                    bucket++;
+                }
+                histogram.incrementAndGet(bucket);
+            }
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return the sum of the recorded values
+         */
+        public long getTotal() {
+            return total.sum();
+        }
+
+        /**
+         * @return the largest recorded value, 0 if no value has been recorded
+         */
+        public long getMax() {
+            final long value = max.get();
+            return value == Long.MIN_VALUE ? 0 : value;
+        }
+
+        /**
+         * @return the upper bounds in milliseconds of the buckets of the histogram
+         */
+        public static long[] getHistogramBounds() {
+            return BUCKETS.clone();
+        }
+
+        /**
+         * @return the number of durations per bucket of the histogram, with one more element than
+         *         {@link #getHistogramBounds()} counting the durations above the last bound, or
+         *         <code>null</code> if the metric is not a duration
+         */
+        public long[] getHistogram() {
+            if (histogram == null) {
+                return null;
+            }
+            final long[] result = new long[histogram.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = histogram.get(i);
+            }
+            return result;
+        }
+    }
+}
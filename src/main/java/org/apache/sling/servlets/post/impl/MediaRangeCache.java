@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.header.JakartaMediaRangeList;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+import org.apache.sling.servlets.post.impl.helper.CborPostResponse;
+
+/**
+ * The <code>MediaRangeCache</code> keeps the parsed accepted media ranges of
+ * the most recently used <code>Accept</code> header values, together with
+ * the response type preferred by them. Clients usually send only a few
+ * distinct values, such that most requests do not need to parse the header.
+ */
+final class MediaRangeCache {
+
+    /** The default number of cached header values. */
+    static final int DEFAULT_SIZE = 64;
+
+    private final Map<String, AcceptedTypes> cache;
+
+    MediaRangeCache(final int size) {
+        this.cache = new LinkedHashMap<String, AcceptedTypes>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, AcceptedTypes> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Get the accepted types of the request, which are taken from the
+     * {@link JakartaMediaRangeList#PARAM_ACCEPT} parameter if present or
+     * from the <code>Accept</code> header otherwise.
+     * @param request The request
+     * @return The accepted types
+     */
+    AcceptedTypes get(final SlingJakartaHttpServletRequest request) {
+        String accept = request.getParameter(JakartaMediaRangeList.PARAM_ACCEPT);
+        if (accept == null) {
+            accept = request.getHeader(JakartaMediaRangeList.HEADER_ACCEPT);
+        }
+        if (accept == null) {
+            accept = "";
+        }
+        synchronized (cache) {
+            final AcceptedTypes cached = cache.get(accept);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final AcceptedTypes types = new AcceptedTypes(accept);
+        synchronized (cache) {
+            cache.put(accept, types);
+        }
+        return types;
+    }
+
+    /**
+     * The parsed media ranges of a header value. Instances are shared between
+     * requests and must not be modified.
+     */
+    static final class AcceptedTypes {
+
+        private final JakartaMediaRangeList mediaRanges;
+
+        private final boolean json;
+
+        private final boolean cbor;
+
+        AcceptedTypes(final String accept) {
+            this.mediaRanges = new JakartaMediaRangeList(accept.isEmpty() ? null : accept);
+            this.json = JakartaJSONResponse.RESPONSE_CONTENT_TYPE.equals(
+                    mediaRanges.prefer("text/html", JakartaJSONResponse.RESPONSE_CONTENT_TYPE));
+            // the compact response is only sent if explicitly requested
+            this.cbor = CborPostResponse.RESPONSE_CONTENT_TYPE.equals(mediaRanges.prefer(
+                    "text/html", JakartaJSONResponse.RESPONSE_CONTENT_TYPE, CborPostResponse.RESPONSE_CONTENT_TYPE));
+        }
+
+        /**
+         * @return whether a json response is preferred over a html response
+         */
+        boolean isJson() {
+            return json;
+        }
+
+        /**
+         * @return whether the compact cbor response is preferred
+         */
+        boolean isCbor() {
+            return cbor;
+        }
+
+        /**
+         * @param contentTypes the content types
+         * @return whether any of the content types is accepted
+         */
+        boolean acceptsAny(final String[] contentTypes) {
+            for (final JakartaMediaRangeList.MediaRange range : mediaRanges) {
+                if (range.getQ() <= 0) {
+                    continue;
+                }
+                for (final String contentType : contentTypes) {
+                    if (matches(range, contentType)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean matches(final JakartaMediaRangeList.MediaRange range, final String contentType) {
+            final int slash = contentType.indexOf('/');
+            final String supertype = slash < 0 ? contentType : contentType.substring(0, slash);
+            final String subtype = slash < 0 ? JakartaMediaRangeList.WILDCARD : contentType.substring(slash + 1);
+            return (JakartaMediaRangeList.WILDCARD.equals(range.getSupertype())
+                            || range.getSupertype().equalsIgnoreCase(supertype))
+                    && (JakartaMediaRangeList.WILDCARD.equals(range.getSubtype())
+                            || range.getSubtype().equalsIgnoreCase(subtype));
+        }
+    }
+}
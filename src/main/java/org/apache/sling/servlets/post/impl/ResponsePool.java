@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaHtmlResponse;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+
+/**
+ * The <code>ResponsePool</code> keeps one html and one json response per
+ * thread, which are reset and reused for the following requests on the
+ * same thread. If a response of the thread is still in use, for example
+ * for a POST request dispatched while handling another one, a new response
+ * is created instead.
+ * <p>
+ * The threads of the container outlive the servlet, so the thread local
+ * only holds a JDK reference to the responses of the thread, which is
+ * cleared by {@link #close()}. This way the pool does not keep the classes
+ * of the bundle loaded after the servlet is reconfigured or deactivated.
+ */
+final class ResponsePool {
+
+    private final ThreadLocal<AtomicReference<Responses>> responses = new ThreadLocal<>();
+
+    /** The references of all threads, to clear them on close. Guarded by itself. */
+    private final Map<Thread, AtomicReference<Responses>> threads = new WeakHashMap<>();
+
+    private boolean closed;
+
+    /**
+     * Get a response from the pool.
+     * @param json whether a json response is needed
+     * @return the response, which must be returned by {@link #release(AbstractJakartaPostResponse)}
+     */
+    AbstractJakartaPostResponse acquire(final boolean json) {
+        final Responses pooled = get(true);
+        if (json) {
+            if (pooled == null || pooled.jsonInUse) {
+                return new JakartaJSONResponse();
+            }
+            pooled.jsonInUse = true;
+            return pooled.json;
+        }
+        if (pooled == null || pooled.htmlInUse) {
+            return new JakartaHtmlResponse();
+        }
+        pooled.htmlInUse = true;
+        return pooled.html;
+    }
+
+    /**
+     * Return a response to the pool. Responses not taken from the pool are ignored.
+     * @param response the response
+     */
+    void release(final AbstractJakartaPostResponse response) {
+        final Responses pooled = get(false);
+        if (pooled == null) {
+            return;
+        }
+        if (response == pooled.json) {
+            response.reset();
+            pooled.jsonInUse = false;
+        } else if (response == pooled.html) {
+            response.reset();
+            pooled.htmlInUse = false;
+        }
+    }
+
+    /**
+     * Drop the responses of all threads. Responses acquired later are not pooled.
+     */
+    void close() {
+        synchronized (threads) {
+            closed = true;
+            for (final AtomicReference<Responses> ref : threads.values()) {
+                ref.set(null);
+            }
+            threads.clear();
+        }
+        responses.remove();
+    }
+
+    /**
+     * @param create whether to create the responses of the thread if missing
+     * @return the responses of the current thread, <code>null</code> if the pool is closed
+     */
+    private Responses get(final boolean create) {
+        AtomicReference<Responses> ref = responses.get();
+        if (ref == null) {
+            if (!create) {
+                return null;
+            }
+            synchronized (threads) {
+                if (closed) {
+                    return null;
+                }
+                ref = new AtomicReference<>(new Responses());
+                threads.put(Thread.currentThread(), ref);
+            }
+            responses.set(ref);
+        }
+        return ref.get();
+    }
+
+    private static final class Responses {
+        final JakartaHtmlResponse html = new JakartaHtmlResponse();
+        final JakartaJSONResponse json = new JakartaJSONResponse();
+        boolean htmlInUse;
+        boolean jsonInUse;
+    }
+}
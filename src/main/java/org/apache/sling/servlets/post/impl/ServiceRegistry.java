@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * The <code>ServiceRegistry</code> keeps the services bound to the servlet
+ * ordered by descending service ranking and publishes them as an immutable
+ * array through a volatile reference. Binding and unbinding copy the array,
+ * such that the services can be read on every request without locking.
+ * <p>
+ * Modifications are synchronized on the registry.
+ */
+final class ServiceRegistry<T> {
+
+    private final IntFunction<T[]> arrayFactory;
+
+    private final Consumer<T[]> listener;
+
+    /** The rankings of the services, in the order of the services. */
+    private int[] rankings = new int[0];
+
+    private volatile T[] services;
+
+    /**
+     * @param arrayFactory creates the arrays of services
+     * @param listener called with the new services after each modification, may be <code>null</code>
+     */
+    ServiceRegistry(final IntFunction<T[]> arrayFactory, final Consumer<T[]> listener) {
+        this.arrayFactory = arrayFactory;
+        this.listener = listener;
+        this.services = arrayFactory.apply(0);
+    }
+
+    /**
+     * @return the services ordered by descending ranking, must not be modified
+     */
+    T[] get() {
+        return services;
+    }
+
+    /**
+     * Add a service after all services with a higher ranking and before the
+     * services with the same ranking, as the servlet always did.
+     * @param service the service
+     * @param ranking the ranking of the service
+     */
+    synchronized void add(final T service, final int ranking) {
+        final T[] current = this.services;
+        int index = 0;
+        while (index < current.length && ranking < rankings[index]) {
+            index++;
+        }
+        final T[] updated = arrayFactory.apply(current.length + 1);
+        final int[] updatedRankings = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(rankings, 0, updatedRankings, 0, index);
+        updated[index] = service;
+        updatedRankings[index] = ranking;
+        System.arraycopy(current, index, updated, index + 1, current.length - index);
+        System.arraycopy(rankings, index, updatedRankings, index + 1, current.length - index);
+        publish(updated, updatedRankings);
+    }
+
+    /**
+     * Remove all services matching the filter.
+     * @param filter the filter
+     */
+    synchronized void remove(final Predicate<T> filter) {
+        final T[] current = this.services;
+        final List<T> kept = new ArrayList<>(current.length);
+        final int[] updatedRankings = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            if (!filter.test(current[i])) {
+                updatedRankings[kept.size()] = rankings[i];
+                kept.add(current[i]);
+            }
+        }
+        if (kept.size() != current.length) {
+            final int[] trimmed = new int[kept.size()];
+            System.arraycopy(updatedRankings, 0, trimmed, 0, trimmed.length);
+            publish(kept.toArray(arrayFactory.apply(kept.size())), trimmed);
+        }
+    }
+
+    private void publish(final T[] updated, final int[] updatedRankings) {
+        this.rankings = updatedRankings;
+        this.services = updated;
+        if (listener != null) {
+            listener.accept(updated);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.Map;
+
+/**
+ * The <code>SlingPostMetricsMXBean</code> exposes the metrics collected by the
+ * {@link DefaultSlingPostMetrics} through JMX. The metrics are registered with
+ * the <code>jmx.objectname</code> service property, such that a JMX whiteboard
+ * registers them with the platform MBean server.
+ */
+public interface SlingPostMetricsMXBean {
+
+    /**
+     * @return the statistics by metric name, including the latency histograms
+     *         of the requests, phases and post processors
+     * @see DefaultSlingPostMetrics#getStatistics()
+     */
+    Map<String, DefaultSlingPostMetrics.Statistics> getStatistics();
+
+    /**
+     * @return the current value of the gauges by metric name, for example the
+     *         number of requests waiting for the operation limits
+     * @see DefaultSlingPostMetrics#getGauges()
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return the upper bounds in milliseconds of the buckets of the latency
+     *         histograms
+     */
+    long[] getHistogramBounds();
+}
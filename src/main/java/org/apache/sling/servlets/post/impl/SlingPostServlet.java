@@ -22,11 +22,12 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,29 +36,41 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.request.header.JakartaMediaRangeList;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.ResourceNotFoundException;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.servlets.SlingJakartaAllMethodsServlet;
 import org.apache.sling.jcr.contentloader.ContentImporter;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
 import org.apache.sling.servlets.post.JakartaHtmlResponse;
 import org.apache.sling.servlets.post.JakartaJSONResponse;
 import org.apache.sling.servlets.post.JakartaNodeNameGenerator;
 import org.apache.sling.servlets.post.JakartaPostOperation;
 import org.apache.sling.servlets.post.JakartaPostResponse;
 import org.apache.sling.servlets.post.JakartaPostResponseCreator;
+import org.apache.sling.servlets.post.MimeTypeResolver;
 import org.apache.sling.servlets.post.NodeNameGenerator;
 import org.apache.sling.servlets.post.PostOperation;
 import org.apache.sling.servlets.post.PostResponseCreator;
 import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
 import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
 import org.apache.sling.servlets.post.SlingPostProcessor;
 import org.apache.sling.servlets.post.VersioningConfiguration;
 import org.apache.sling.servlets.post.exceptions.PreconditionViolatedPersistenceException;
+import org.apache.sling.servlets.post.impl.helper.CborPostResponse;
 import org.apache.sling.servlets.post.impl.helper.DateParser;
+import org.apache.sling.servlets.post.impl.helper.DefaultMimeTypeResolver;
 import org.apache.sling.servlets.post.impl.helper.DefaultNodeNameGenerator;
+import org.apache.sling.servlets.post.impl.helper.DirectBinarySink;
 import org.apache.sling.servlets.post.impl.helper.JCRSupport;
+import org.apache.sling.servlets.post.impl.helper.MonitoredPostProcessor;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.apache.sling.servlets.post.impl.helper.UploadDigester;
 import org.apache.sling.servlets.post.impl.operations.CheckinOperation;
 import org.apache.sling.servlets.post.impl.operations.CheckoutOperation;
 import org.apache.sling.servlets.post.impl.operations.CopyOperation;
@@ -66,8 +79,11 @@ import org.apache.sling.servlets.post.impl.operations.ImportOperation;
 import org.apache.sling.servlets.post.impl.operations.ModifyOperation;
 import org.apache.sling.servlets.post.impl.operations.MoveOperation;
 import org.apache.sling.servlets.post.impl.operations.NopOperation;
+import org.apache.sling.servlets.post.impl.operations.PayloadTooLargeException;
 import org.apache.sling.servlets.post.impl.operations.RestoreOperation;
+import org.apache.sling.servlets.post.impl.operations.RetryPolicy;
 import org.apache.sling.servlets.post.impl.operations.StreamedUploadOperation;
+import org.apache.sling.servlets.post.impl.operations.WriteCoalescer;
 import org.apache.sling.servlets.post.impl.wrapper.JavaxToJakartaNodeNameGenerator;
 import org.apache.sling.servlets.post.impl.wrapper.JavaxToJakartaPostOperation;
 import org.apache.sling.servlets.post.impl.wrapper.JavaxToJakartaPostResponseCreator;
@@ -188,6 +204,167 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
                 name = "Log stacktraces on exceptions",
                 description = "Log the full stacktrace in case of an exception")
         boolean logStacktraceInExceptions() default true;
+
+        @AttributeDefinition(
+                name = "Direct Binary Threshold",
+                description = "Uploaded files of at least this size in bytes are streamed directly into a "
+                        + "repository binary and their request buffer is released right away instead of being "
+                        + "read when the changes are committed. A negative value disables this. The default "
+                        + "value 256000 matches the size from which the Sling engine buffers uploads on disk.")
+        long servlet_post_directBinaryThreshold() default DirectBinarySink.DEFAULT_THRESHOLD;
+
+        @AttributeDefinition(
+                name = "Upload Digests",
+                description = "Digest algorithms, for example SHA-256 or MD5, computed while uploaded files "
+                        + "are streamed into the repository. The digests are stored in the sling:digests "
+                        + "property next to the binary. Digests supplied by the client with the @Digest "
+                        + "suffix or a Content-MD5 part header are always verified. Empty by default.")
+        String[] servlet_post_uploadDigests() default {};
+
+        @AttributeDefinition(
+                name = "Streamed Commit Threshold",
+                description = "File bodies of streamed uploads up to this size in bytes are read into memory and "
+                        + "committed together with other small bodies instead of one commit per body. Larger and "
+                        + "chunked bodies are committed on their own. A value of 0 commits every body.")
+        long servlet_post_streamedCommitThreshold() default StreamedUploadOperation.DEFAULT_COMMIT_THRESHOLD;
+
+        @AttributeDefinition(
+                name = "Streamed Commit Parts",
+                description = "Maximum number of small file bodies of a streamed upload committed together.")
+        int servlet_post_streamedCommitParts() default StreamedUploadOperation.DEFAULT_COMMIT_PARTS;
+
+        @AttributeDefinition(
+                name = "Streamed Commit Bytes",
+                description = "Small file bodies of a streamed upload are committed once this number of bytes "
+                        + "is held in memory.")
+        long servlet_post_streamedCommitBytes() default StreamedUploadOperation.DEFAULT_COMMIT_BYTES;
+
+        @AttributeDefinition(
+                name = "Streamed Field Limit",
+                description = "Maximum size in bytes of a single form field of a streamed upload. Requests with "
+                        + "larger fields are rejected with status 413. A value of 0 disables the limit.")
+        long servlet_post_streamedFieldMaxBytes() default StreamedUploadOperation.DEFAULT_MAX_FIELD_BYTES;
+
+        @AttributeDefinition(
+                name = "Streamed Fields Limit",
+                description = "Maximum size in bytes of all form fields of a streamed upload together. Requests "
+                        + "exceeding it are rejected with status 413. A value of 0 disables the limit.")
+        long servlet_post_streamedFieldsMaxBytes() default StreamedUploadOperation.DEFAULT_MAX_FIELDS_BYTES;
+
+        @AttributeDefinition(
+                name = "Maximum Commit Interval",
+                description = "Upper bound of the :commitInterval request parameter, which lets the modify "
+                        + "operation commit the changes of very large requests every given number of changes "
+                        + "instead of once at the end. Changes committed before a failure are kept. A value of 0 "
+                        + "disables incremental commits.")
+        int servlet_post_maxCommitInterval() default 0;
+
+        @AttributeDefinition(
+                name = "Conflict Retries",
+                description = "Number of times a modify, copy, move or delete operation is run again after its "
+                        + "commit failed because of a conflict with a concurrent change. Requests using "
+                        + "incremental commits are not retried. A value of 0 disables retries.")
+        int servlet_post_conflictRetries() default 0;
+
+        @AttributeDefinition(
+                name = "Conflict Retry Delay",
+                description = "Upper bound in milliseconds of the random wait time before the first retry after "
+                        + "a conflict. The bound is doubled for every further retry.")
+        long servlet_post_conflictRetryDelay() default 50;
+
+        @AttributeDefinition(
+                name = "Coalesced Paths",
+                description = "Regular expression of the resource paths whose modify requests are merged. "
+                        + "Requests of the same user to the same resource arriving within the coalescing delay "
+                        + "are run as one request with a single commit, and every request gets the outcome of "
+                        + "the merged request. Only requests setting or patching properties are merged. Empty "
+                        + "by default, which disables coalescing.")
+        String servlet_post_coalescePattern() default "";
+
+        @AttributeDefinition(
+                name = "Coalescing Delay",
+                description = "Time in milliseconds the first request to a coalesced path waits for further "
+                        + "requests to merge.")
+        long servlet_post_coalesceDelay() default 5;
+
+        @AttributeDefinition(
+                name = "Operation Limits",
+                description = "Maximum number of concurrent requests of an operation, as "
+                        + "operation[@pathPrefix]=concurrent[,queued], for example import=2,10. Requests exceeding "
+                        + "the limit wait if less than the queued number of requests are waiting, and are rejected "
+                        + "with status 503 otherwise. Requests of the modify operation use the name modify. "
+                        + "If several limits of an operation match, the one with the longest path prefix applies. "
+                        + "Empty by default.")
+        String[] servlet_post_operationLimits() default {};
+
+        @AttributeDefinition(
+                name = "Operation Queue Timeout",
+                description = "Maximum time in milliseconds a request waits for an operation limit before it is "
+                        + "rejected with status 503.")
+        long servlet_post_operationQueueTimeout() default 1000;
+
+        @AttributeDefinition(
+                name = "Retry After",
+                description = "Value in seconds of the Retry-After header of requests rejected because of an "
+                        + "operation limit.")
+        int servlet_post_retryAfter() default 1;
+
+        @AttributeDefinition(
+                name = "Asynchronous Threads",
+                description = "Number of threads running operations requested with :async=true. The operations "
+                        + "run with the service user of the async-post subservice impersonating the user of the "
+                        + "request. A value of 0 disables asynchronous operations.")
+        int servlet_post_asyncThreads() default 0;
+
+        @AttributeDefinition(
+                name = "Asynchronous Queue Size",
+                description = "Number of asynchronous operations waiting for a thread. Further requests are "
+                        + "rejected with status 503.")
+        int servlet_post_asyncQueueSize() default 100;
+
+        @AttributeDefinition(
+                name = "Asynchronous Job Root",
+                description = "Path below which the job resources of asynchronous operations are created.")
+        String servlet_post_asyncJobRoot() default AsyncPostExecutor.DEFAULT_JOB_ROOT;
+
+        @AttributeDefinition(
+                name = "Asynchronous Job TTL",
+                description = "Number of minutes after which the job resources of finished asynchronous "
+                        + "operations are removed. A value of 0 keeps them (default: 1440).")
+        int servlet_post_asyncJobTtl() default 1440;
+
+        @AttributeDefinition(
+                name = "Mime Type Cache Size",
+                description = "Number of file extensions whose mime type is cached when determining the mime "
+                        + "type of uploaded files. A value of 0 disables the cache. Not used if a "
+                        + "MimeTypeResolver service is registered.")
+        int servlet_post_mimeTypeCacheSize() default DefaultMimeTypeResolver.DEFAULT_CACHE_SIZE;
+
+        @AttributeDefinition(
+                name = "Mime Type Detection",
+                description = "If enabled, the mime type of uploaded files which is neither declared by the "
+                        + "client nor known for the file name is detected from the first bytes of the content. "
+                        + "Not used if a MimeTypeResolver service is registered.")
+        boolean servlet_post_mimeTypeDetection() default false;
+
+        @AttributeDefinition(
+                name = "Post Processor Budget",
+                description = "Time budget in milliseconds of a single call of a post processor. Calls exceeding "
+                        + "it are logged as warning. A value of 0 disables the budget.")
+        long servlet_post_processorBudget() default 0;
+
+        @AttributeDefinition(
+                name = "Post Processor Skip Duration",
+                description = "Time in milliseconds a post processor which is not critical is skipped after "
+                        + "exceeding its budget. Post processors are not critical if they are registered with the "
+                        + "service property sling.post.processor.critical=false. A value of 0 never skips them.")
+        long servlet_post_processorSkipDuration() default 60000;
+
+        @AttributeDefinition(
+                name = "Reuse Responses",
+                description = "If enabled, the default html and json responses are reset and reused for the "
+                        + "following requests of the same thread instead of being created for each request.")
+        boolean servlet_post_reuseResponses() default false;
     }
 
     /**
@@ -205,30 +382,43 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
 
     private final StreamedUploadOperation streamedUploadOperation = new StreamedUploadOperation();
 
+    private final CopyOperation copyOperation = new CopyOperation();
+
+    private final MoveOperation moveOperation = new MoveOperation();
+
+    private final DeleteOperation deleteOperation = new DeleteOperation();
+
     private ServiceRegistration<JakartaPostOperation>[] internalOperations;
 
-    /** Map of post operations. */
-    private final Map<String, JakartaPostOperation> postOperations = new HashMap<>();
+    /**
+     * Immutable map of post operations, replaced on each bind and unbind
+     * while holding the {@link #postOperationsLock}.
+     */
+    private volatile Map<String, JakartaPostOperation> postOperations = Collections.emptyMap();
 
-    /** Sorted list of post processor holders. */
-    private final List<PostProcessorHolder> postProcessors = new ArrayList<>();
+    /** Lock for modifications of the {@link #postOperations}. */
+    private final Object postOperationsLock = new Object();
 
-    /** Cached list of post processors, used during request processing. */
-    private SlingJakartaPostProcessor[] cachedPostProcessors = new SlingJakartaPostProcessor[0];
+    /** Post processors, used during request processing. */
+    private final ServiceRegistry<MonitoredPostProcessor> postProcessors =
+            new ServiceRegistry<>(MonitoredPostProcessor[]::new, null);
 
-    /** Sorted list of node name generator holders. */
-    private final List<NodeNameGeneratorHolder> nodeNameGenerators = new ArrayList<>();
+    /** Node name generators, passed to the operations on each change. */
+    private final ServiceRegistry<JakartaNodeNameGenerator> nodeNameGenerators =
+            new ServiceRegistry<>(JakartaNodeNameGenerator[]::new, this::updateNodeNameGenerators);
 
-    /** Cached list of node name generators used during request processing. */
-    private JakartaNodeNameGenerator[] cachedNodeNameGenerators = new JakartaNodeNameGenerator[0];
+    /** Post response creators, used during request processing. */
+    private final ServiceRegistry<PostResponseCreatorEntry> postResponseCreators =
+            new ServiceRegistry<>(PostResponseCreatorEntry[]::new, null);
 
-    /** Sorted list of post response creator holders. */
-    private final List<PostResponseCreatorHolder> postResponseCreators = new ArrayList<>();
+    /** The pool of reused responses, <code>null</code> if responses are not reused. */
+    private volatile ResponsePool responsePool;
 
-    /** Cached array of post response creators used during request processing. */
-    private JakartaPostResponseCreator[] cachedPostResponseCreators = new JakartaPostResponseCreator[0];
+    /** The parsed accepted media ranges of recent requests. */
+    private final MediaRangeCache mediaRangeCache = new MediaRangeCache(MediaRangeCache.DEFAULT_SIZE);
 
-    private VersioningConfiguration baseVersioningConfiguration;
+    /** The shared configuration of the servlet, replaced by {@link #configure(Config)}. */
+    private VersioningConfiguration baseVersioningConfiguration = VersioningConfiguration.valueOf(false, false, true);
 
     private ImportOperation importOperation;
 
@@ -236,6 +426,36 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
 
     private boolean logStacktraceInExceptions;
 
+    /** The time budget of post processors in milliseconds. */
+    private long processorBudget;
+
+    /** The time in milliseconds post processors exceeding the budget are skipped. */
+    private long processorSkipDuration;
+
+    /** The limits of concurrent operations, <code>null</code> if none is configured. */
+    private volatile AdmissionControl admissionControl;
+
+    /** The Retry-After value in seconds of requests rejected by the admission control. */
+    private int retryAfter;
+
+    /** The executor of asynchronous operations, <code>null</code> if disabled. */
+    private volatile AsyncPostExecutor asyncExecutor;
+
+    /** The resource resolver factory, required for asynchronous operations. */
+    private volatile ResourceResolverFactory resourceResolverFactory;
+
+    /** The coalescer of modify requests, <code>null</code> if disabled. */
+    private volatile WriteCoalescer writeCoalescer;
+
+    /** The metrics service, <code>null</code> if no metrics are collected. */
+    private volatile SlingPostMetrics metrics;
+
+    /** The mime type resolver service, <code>null</code> to use the configured default resolver. */
+    private volatile MimeTypeResolver mimeTypeResolverService;
+
+    /** The mime type resolver configured on the servlet, used if no service is registered. */
+    private volatile MimeTypeResolver defaultMimeTypeResolver;
+
     public SlingPostServlet() {
         // the following operations require JCR:
         if (JCRSupport.INSTANCE.jcrEnabled()) {
@@ -253,15 +473,43 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
     @Override
     protected void doPost(final SlingJakartaHttpServletRequest request, final SlingJakartaHttpServletResponse response)
             throws IOException {
-        final VersioningConfiguration localVersioningConfig = createRequestVersioningConfiguration(request);
+        final JakartaPostOperation operation = getSlingPostOperation(request);
+        final String operationName = getOperationName(request, operation);
+        final SlingPostMetrics metrics = this.metrics;
+        final RequestMetrics requestMetrics =
+                metrics == null ? RequestMetrics.NONE : new RequestMetrics(metrics, operationName);
+        final long start = requestMetrics.start();
+        if (metrics != null) {
+            requestMetrics.set(request);
+            final long contentLength = request.getContentLengthLong();
+            if (contentLength > 0) {
+                requestMetrics.count(SlingPostMetrics.COUNT_REQUEST_BYTES, contentLength);
+            }
+        }
 
-        request.setAttribute(VersioningConfiguration.class.getName(), localVersioningConfig);
+        if (operation instanceof NopOperation && isMinimalResponse(request)) {
+            final int status = NopOperation.getStatus(request);
+            if (NopOperation.hasMinimalResponse(status)) {
+                final long sendStart = requestMetrics.start();
+                try {
+                    ((NopOperation) operation).sendResponse(status, response, isSetStatus(request));
+                } finally {
+                    requestMetrics.phase(SlingPostMetrics.PHASE_SEND, sendStart);
+                    requestMetrics.request(response.getStatus(), start);
+                }
+                return;
+            }
+        }
+
+        // the shared configuration is stored, operations modifying it have to
+        // replace it with a copy, see AbstractPostOperation#getModifiableVersioningConfiguration
+        request.setAttribute(VersioningConfiguration.class.getName(), createRequestVersioningConfiguration(request));
 
         // prepare the response
-        final JakartaPostResponse htmlResponse = createPostResponse(request);
+        final ResponsePool pool = this.responsePool;
+        final JakartaPostResponse htmlResponse = createPostResponse(request, pool);
         htmlResponse.setReferer(request.getHeader("referer"));
 
-        final JakartaPostOperation operation = getSlingPostOperation(request);
         if (operation == null) {
 
             htmlResponse.setStatus(
@@ -270,11 +518,30 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         } else {
             request.getRequestProgressTracker()
                     .log("Calling PostOperation: {0}", operation.getClass().getName());
-            final SlingJakartaPostProcessor[] processors = this.cachedPostProcessors;
+            final SlingJakartaPostProcessor[] processors = this.postProcessors.get();
+            final WriteCoalescer coalescer = this.writeCoalescer;
+            final AsyncPostExecutor async = this.asyncExecutor;
+            final ResourceResolverFactory factory = this.resourceResolverFactory;
+            final AdmissionControl.Ticket ticket = admit(request, response, operationName, requestMetrics);
             try {
-                operation.run(request, htmlResponse, processors);
+                if (ticket == null) {
+                    htmlResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "too many concurrent requests");
+                } else if (async != null && factory != null && isAsync(request)) {
+                    submitAsync(async, factory, request, response, htmlResponse, operationName, operation, processors);
+                } else if (coalescer != null && operation == this.modifyOperation && coalescer.accepts(request)) {
+                    coalescer.run(request, htmlResponse, processors);
+                } else {
+                    operation.run(request, htmlResponse, processors);
+                }
             } catch (ResourceNotFoundException rnfe) {
                 htmlResponse.setStatus(HttpServletResponse.SC_NOT_FOUND, rnfe.getMessage());
+            } catch (final PayloadTooLargeException e) {
+                logPersistenceException(request, operation, e);
+                if (backwardsCompatibleStatuscode) {
+                    htmlResponse.setError(e);
+                } else {
+                    htmlResponse.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "request entity too large");
+                }
             } catch (final PreconditionViolatedPersistenceException e) {
                 logPersistenceException(request, operation, e);
                 if (backwardsCompatibleStatuscode) {
@@ -298,18 +565,128 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
                         operation.getClass().getName(),
                         e);
                 htmlResponse.setError(e);
+            } finally {
+                if (ticket != null) {
+                    ticket.release();
+                }
             }
         }
 
-        // check for redirect URL if processing succeeded
-        if (htmlResponse.isSuccessful()) {
-            if (redirectIfNeeded(request, htmlResponse, response)) {
-                return;
+        final long sendStart = requestMetrics.start();
+        try {
+            // check for redirect URL if processing succeeded
+            if (htmlResponse.isSuccessful()) {
+                if (redirectIfNeeded(request, htmlResponse, response)) {
+                    return;
+                }
             }
+
+            // create a html response and send if unsuccessful or no redirect
+            htmlResponse.send(response, isSetStatus(request));
+        } finally {
+            requestMetrics.phase(SlingPostMetrics.PHASE_SEND, sendStart);
+            requestMetrics.request(response.getStatus(), start);
+            if (pool != null) {
+                final JakartaPostResponse pooled = htmlResponse instanceof ErrorHandlingPostResponseWrapper
+                        ? ((ErrorHandlingPostResponseWrapper) htmlResponse).getWrapped()
+                        : htmlResponse;
+                if (pooled instanceof AbstractJakartaPostResponse) {
+                    pool.release((AbstractJakartaPostResponse) pooled);
+                }
+            }
+        }
+    }
+
+    /**
+     * Admit the request to run its operation, waiting for the operation limit if needed.
+     * @param request the request
+     * @param response the response, which gets a <code>Retry-After</code> header if the request is rejected
+     * @param operationName the name of the operation, as reported to the metrics
+     * @param requestMetrics the metrics of the request
+     * @return the ticket to release after the operation, or <code>null</code> if the request is rejected
+     */
+    private AdmissionControl.Ticket admit(
+            final SlingJakartaHttpServletRequest request,
+            final SlingJakartaHttpServletResponse response,
+            final String operationName,
+            final RequestMetrics requestMetrics) {
+        final AdmissionControl admission = this.admissionControl;
+        if (admission == null) {
+            return AdmissionControl.UNLIMITED;
+        }
+        final AdmissionControl.Ticket ticket =
+                admission.acquire(operationName, request.getResource().getPath(), requestMetrics);
+        if (ticket == null) {
+            log.debug(
+                    "Rejecting POST to {}, operation limit reached",
+                    request.getResource().getPath());
+            requestMetrics.count(SlingPostMetrics.COUNT_REJECTED, 1);
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+        } else if (ticket.getQueued() > 0) {
+            requestMetrics.count(SlingPostMetrics.COUNT_QUEUED, 1);
+        }
+        return ticket;
+    }
+
+    /**
+     * Check whether the request asks for the operation to run asynchronously.
+     */
+    private boolean isAsync(final SlingJakartaHttpServletRequest request) {
+        return Boolean.parseBoolean(request.getParameter(SlingPostConstants.RP_ASYNC));
+    }
+
+    /**
+     * Queue the operation and point the response to the job resource.
+     */
+    private void submitAsync(
+            final AsyncPostExecutor async,
+            final ResourceResolverFactory factory,
+            final SlingJakartaHttpServletRequest request,
+            final SlingJakartaHttpServletResponse response,
+            final JakartaPostResponse htmlResponse,
+            final String operationName,
+            final JakartaPostOperation operation,
+            final SlingJakartaPostProcessor[] processors)
+            throws LoginException, PersistenceException {
+        if (operation instanceof NopOperation
+                || operation == this.streamedUploadOperation
+                || !AsyncPostExecutor.accepts(request)) {
+            htmlResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST, "operation cannot be run asynchronously");
+            return;
+        }
+        final String jobPath = async.submit(factory, request, operationName, operation, processors);
+        if (jobPath == null) {
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            htmlResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "too many asynchronous operations");
+            return;
         }
+        final String location = request.getResourceResolver().map(request, jobPath);
+        htmlResponse.setLocation(location);
+        // the response only sends the location for created and redirected resources
+        response.setHeader("Location", location);
+        htmlResponse.setStatus(HttpServletResponse.SC_ACCEPTED, "Accepted");
+    }
 
-        // create a html response and send if unsuccessful or no redirect
-        htmlResponse.send(response, isSetStatus(request));
+    /**
+     * Get the name of the operation reported to the metrics, the admission control and the
+     * asynchronous jobs. Only names of registered operations are used, such that the names
+     * cannot be chosen freely by the client.
+     * @param operation the operation resolved for the request, <code>null</code> if none is registered
+     */
+    private String getOperationName(
+            final SlingJakartaHttpServletRequest request, final JakartaPostOperation operation) {
+        if (operation == null) {
+            return SlingPostMetrics.OPERATION_UNKNOWN;
+        }
+        if (operation == streamedUploadOperation) {
+            return SlingPostMetrics.OPERATION_STREAMED_UPLOAD;
+        }
+        final String name = request.getParameter(SlingPostConstants.RP_OPERATION);
+        if (name == null || name.length() == 0) {
+            return SlingPostMetrics.OPERATION_MODIFY;
+        }
+        // resolved through the map of registered operations
+        return name;
     }
 
     protected void logPersistenceException(
@@ -388,12 +765,22 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
      *   <li>the request is a JSON POST request (see SLING-1172)</li>
      *   <li>the request has a request parameter <code>:accept=application/json</code></li>
      * </ul>
+     * a {@link CborPostResponse} if <code>application/cbor</code> is explicitly preferred,
      * or a {@link org.apache.sling.servlets.post.PostResponse} otherwise
      */
     JakartaPostResponse createPostResponse(final SlingJakartaHttpServletRequest req) {
+        return createPostResponse(req, null);
+    }
+
+    private JakartaPostResponse createPostResponse(final SlingJakartaHttpServletRequest req, final ResponsePool pool) {
+        final MediaRangeCache.AcceptedTypes acceptedTypes = mediaRangeCache.get(req);
         JakartaPostResponse response = null;
-        for (final JakartaPostResponseCreator creator : cachedPostResponseCreators) {
-            response = creator.createPostResponse(req);
+        for (final PostResponseCreatorEntry entry : postResponseCreators.get()) {
+            // skip creators which do not create any of the accepted types
+            if (entry.contentTypes != null && !acceptedTypes.acceptsAny(entry.contentTypes)) {
+                continue;
+            }
+            response = entry.creator.createPostResponse(req);
             if (response != null) {
                 break;
             }
@@ -401,9 +788,11 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
 
         if (response == null) {
             // Fall through to default behavior
-            final JakartaMediaRangeList mediaRangeList = new JakartaMediaRangeList(req);
-            if (JakartaJSONResponse.RESPONSE_CONTENT_TYPE.equals(
-                    mediaRangeList.prefer("text/html", JakartaJSONResponse.RESPONSE_CONTENT_TYPE))) {
+            if (acceptedTypes.isCbor()) {
+                response = new CborPostResponse();
+            } else if (pool != null) {
+                response = pool.acquire(acceptedTypes.isJson());
+            } else if (acceptedTypes.isJson()) {
                 response = new JakartaJSONResponse();
             } else {
                 response = new JakartaHtmlResponse();
@@ -417,6 +806,26 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         return response;
     }
 
+    /**
+     * Checks whether a minimal response can be sent instead of a post response.
+     * This is the case if no post response creators are registered, the client
+     * accepts any content type, and neither a redirect nor the error handling
+     * is requested.
+     *
+     * @param request the request to check
+     * @return true or false
+     */
+    boolean isMinimalResponse(final SlingJakartaHttpServletRequest request) {
+        if (postResponseCreators.get().length > 0
+                || request.getParameter(JakartaMediaRangeList.PARAM_ACCEPT) != null
+                || request.getParameter(SlingPostConstants.RP_REDIRECT_TO) != null
+                || isSendError(request)) {
+            return false;
+        }
+        final String accept = request.getHeader(JakartaMediaRangeList.HEADER_ACCEPT);
+        return accept == null || "*/*".equals(accept.trim());
+    }
+
     /**
      * Checks whether the normal error handling using Sling's error handlers will be used instead
      * of the error response based on a template.
@@ -444,9 +853,7 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         }
 
         // named operation, retrieve from map
-        synchronized (this.postOperations) {
-            return postOperations.get(operation);
-        }
+        return postOperations.get(operation);
     }
 
     /**
@@ -570,10 +977,9 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         // other predefined operations
         final ArrayList<ServiceRegistration<JakartaPostOperation>> providedServices = new ArrayList<>();
         providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_MODIFY, modifyOperation));
-        providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_COPY, new CopyOperation()));
-        providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_MOVE, new MoveOperation()));
-        providedServices.add(
-                registerOperation(bundleContext, SlingPostConstants.OPERATION_DELETE, new DeleteOperation()));
+        providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_COPY, copyOperation));
+        providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_MOVE, moveOperation));
+        providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_DELETE, deleteOperation));
         providedServices.add(registerOperation(bundleContext, SlingPostConstants.OPERATION_NOP, new NopOperation()));
 
         // the following operations require JCR:
@@ -630,10 +1036,68 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         this.modifyOperation.setDateParser(dateParser);
         this.modifyOperation.setDefaultNodeNameGenerator(nodeNameGenerator);
         this.modifyOperation.setIgnoredParameterNamePattern(paramMatchPattern);
+        this.streamedUploadOperation.setDateParser(dateParser);
+        this.streamedUploadOperation.setDefaultNodeNameGenerator(nodeNameGenerator);
+        this.streamedUploadOperation.setIgnoredParameterNamePattern(paramMatchPattern);
+        this.modifyOperation.setDirectBinaryThreshold(configuration.servlet_post_directBinaryThreshold());
+        this.modifyOperation.setMaxCommitInterval(configuration.servlet_post_maxCommitInterval());
+        final RetryPolicy retryPolicy = new RetryPolicy(
+                configuration.servlet_post_conflictRetries(), configuration.servlet_post_conflictRetryDelay());
+        this.modifyOperation.setRetryPolicy(retryPolicy);
+        this.copyOperation.setRetryPolicy(retryPolicy);
+        this.moveOperation.setRetryPolicy(retryPolicy);
+        this.deleteOperation.setRetryPolicy(retryPolicy);
+        final String coalescePattern = configuration.servlet_post_coalescePattern();
+        this.writeCoalescer = coalescePattern == null || coalescePattern.isEmpty()
+                ? null
+                : new WriteCoalescer(
+                        this.modifyOperation,
+                        Pattern.compile(coalescePattern),
+                        configuration.servlet_post_coalesceDelay());
+        final UploadDigester uploadDigester = new UploadDigester(configuration.servlet_post_uploadDigests());
+        this.modifyOperation.setUploadDigester(uploadDigester);
+        this.streamedUploadOperation.setUploadDigester(uploadDigester);
+        this.defaultMimeTypeResolver = new DefaultMimeTypeResolver(
+                configuration.servlet_post_mimeTypeCacheSize(), configuration.servlet_post_mimeTypeDetection());
+        updateMimeTypeResolver();
+        this.streamedUploadOperation.setCommitPolicy(
+                configuration.servlet_post_streamedCommitThreshold(),
+                configuration.servlet_post_streamedCommitParts(),
+                configuration.servlet_post_streamedCommitBytes());
+        this.streamedUploadOperation.setFormFieldLimits(
+                configuration.servlet_post_streamedFieldMaxBytes(),
+                configuration.servlet_post_streamedFieldsMaxBytes());
         if (this.importOperation != null) {
             this.importOperation.setDefaultNodeNameGenerator(nodeNameGenerator);
             this.importOperation.setIgnoredParameterNamePattern(paramMatchPattern);
         }
+        synchronized (this.postProcessors) {
+            this.processorBudget = configuration.servlet_post_processorBudget();
+            this.processorSkipDuration = configuration.servlet_post_processorSkipDuration();
+            for (final MonitoredPostProcessor processor : this.postProcessors.get()) {
+                processor.setBudget(this.processorBudget, this.processorSkipDuration);
+            }
+        }
+        final ResponsePool previousPool = this.responsePool;
+        this.responsePool = configuration.servlet_post_reuseResponses() ? new ResponsePool() : null;
+        if (previousPool != null) {
+            previousPool.close();
+        }
+        final AdmissionControl admission = new AdmissionControl(
+                configuration.servlet_post_operationLimits(), configuration.servlet_post_operationQueueTimeout());
+        this.admissionControl = admission.isEmpty() ? null : admission;
+        this.retryAfter = configuration.servlet_post_retryAfter();
+        final AsyncPostExecutor previous = this.asyncExecutor;
+        this.asyncExecutor = configuration.servlet_post_asyncThreads() > 0
+                ? new AsyncPostExecutor(
+                        configuration.servlet_post_asyncJobRoot(),
+                        configuration.servlet_post_asyncThreads(),
+                        configuration.servlet_post_asyncQueueSize(),
+                        TimeUnit.MINUTES.toMillis(configuration.servlet_post_asyncJobTtl()))
+                : null;
+        if (previous != null) {
+            previous.shutdown(AsyncPostExecutor.SHUTDOWN_TIMEOUT);
+        }
         this.backwardsCompatibleStatuscode = configuration.legacy_statuscode_on_persistence_exception();
         this.logStacktraceInExceptions = configuration.logStacktraceInExceptions();
     }
@@ -653,6 +1117,17 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             internalOperations = null;
         }
         modifyOperation.setExtraNodeNameGenerators(null);
+        streamedUploadOperation.setExtraNodeNameGenerators(null);
+        final AsyncPostExecutor async = this.asyncExecutor;
+        if (async != null) {
+            async.shutdown(AsyncPostExecutor.SHUTDOWN_TIMEOUT);
+            this.asyncExecutor = null;
+        }
+        final ResponsePool pool = this.responsePool;
+        if (pool != null) {
+            pool.close();
+            this.responsePool = null;
+        }
         if (this.importOperation != null) {
             this.importOperation = null;
         }
@@ -669,8 +1144,10 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             final JakartaPostOperation operation, final Map<String, Object> properties) {
         final String operationName = (String) properties.get(JakartaPostOperation.PROP_OPERATION_NAME);
         if (operationName != null && operation != null) {
-            synchronized (this.postOperations) {
-                this.postOperations.put(operationName, operation);
+            synchronized (this.postOperationsLock) {
+                final Map<String, JakartaPostOperation> updated = new HashMap<>(this.postOperations);
+                updated.put(operationName, operation);
+                this.postOperations = Collections.unmodifiableMap(updated);
             }
         }
     }
@@ -682,8 +1159,10 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             final JakartaPostOperation operation, final Map<String, Object> properties) {
         final String operationName = (String) properties.get(JakartaPostOperation.PROP_OPERATION_NAME);
         if (operationName != null) {
-            synchronized (this.postOperations) {
-                this.postOperations.remove(operationName);
+            synchronized (this.postOperationsLock) {
+                final Map<String, JakartaPostOperation> updated = new HashMap<>(this.postOperations);
+                updated.remove(operationName);
+                this.postOperations = Collections.unmodifiableMap(updated);
             }
         }
     }
@@ -722,21 +1201,19 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             policy = ReferencePolicy.DYNAMIC)
     protected void bindJakartaPostProcessor(
             final SlingJakartaPostProcessor processor, final Map<String, Object> properties) {
-        final PostProcessorHolder pph = new PostProcessorHolder();
-        pph.processor = processor;
-        pph.ranking = getRanking(properties);
+        final Object critical = properties.get(SlingJakartaPostProcessor.PROP_CRITICAL);
+        final String name = processor instanceof JavaxToSlingJakartaPostProcessor
+                ? ((JavaxToSlingJakartaPostProcessor) processor)
+                        .getDelegate()
+                        .getClass()
+                        .getName()
+                : processor.getClass().getName();
+        final MonitoredPostProcessor monitored = new MonitoredPostProcessor(
+                processor, name, critical == null || !"false".equalsIgnoreCase(critical.toString()));
 
         synchronized (this.postProcessors) {
-            int index = 0;
-            while (index < this.postProcessors.size() && pph.ranking < this.postProcessors.get(index).ranking) {
-                index++;
-            }
-            if (index == this.postProcessors.size()) {
-                this.postProcessors.add(pph);
-            } else {
-                this.postProcessors.add(index, pph);
-            }
-            this.updatePostProcessorCache();
+            monitored.setBudget(this.processorBudget, this.processorSkipDuration);
+            this.postProcessors.add(monitored, getRanking(properties));
         }
     }
 
@@ -745,16 +1222,7 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
      */
     protected void unbindJakartaPostProcessor(
             final SlingJakartaPostProcessor processor, final Map<String, Object> properties) {
-        synchronized (this.postProcessors) {
-            final Iterator<PostProcessorHolder> i = this.postProcessors.iterator();
-            while (i.hasNext()) {
-                final PostProcessorHolder current = i.next();
-                if (current.isSame(processor)) {
-                    i.remove();
-                }
-            }
-            this.updatePostProcessorCache();
-        }
+        this.postProcessors.remove(current -> isSame(current.getDelegate(), processor));
     }
 
     /**
@@ -777,20 +1245,6 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         this.unbindJakartaPostProcessor(new JavaxToSlingJakartaPostProcessor(processor), properties);
     }
 
-    /**
-     * Update the post processor cache
-     * This method is called by sync'ed methods, no need to add additional syncing.
-     */
-    private void updatePostProcessorCache() {
-        final SlingJakartaPostProcessor[] localCache = new SlingJakartaPostProcessor[this.postProcessors.size()];
-        int index = 0;
-        for (final PostProcessorHolder current : this.postProcessors) {
-            localCache[index] = current.processor;
-            index++;
-        }
-        this.cachedPostProcessors = localCache;
-    }
-
     /**
      * Bind a new node name generator
      */
@@ -800,23 +1254,7 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             policy = ReferencePolicy.DYNAMIC)
     protected void bindJakartaNodeNameGenerator(
             final JakartaNodeNameGenerator generator, final Map<String, Object> properties) {
-        final NodeNameGeneratorHolder nngh = new NodeNameGeneratorHolder();
-        nngh.generator = generator;
-        nngh.ranking = getRanking(properties);
-
-        synchronized (this.nodeNameGenerators) {
-            int index = 0;
-            while (index < this.nodeNameGenerators.size()
-                    && nngh.ranking < this.nodeNameGenerators.get(index).ranking) {
-                index++;
-            }
-            if (index == this.nodeNameGenerators.size()) {
-                this.nodeNameGenerators.add(nngh);
-            } else {
-                this.nodeNameGenerators.add(index, nngh);
-            }
-            this.updateNodeNameGeneratorCache();
-        }
+        this.nodeNameGenerators.add(generator, getRanking(properties));
     }
 
     /**
@@ -824,16 +1262,7 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
      */
     protected void unbindJakartaNodeNameGenerator(
             final JakartaNodeNameGenerator generator, final Map<String, Object> properties) {
-        synchronized (this.nodeNameGenerators) {
-            final Iterator<NodeNameGeneratorHolder> i = this.nodeNameGenerators.iterator();
-            while (i.hasNext()) {
-                final NodeNameGeneratorHolder current = i.next();
-                if (current.isSame(generator)) {
-                    i.remove();
-                }
-            }
-            this.updateNodeNameGeneratorCache();
-        }
+        this.nodeNameGenerators.remove(current -> isSame(current, generator));
     }
 
     /**
@@ -857,20 +1286,94 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
     }
 
     /**
-     * Update the node name generator cache
-     * This method is called by sync'ed methods, no need to add additional syncing.
+     * Pass the node name generators to the operations.
+     * This method is called by the registry while holding its lock.
      */
-    private void updateNodeNameGeneratorCache() {
-        final JakartaNodeNameGenerator[] localCache = new JakartaNodeNameGenerator[this.nodeNameGenerators.size()];
-        int index = 0;
-        for (final NodeNameGeneratorHolder current : this.nodeNameGenerators) {
-            localCache[index] = current.generator;
-            index++;
-        }
-        this.cachedNodeNameGenerators = localCache;
-        this.modifyOperation.setExtraNodeNameGenerators(this.cachedNodeNameGenerators);
+    private void updateNodeNameGenerators(final JakartaNodeNameGenerator[] generators) {
+        this.modifyOperation.setExtraNodeNameGenerators(generators);
+        this.streamedUploadOperation.setExtraNodeNameGenerators(generators);
         if (this.importOperation != null) {
-            this.importOperation.setExtraNodeNameGenerators(this.cachedNodeNameGenerators);
+            this.importOperation.setExtraNodeNameGenerators(generators);
+        }
+    }
+
+    /**
+     * Bind the metrics service
+     */
+    @Reference(
+            service = SlingPostMetrics.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindSlingPostMetrics(final SlingPostMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Unbind the metrics service
+     */
+    protected void unbindSlingPostMetrics(final SlingPostMetrics metrics) {
+        if (this.metrics == metrics) {
+            this.metrics = null;
+        }
+    }
+
+    /**
+     * Bind the mime type resolver service
+     */
+    @Reference(
+            service = MimeTypeResolver.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindMimeTypeResolver(final MimeTypeResolver mimeTypeResolver) {
+        this.mimeTypeResolverService = mimeTypeResolver;
+        updateMimeTypeResolver();
+    }
+
+    /**
+     * Unbind the mime type resolver service
+     */
+    protected void unbindMimeTypeResolver(final MimeTypeResolver mimeTypeResolver) {
+        if (this.mimeTypeResolverService == mimeTypeResolver) {
+            this.mimeTypeResolverService = null;
+            updateMimeTypeResolver();
+        }
+    }
+
+    /**
+     * Hand the mime type resolver service, or the configured default resolver if there is none, to the
+     * operations handling uploads.
+     */
+    private synchronized void updateMimeTypeResolver() {
+        MimeTypeResolver mimeTypeResolver = this.mimeTypeResolverService;
+        if (mimeTypeResolver == null) {
+            mimeTypeResolver = this.defaultMimeTypeResolver;
+        }
+        if (mimeTypeResolver != null) {
+            this.modifyOperation.setMimeTypeResolver(mimeTypeResolver);
+            this.streamedUploadOperation.setMimeTypeResolver(mimeTypeResolver);
+        }
+    }
+
+    /**
+     * Bind the resource resolver factory
+     */
+    @Reference(
+            service = ResourceResolverFactory.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindResourceResolverFactory(final ResourceResolverFactory factory) {
+        this.resourceResolverFactory = factory;
+    }
+
+    /**
+     * Unbind the resource resolver factory
+     */
+    protected void unbindResourceResolverFactory(final ResourceResolverFactory factory) {
+        if (this.resourceResolverFactory == factory) {
+            this.resourceResolverFactory = null;
         }
     }
 
@@ -883,23 +1386,10 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
             policy = ReferencePolicy.DYNAMIC)
     protected void bindJakartaPostResponseCreator(
             final JakartaPostResponseCreator creator, final Map<String, Object> properties) {
-        final PostResponseCreatorHolder nngh = new PostResponseCreatorHolder();
-        nngh.creator = creator;
-        nngh.ranking = getRanking(properties);
-
-        synchronized (this.postResponseCreators) {
-            int index = 0;
-            while (index < this.postResponseCreators.size()
-                    && nngh.ranking < this.postResponseCreators.get(index).ranking) {
-                index++;
-            }
-            if (index == this.postResponseCreators.size()) {
-                this.postResponseCreators.add(nngh);
-            } else {
-                this.postResponseCreators.add(index, nngh);
-            }
-            this.updatePostResponseCreatorCache();
-        }
+        this.postResponseCreators.add(
+                new PostResponseCreatorEntry(
+                        creator, toStringArray(properties.get(JakartaPostResponseCreator.PROP_CONTENT_TYPES))),
+                getRanking(properties));
     }
 
     /**
@@ -907,16 +1397,7 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
      */
     protected void unbindJakartaPostResponseCreator(
             final JakartaPostResponseCreator creator, final Map<String, Object> properties) {
-        synchronized (this.postResponseCreators) {
-            final Iterator<PostResponseCreatorHolder> i = this.postResponseCreators.iterator();
-            while (i.hasNext()) {
-                final PostResponseCreatorHolder current = i.next();
-                if (current.isSame(creator)) {
-                    i.remove();
-                }
-            }
-            this.updatePostResponseCreatorCache();
-        }
+        this.postResponseCreators.remove(current -> isSame(current.creator, creator));
     }
 
     /**
@@ -939,21 +1420,6 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
         this.unbindJakartaPostResponseCreator(new JavaxToJakartaPostResponseCreator(creator), properties);
     }
 
-    /**
-     * Update the post response creator cache
-     * This method is called by sync'ed methods, no need to add additional syncing.
-     */
-    private void updatePostResponseCreatorCache() {
-        final JakartaPostResponseCreator[] localCache =
-                new JakartaPostResponseCreator[this.postResponseCreators.size()];
-        int index = 0;
-        for (final PostResponseCreatorHolder current : this.postResponseCreators) {
-            localCache[index] = current.creator;
-            index++;
-        }
-        this.cachedPostResponseCreators = localCache;
-    }
-
     @Reference(
             service = ContentImporter.class,
             cardinality = ReferenceCardinality.OPTIONAL,
@@ -972,80 +1438,91 @@ public class SlingPostServlet extends SlingJakartaAllMethodsServlet {
     }
 
     private VersioningConfiguration createBaseVersioningConfiguration(Config config) {
-        VersioningConfiguration cfg = new VersioningConfiguration();
-        cfg.setCheckinOnNewVersionableNode(config.servlet_post_checkinNewVersionableNodes());
-        cfg.setAutoCheckout(config.servlet_post_autoCheckout());
-        cfg.setAutoCheckin(config.servlet_post_autoCheckin());
-        return cfg;
+        return VersioningConfiguration.valueOf(
+                config.servlet_post_checkinNewVersionableNodes(),
+                config.servlet_post_autoCheckout(),
+                config.servlet_post_autoCheckin());
     }
 
     private VersioningConfiguration createRequestVersioningConfiguration(SlingJakartaHttpServletRequest request) {
-        VersioningConfiguration cfg = baseVersioningConfiguration.clone();
-
-        String paramValue = request.getParameter(PARAM_CHECKIN_ON_CREATE);
-        if (paramValue != null) {
-            cfg.setCheckinOnNewVersionableNode(Boolean.parseBoolean(paramValue));
-        }
-        paramValue = request.getParameter(PARAM_AUTO_CHECKOUT);
-        if (paramValue != null) {
-            cfg.setAutoCheckout(Boolean.parseBoolean(paramValue));
+        final VersioningConfiguration base = baseVersioningConfiguration;
+        boolean checkinOnCreate = base.isCheckinOnNewVersionableNode();
+        boolean autoCheckout = base.isAutoCheckout();
+        boolean autoCheckin = base.isAutoCheckin();
+        for (final Map.Entry<String, RequestParameter[]> entry :
+                request.getRequestParameterMap().entrySet()) {
+            final String name = entry.getKey();
+            if (name.isEmpty() || name.charAt(0) != ':' || entry.getValue().length == 0) {
+                continue;
+            }
+            if (PARAM_CHECKIN_ON_CREATE.equals(name)) {
+                checkinOnCreate = Boolean.parseBoolean(entry.getValue()[0].getString());
+            } else if (PARAM_AUTO_CHECKOUT.equals(name)) {
+                autoCheckout = Boolean.parseBoolean(entry.getValue()[0].getString());
+            } else if (PARAM_AUTO_CHECKIN.equals(name)) {
+                autoCheckin = Boolean.parseBoolean(entry.getValue()[0].getString());
+            }
         }
-        paramValue = request.getParameter(PARAM_AUTO_CHECKIN);
-        if (paramValue != null) {
-            cfg.setAutoCheckin(Boolean.parseBoolean(paramValue));
+        return VersioningConfiguration.valueOf(checkinOnCreate, autoCheckout, autoCheckin);
+    }
+
+    private static String[] toStringArray(final Object value) {
+        if (value instanceof String) {
+            return new String[] {(String) value};
+        } else if (value instanceof String[]) {
+            return (String[]) value;
+        } else if (value instanceof Collection) {
+            return ((Collection<?>) value).stream().map(String::valueOf).toArray(String[]::new);
         }
-        return cfg;
+        return null;
     }
 
-    private static final class PostProcessorHolder {
-        public SlingJakartaPostProcessor processor;
-        public int ranking;
+    private static final class PostResponseCreatorEntry {
+        final JakartaPostResponseCreator creator;
 
-        public boolean isSame(final SlingJakartaPostProcessor processor) {
-            if (this.processor == processor) {
-                return true;
-            }
-            if (processor instanceof JavaxToSlingJakartaPostProcessor
-                    && this.processor instanceof JavaxToSlingJakartaPostProcessor) {
-                return ((JavaxToSlingJakartaPostProcessor) processor).getDelegate()
-                        == ((JavaxToSlingJakartaPostProcessor) this.processor).getDelegate();
-            }
-            return false;
+        /** The declared content types, <code>null</code> if the creator is called for any request. */
+        final String[] contentTypes;
+
+        PostResponseCreatorEntry(final JakartaPostResponseCreator creator, final String[] contentTypes) {
+            this.creator = creator;
+            this.contentTypes = contentTypes == null || contentTypes.length == 0 ? null : contentTypes;
         }
     }
 
-    private static final class NodeNameGeneratorHolder {
-        public JakartaNodeNameGenerator generator;
-        public int ranking;
-
-        public boolean isSame(final JakartaNodeNameGenerator generator) {
-            if (this.generator == generator) {
-                return true;
-            }
-            if (generator instanceof JavaxToJakartaNodeNameGenerator
-                    && this.generator instanceof JavaxToJakartaNodeNameGenerator) {
-                return ((JavaxToJakartaNodeNameGenerator) generator).getDelegate()
-                        == ((JavaxToJakartaNodeNameGenerator) this.generator).getDelegate();
-            }
-            return false;
+    private static boolean isSame(final SlingJakartaPostProcessor current, final SlingJakartaPostProcessor processor) {
+        if (current == processor) {
+            return true;
         }
+        if (processor instanceof JavaxToSlingJakartaPostProcessor
+                && current instanceof JavaxToSlingJakartaPostProcessor) {
+            return ((JavaxToSlingJakartaPostProcessor) processor).getDelegate()
+                    == ((JavaxToSlingJakartaPostProcessor) current).getDelegate();
+        }
+        return false;
     }
 
-    private static final class PostResponseCreatorHolder {
-        public JakartaPostResponseCreator creator;
-        public int ranking;
+    private static boolean isSame(final JakartaNodeNameGenerator current, final JakartaNodeNameGenerator generator) {
+        if (current == generator) {
+            return true;
+        }
+        if (generator instanceof JavaxToJakartaNodeNameGenerator
+                && current instanceof JavaxToJakartaNodeNameGenerator) {
+            return ((JavaxToJakartaNodeNameGenerator) generator).getDelegate()
+                    == ((JavaxToJakartaNodeNameGenerator) current).getDelegate();
+        }
+        return false;
+    }
 
-        public boolean isSame(final JakartaPostResponseCreator creator) {
-            if (this.creator == creator) {
-                return true;
-            }
-            if (creator instanceof JavaxToJakartaPostResponseCreator
-                    && this.creator instanceof JavaxToJakartaPostResponseCreator) {
-                return ((JavaxToJakartaPostResponseCreator) creator).getDelegate()
-                        == ((JavaxToJakartaPostResponseCreator) this.creator).getDelegate();
-            }
-            return false;
+    private static boolean isSame(final JakartaPostResponseCreator current, final JakartaPostResponseCreator creator) {
+        if (current == creator) {
+            return true;
+        }
+        if (creator instanceof JavaxToJakartaPostResponseCreator
+                && current instanceof JavaxToJakartaPostResponseCreator) {
+            return ((JavaxToJakartaPostResponseCreator) creator).getDelegate()
+                    == ((JavaxToJakartaPostResponseCreator) current).getDelegate();
         }
+        return false;
     }
 
     // for testing
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * A <code>BinarySink</code> writes the content of an uploaded file into a
+ * binary property of a resource. It is used by the {@link SlingFileUploadHandler}
+ * for uploads which are not chunked.
+ */
+public interface BinarySink {
+
+    /**
+     * Writes the content of the uploaded file into the property.
+     *
+     * @param resource the resource to write to
+     * @param properties the modifiable properties of the resource
+     * @param name the name of the binary property
+     * @param in the content of the uploaded file
+     * @param size the size of the uploaded file
+     * @return <code>true</code> if the content has been read completely and the
+     *         stream can be closed, <code>false</code> if the content is read by
+     *         the persistence when the changes are committed.
+     * @throws IOException if the uploaded file cannot be read
+     * @throws PersistenceException if the property cannot be written
+     */
+    boolean write(Resource resource, ModifiableValueMap properties, String name, InputStream in, long size)
+            throws IOException, PersistenceException;
+}
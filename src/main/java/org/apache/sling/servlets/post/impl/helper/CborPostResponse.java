@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.SlingPostConstants;
+
+/**
+ * The <code>CborPostResponse</code> is a compact response for machine
+ * clients sent as CBOR (RFC 8949) map. Instead of the list of changes it
+ * only contains the number of changes per change type:
+ * <pre>
+ * { "status": 201, "path": "/content/a", "location": "/content/a.html",
+ *   "created": true, "changes": { "created": 1, "modified": 12 } }
+ * </pre>
+ * The location is only present if it is known, and an <code>error</code>
+ * entry with the error message is added if the operation failed.
+ */
+public class CborPostResponse extends AbstractJakartaPostResponse {
+
+    public static final String RESPONSE_CONTENT_TYPE = "application/cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+
+    private static final int MAJOR_NEGATIVE = 1;
+
+    private static final int MAJOR_TEXT = 3;
+
+    private static final int MAJOR_MAP = 5;
+
+    private static final int SIMPLE_FALSE = 0xf4;
+
+    private static final int SIMPLE_TRUE = 0xf5;
+
+    /** The type of the change with the counts of a summary, see {@link SlingPostConstants#CHANGES_VALUE_SUMMARY}. */
+    private static final String SUMMARY = "summary";
+
+    private static final String OMITTED = "omitted";
+
+    /** Number of changes per change type, in the order of the first change of the type. */
+    private final Map<String, int[]> changeCounts = new LinkedHashMap<>();
+
+    private Throwable error;
+
+    @Override
+    public void onChange(final String type, final String... arguments) {
+        if (SUMMARY.equals(type)) {
+            // the summary of a reduced change report has the counts of all changes
+            changeCounts.clear();
+            for (final String argument : arguments) {
+                final int separator = argument.lastIndexOf(':');
+                final String name = argument.substring(0, separator);
+                if (!OMITTED.equals(name)) {
+                    changeCounts.put(name, new int[] {Integer.parseInt(argument.substring(separator + 1))});
+                }
+            }
+            return;
+        }
+        changeCounts.computeIfAbsent(type, t -> new int[1])[0]++;
+    }
+
+    @Override
+    public void setError(final Throwable error) {
+        this.error = error;
+    }
+
+    @Override
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        changeCounts.clear();
+        error = null;
+    }
+
+    @Override
+    protected void doSend(final HttpServletResponse response) throws IOException {
+        final String path = getPath();
+        final String location = getLocation();
+        final int entries = 3 + (path != null ? 1 : 0) + (location != null ? 1 : 0) + (error != null ? 1 : 0);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 + changeCounts.size() * 16);
+        writeHeader(out, MAJOR_MAP, entries);
+        writeText(out, "status");
+        writeInt(out, getStatusCode());
+        if (path != null) {
+            writeText(out, "path");
+            writeText(out, path);
+        }
+        if (location != null) {
+            writeText(out, "location");
+            writeText(out, location);
+        }
+        writeText(out, "created");
+        out.write(isCreateRequest() ? SIMPLE_TRUE : SIMPLE_FALSE);
+        writeText(out, "changes");
+        if (error != null) {
+            // changes are not reported for failed operations
+            writeHeader(out, MAJOR_MAP, 0);
+            writeText(out, "error");
+            writeText(out, String.valueOf(error.getMessage()));
+        } else {
+            writeHeader(out, MAJOR_MAP, changeCounts.size());
+            for (final Map.Entry<String, int[]> entry : changeCounts.entrySet()) {
+                writeText(out, entry.getKey());
+                writeInt(out, entry.getValue()[0]);
+            }
+        }
+
+        response.setContentType(RESPONSE_CONTENT_TYPE);
+        response.setContentLength(out.size());
+        out.writeTo(response.getOutputStream());
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final long value) {
+        if (value < 0) {
+            writeHeader(out, MAJOR_NEGATIVE, -1 - value);
+        } else {
+            writeHeader(out, MAJOR_UNSIGNED, value);
+        }
+    }
+
+    private static void writeText(final ByteArrayOutputStream out, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(out, MAJOR_TEXT, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the initial byte of a data item with the major type and the
+     * argument, which is the value or the length of the item.
+     */
+    private static void writeHeader(final ByteArrayOutputStream out, final int majorType, final long argument) {
+        final int major = majorType << 5;
+        if (argument < 24) {
+            out.write(major | (int) argument);
+        } else if (argument < 0x100) {
+            out.write(major | 24);
+            out.write((int) argument);
+        } else if (argument < 0x10000) {
+            out.write(major | 25);
+            writeBytes(out, argument, 2);
+        } else if (argument < 0x100000000L) {
+            out.write(major | 26);
+            writeBytes(out, argument, 4);
+        } else {
+            out.write(major | 27);
+            writeBytes(out, argument, 8);
+        }
+    }
+
+    private static void writeBytes(final ByteArrayOutputStream out, final long value, final int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            out.write((int) (value >>> (i * 8)) & 0xff);
+        }
+    }
+}
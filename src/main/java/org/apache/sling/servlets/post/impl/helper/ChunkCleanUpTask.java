@@ -18,10 +18,25 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.util.ISO8601;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -29,6 +44,7 @@ import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.servlets.post.SlingPostConstants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
@@ -50,17 +66,40 @@ import org.slf4j.LoggerFactory;
  * and 12h4131s.
  * <p>
  * The property <code>chunk.cleanup.age</code> specifies chunk's age in minutes
- * before it is considered for clean up.
+ * before it is considered for clean up. The age is taken from the
+ * <code>jcr:lastModified</code> property of the
+ * {@link SlingPostConstants#NT_SLING_CHUNK_MIXIN} node, which is updated by
+ * every chunk written to it, such that the query selecting the abandoned
+ * uploads can be answered from an index on that property instead of
+ * inspecting the chunks of every upload.
  * <p>
- * Currently the cleanup tasks connects as the administrative user to the
- * default workspace assuming users are stored in that workspace and the
- * administrative user has full access.
+ * Abandoned uploads are removed in batches of <code>chunk.cleanup.batchSize</code>
+ * uploads, each batch being committed on its own. A single run stops once
+ * <code>chunk.cleanup.maxDuration</code> seconds are exceeded, leaving the
+ * remaining uploads for the next run.
+ * <p>
+ * The work is partitioned by the top-level resources of the repository and the
+ * partitions are processed on a pool of <code>chunk.cleanup.parallelism</code>
+ * threads, each partition with its own resource resolver and commits.
+ * <p>
+ * The cleanup task uses the service resource resolver of the
+ * <code>{@value #SUBSERVICE_NAME}</code> subservice, which must be mapped to a
+ * service user allowed to read and remove the chunks. If no such mapping
+ * exists, the run fails with an error and no chunks are removed.
+ * <p>
+ * The number of uploads found and removed, the bytes reclaimed and the
+ * duration of the last run are exposed through JMX as
+ * {@link ChunkCleanUpTaskMXBean}.
  */
 @Component(
-        service = Runnable.class,
-        property = {"service.description=Periodic Chunk Cleanup Job", "service.vendor=The Apache Software Foundation"})
+        service = {Runnable.class, ChunkCleanUpTaskMXBean.class},
+        property = {
+            "service.description=Periodic Chunk Cleanup Job",
+            "service.vendor=The Apache Software Foundation",
+            "jmx.objectname=org.apache.sling.servlets.post:type=ChunkCleanUpTask"
+        })
 @Designate(ocd = ChunkCleanUpTask.Config.class)
-public class ChunkCleanUpTask implements Runnable {
+public class ChunkCleanUpTask implements Runnable, ChunkCleanUpTaskMXBean {
 
     @ObjectClassDefinition(
             name = "Apache Sling Post Chunk Upload : Cleanup Task",
@@ -83,8 +122,50 @@ public class ChunkCleanUpTask implements Runnable {
                 name = "Cleanup Age",
                 description = "The chunk's age in minutes before it is considered for clean up.")
         int chunk_cleanup_age() default 360;
+
+        @AttributeDefinition(
+                name = "Batch Size",
+                description = "Number of incomplete chunk uploads removed before the changes are committed "
+                        + "(default: 100).")
+        int chunk_cleanup_batchSize() default 100;
+
+        @AttributeDefinition(
+                name = "Maximum Duration",
+                description = "Maximum duration of a single cleanup run in seconds. Uploads not processed "
+                        + "once this time is exceeded are left for the next run. A value of zero or less "
+                        + "disables the limit (default: 600).")
+        int chunk_cleanup_maxDuration() default 600;
+
+        @AttributeDefinition(
+                name = "Parallelism",
+                description = "Number of threads removing incomplete chunk uploads, each thread processing the "
+                        + "uploads below one top-level resource at a time (default: 2).")
+        int chunk_cleanup_parallelism() default 2;
     }
 
+    /**
+     * The name of the subservice used to get the service resource resolver.
+     */
+    public static final String SUBSERVICE_NAME = "chunk-cleanup";
+
+    /**
+     * Query selecting the chunk uploads not modified since a given date, oldest first.
+     * The partition root itself is matched as well, as a top-level resource may be an
+     * upload on its own.
+     */
+    private static final String QUERY_TEMPLATE = "SELECT * FROM [" + SlingPostConstants.NT_SLING_CHUNK_MIXIN
+            + "] AS c WHERE (ISDESCENDANTNODE(c, '%1$s') OR ISSAMENODE(c, '%1$s')) AND c.["
+            + JcrConstants.JCR_LASTMODIFIED + "] < CAST('%2$s' AS DATE) ORDER BY c.["
+            + JcrConstants.JCR_LASTMODIFIED + "]";
+
+    private static final String QUERY_LANGUAGE = "JCR-SQL2";
+
+    /**
+     * Time in millisec the partitions get after the deadline to finish their
+     * current upload and commit before they are cancelled.
+     */
+    private static final long DEADLINE_GRACE = TimeUnit.SECONDS.toMillis(5);
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -98,6 +179,33 @@ public class ChunkCleanUpTask implements Runnable {
      */
     private long chunkCleanUpAge;
 
+    /**
+     * Number of uploads removed per commit.
+     */
+    private int batchSize;
+
+    /**
+     * Maximum duration of a run in millisec, zero or less for no limit.
+     */
+    private long maxDuration;
+
+    /**
+     * The executor processing the partitions.
+     */
+    private ExecutorService executor;
+
+    /** Number of abandoned chunk uploads found by all runs. */
+    private final AtomicLong chunkUploadsFound = new AtomicLong();
+
+    /** Number of abandoned chunk uploads removed by all runs. */
+    private final AtomicLong chunkUploadsCleaned = new AtomicLong();
+
+    /** Number of chunk bytes removed by all runs. */
+    private final AtomicLong bytesReclaimed = new AtomicLong();
+
+    /** Duration of the last run in millisec. */
+    private final AtomicLong lastRunDuration = new AtomicLong();
+
     /**
      * Executes the job. Is called for each triggered schedule point.
      */
@@ -108,85 +216,264 @@ public class ChunkCleanUpTask implements Runnable {
     }
 
     /**
-     * This method deletes chunks which are {@link #isEligibleForCleanUp(Resource)}
-     * for cleanup. It queries all
-     * {@link SlingPostConstants#NT_SLING_CHUNK_MIXIN} nodes and filter nodes
-     * which are {@link #isEligibleForCleanUp(Resource)} for cleanup. It then
-     * deletes old chunks upload.
+     * This method deletes chunks which are eligible for cleanup. It queries
+     * all {@link SlingPostConstants#NT_SLING_CHUNK_MIXIN} nodes not modified
+     * for {@link #chunkCleanUpAge} below each top-level resource and deletes
+     * the chunks of these uploads, processing the top-level resources in
+     * parallel.
      */
     private void cleanup() {
 
-        long start = System.currentTimeMillis();
-
-        int numCleaned = 0;
-        int numLive = 0;
+        final long start = System.currentTimeMillis();
+        final long deadline = maxDuration > 0 ? start + maxDuration : Long.MAX_VALUE;
+        final Calendar threshold = Calendar.getInstance();
+        threshold.setTimeInMillis(start - chunkCleanUpAge);
 
-        ResourceResolver admin = null;
+        final List<String> roots;
         try {
-            admin = rrFactory.getAdministrativeResourceResolver(null);
+            roots = getPartitionRoots();
+        } catch (final LoginException le) {
+            log.error(
+                    "ChunkCleanUpTask: No service user mapped for subservice {}, skipping cleanup: {}",
+                    SUBSERVICE_NAME,
+                    le.getMessage());
+            return;
+        }
 
-            final Iterator<Resource> rsrcIter = admin.findResources("SELECT * FROM [sling:chunks] ", "sql");
-            while (rsrcIter.hasNext()) {
-                final Resource rsrc = rsrcIter.next();
-                if (isEligibleForCleanUp(rsrc)) {
-                    numCleaned++;
-                    uploadhandler.deleteChunks(rsrc);
-                } else {
-                    numLive++;
-                }
+        final Result result = new Result();
+        try {
+            final List<Callable<Result>> partitions = new ArrayList<>();
+            for (final String root : roots) {
+                partitions.add(() -> cleanup(root, threshold, deadline));
             }
-            if (admin.hasChanges()) {
+            // the partitions stop at the deadline on their own, they are only
+            // cancelled if they do not finish within the grace period
+            final List<Future<Result>> futures = maxDuration > 0
+                    ? executor.invokeAll(
+                            partitions,
+                            Math.max(0, deadline - System.currentTimeMillis()) + DEADLINE_GRACE,
+                            TimeUnit.MILLISECONDS)
+                    : executor.invokeAll(partitions);
+            for (final Future<Result> future : futures) {
                 try {
-                    admin.refresh();
-                    admin.commit();
-                } catch (PersistenceException re) {
-                    log.info("ChunkCleanUpTask: Failed persisting chunk removal. Retrying later");
+                    result.add(future.get());
+                } catch (final CancellationException ce) {
+                    result.timedOut = true;
+                } catch (final ExecutionException ee) {
+                    log.error("ChunkCleanUpTask: General failure while trying to cleanup chunks", ee.getCause());
                 }
             }
-
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
         } catch (Throwable t) {
             log.error("ChunkCleanUpTask: General failure while trying to cleanup chunks", t);
-        } finally {
-            if (admin != null) {
-                admin.close();
-            }
         }
-        long end = System.currentTimeMillis();
+        final long duration = System.currentTimeMillis() - start;
+        chunkUploadsFound.addAndGet(result.found);
+        chunkUploadsCleaned.addAndGet(result.cleaned);
+        bytesReclaimed.addAndGet(result.bytes);
+        lastRunDuration.set(duration);
+        if (result.timedOut) {
+            log.info(
+                    "ChunkCleanUpTask: Maximum duration of {}ms exceeded, remaining chunk uploads are left "
+                            + "for the next run",
+                    maxDuration);
+        }
         log.info(
-                "ChunkCleanUpTask finished: Removed {} chunk upload(s) in {}ms ({} chunk upload(s) still active)",
-                new Object[] {numCleaned, (end - start), numLive});
+                "ChunkCleanUpTask finished: Removed {} of {} chunk upload(s) ({} bytes) in {}ms",
+                new Object[] {result.cleaned, result.found, result.bytes, duration});
     }
 
     /**
-     * Check if {@link Resource} is eligible of
-     * {@link SlingPostConstants#NT_SLING_CHUNK_NODETYPE} cleanup. To be
-     * eligible the age of last
-     * {@link SlingPostConstants#NT_SLING_CHUNK_NODETYPE} uploaded should be
-     * greater than @link {@link #chunkCleanUpAge}
+     * Returns the paths of the top-level resources, each of them being the
+     * root of a partition of the cleanup.
      *
-     * @param rsrc {@link Resource} containing
-     *            {@link SlingPostConstants#NT_SLING_CHUNK_NODETYPE}
-     *            {@link Resource}s
-     * @return true if eligible else false.
-     */
-    private boolean isEligibleForCleanUp(Resource rsrc) {
-        boolean result = false;
-        final Resource lastChunkNode = uploadhandler.getLastChunk(rsrc);
-        if (lastChunkNode != null) {
-            final Calendar created = lastChunkNode.getValueMap().get(JcrConstants.JCR_CREATED, Calendar.class);
-            if (created != null && System.currentTimeMillis() - created.getTimeInMillis() > chunkCleanUpAge) {
-                result = true;
+     * @return the partition roots
+     * @throws LoginException if no resource resolver can be obtained
+     */
+    private List<String> getPartitionRoots() throws LoginException {
+        final List<String> roots = new ArrayList<>();
+        try (final ResourceResolver resolver = getResourceResolver()) {
+            final Resource root = resolver.getResource("/");
+            if (root != null) {
+                for (final Resource child : root.getChildren()) {
+                    roots.add(child.getPath());
+                }
             }
         }
+        return roots;
+    }
+
+    /**
+     * Deletes the chunks of the uploads eligible for cleanup below the given
+     * root, committing after every {@link #batchSize} uploads.
+     *
+     * @param root the root of the partition
+     * @param threshold uploads not modified since this time are removed
+     * @param deadline the time at which the cleanup stops
+     * @return the result of the partition
+     * @throws LoginException if no resource resolver can be obtained
+     * @throws PersistenceException if the chunks cannot be removed
+     */
+    private Result cleanup(final String root, final Calendar threshold, final long deadline)
+            throws LoginException, PersistenceException {
+        final Result result = new Result();
+        try (final ResourceResolver resolver = getResourceResolver()) {
+            final Iterator<Resource> rsrcIter = resolver.findResources(createQuery(root, threshold), QUERY_LANGUAGE);
+
+            int batchCount = 0;
+            long batchBytes = 0;
+            while (rsrcIter.hasNext()) {
+                if (System.currentTimeMillis() > deadline
+                        || Thread.currentThread().isInterrupted()) {
+                    result.timedOut = true;
+                    break;
+                }
+                final Resource rsrc = rsrcIter.next();
+                result.found++;
+                batchBytes += rsrc.getValueMap().get(SlingPostConstants.NT_SLING_CHUNKS_LENGTH, 0L);
+                uploadhandler.deleteChunks(rsrc);
+                batchCount++;
+                if (batchCount >= batchSize) {
+                    if (commitBatch(resolver)) {
+                        result.cleaned += batchCount;
+                        result.bytes += batchBytes;
+                    }
+                    batchCount = 0;
+                    batchBytes = 0;
+                }
+            }
+            if (batchCount > 0 && commitBatch(resolver)) {
+                result.cleaned += batchCount;
+                result.bytes += batchBytes;
+            }
+        }
+        log.debug(
+                "ChunkCleanUpTask: Removed {} of {} chunk upload(s) below {}",
+                new Object[] {result.cleaned, result.found, root});
         return result;
     }
 
+    /**
+     * Returns the service resource resolver of the {@link #SUBSERVICE_NAME}
+     * subservice.
+     *
+     * @return a new resource resolver, to be closed by the caller
+     * @throws LoginException if the subservice is not mapped
+     */
+    private ResourceResolver getResourceResolver() throws LoginException {
+        return rrFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME));
+    }
+
+    /**
+     * Commits the current batch of removed chunk uploads. If the commit fails,
+     * the batch is reverted and left for the next run.
+     *
+     * @param resolver the resolver holding the batch
+     * @return <code>true</code> if the batch has been committed
+     */
+    private boolean commitBatch(final ResourceResolver resolver) {
+        if (!resolver.hasChanges()) {
+            return true;
+        }
+        try {
+            resolver.refresh();
+            resolver.commit();
+            return true;
+        } catch (PersistenceException re) {
+            log.info("ChunkCleanUpTask: Failed persisting chunk removal. Retrying later");
+            resolver.revert();
+            return false;
+        }
+    }
+
+    /**
+     * Create the query for the {@link SlingPostConstants#NT_SLING_CHUNK_MIXIN}
+     * nodes below the given root which are eligible for clean up, that is which
+     * have not been modified since the given threshold.
+     *
+     * @param root the root of the partition
+     * @param threshold the last modification time of eligible uploads
+     * @return the query statement
+     */
+    static String createQuery(final String root, final Calendar threshold) {
+        return String.format(QUERY_TEMPLATE, root.replace("'", "''"), ISO8601.format(threshold));
+    }
+
+    @Override
+    public long getChunkUploadsFound() {
+        return chunkUploadsFound.get();
+    }
+
+    @Override
+    public long getChunkUploadsCleaned() {
+        return chunkUploadsCleaned.get();
+    }
+
+    @Override
+    public long getBytesReclaimed() {
+        return bytesReclaimed.get();
+    }
+
+    @Override
+    public long getLastRunDuration() {
+        return lastRunDuration.get();
+    }
+
     @Activate
     protected void activate(final Config configuration) {
-        chunkCleanUpAge = configuration.chunk_cleanup_age();
+        chunkCleanUpAge = TimeUnit.MINUTES.toMillis(configuration.chunk_cleanup_age());
+        batchSize = Math.max(1, configuration.chunk_cleanup_batchSize());
+        maxDuration = TimeUnit.SECONDS.toMillis(configuration.chunk_cleanup_maxDuration());
+        final int parallelism = Math.max(1, configuration.chunk_cleanup_parallelism());
+        executor = Executors.newFixedThreadPool(parallelism, new CleanupThreadFactory());
         log.info(
-                "scheduler config [{}], chunkGarbageTime  [{}] ms",
+                "scheduler config [{}], chunkGarbageTime  [{}] ms, batch size [{}], maximum duration [{}] ms, "
+                        + "parallelism [{}]",
                 configuration.scheduler_expression(),
-                chunkCleanUpAge);
+                chunkCleanUpAge,
+                batchSize,
+                maxDuration,
+                parallelism);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The result of cleaning up one or more partitions.
+     */
+    private static final class Result {
+        int found;
+        int cleaned;
+        long bytes;
+        boolean timedOut;
+
+        void add(final Result other) {
+            found += other.found;
+            cleaned += other.cleaned;
+            bytes += other.bytes;
+            timedOut |= other.timedOut;
+        }
+    }
+
+    /**
+     * Creates the named daemon threads of the cleanup executor.
+     */
+    private static final class CleanupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "sling-post-chunk-cleanup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
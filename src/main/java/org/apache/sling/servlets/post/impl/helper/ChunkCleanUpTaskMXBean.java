@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+/**
+ * The <code>ChunkCleanUpTaskMXBean</code> exposes the counters of the
+ * {@link ChunkCleanUpTask} through JMX. The task is registered with the
+ * <code>jmx.objectname</code> service property, such that a JMX whiteboard
+ * registers it with the platform MBean server.
+ */
+public interface ChunkCleanUpTaskMXBean {
+
+    /**
+     * @return the number of abandoned chunk uploads found since activation
+     */
+    long getChunkUploadsFound();
+
+    /**
+     * @return the number of abandoned chunk uploads removed since activation
+     */
+    long getChunkUploadsCleaned();
+
+    /**
+     * @return the number of chunk bytes removed since activation
+     */
+    long getBytesReclaimed();
+
+    /**
+     * @return the duration of the last run in milliseconds
+     */
+    long getLastRunDuration();
+}
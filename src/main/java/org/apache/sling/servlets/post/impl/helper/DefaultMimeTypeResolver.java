@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.servlet.ServletContext;
+import org.apache.sling.servlets.post.MimeTypeResolver;
+
+/**
+ * The <code>DefaultMimeTypeResolver</code> maps file names to mime types with
+ * the servlet context, caching the mime type of the most recently used file
+ * extensions. If detection is enabled, the mime type of uploads which cannot
+ * be mapped by their name is detected from the signature of well known file
+ * formats in the first bytes of the content.
+ */
+public class DefaultMimeTypeResolver implements MimeTypeResolver {
+
+    /**
+     * The default number of file extensions whose mime type is cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * The number of bytes peeked to detect the mime type.
+     */
+    static final int PEEK_SIZE = 16;
+
+    /**
+     * Marks a file extension the servlet context has no mime type for.
+     */
+    private static final String UNKNOWN = "";
+
+    private static final Signature[] SIGNATURES = {
+        new Signature(0, new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}, "image/png"),
+        new Signature(0, new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, "image/jpeg"),
+        new Signature(0, "GIF87a", "image/gif"),
+        new Signature(0, "GIF89a", "image/gif"),
+        new Signature(0, new byte[] {'I', 'I', 0x2A, 0x00}, "image/tiff"),
+        new Signature(0, new byte[] {'M', 'M', 0x00, 0x2A}, "image/tiff"),
+        new Signature(8, "WEBP", "image/webp"),
+        new Signature(0, "%PDF-", "application/pdf"),
+        new Signature(0, new byte[] {'P', 'K', 0x03, 0x04}, "application/zip"),
+        new Signature(0, new byte[] {0x1F, (byte) 0x8B}, "application/gzip"),
+        new Signature(0, "<?xml", "application/xml"),
+        new Signature(0, "OggS", "application/ogg"),
+        new Signature(0, "ID3", "audio/mpeg"),
+        new Signature(4, "ftyp", "video/mp4"),
+        new Signature(0, "wOFF", "font/woff"),
+        new Signature(0, "wOF2", "font/woff2")
+    };
+
+    private final Map<String, String> cache;
+
+    private final boolean detect;
+
+    /**
+     * Creates a resolver mapping file names only, without caching.
+     */
+    public DefaultMimeTypeResolver() {
+        this(0, false);
+    }
+
+    /**
+     * @param cacheSize the number of file extensions whose mime type is cached, 0 or less to disable caching
+     * @param detect whether the mime type of uploads which cannot be mapped by their name is detected from the content
+     */
+    public DefaultMimeTypeResolver(final int cacheSize, final boolean detect) {
+        this.detect = detect;
+        if (cacheSize > 0) {
+            this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        } else {
+            this.cache = null;
+        }
+    }
+
+    @Override
+    public String getMimeType(final ServletContext servletContext, final String declaredType, final String fileName) {
+        String contentType = declaredType;
+        if (contentType != null) {
+            final int idx = contentType.indexOf(';');
+            if (idx > 0) {
+                contentType = contentType.substring(0, idx);
+            }
+        }
+        if (contentType == null || contentType.equals(MT_APP_OCTET)) {
+            // try to find a better content type
+            contentType = getMimeType(servletContext, fileName);
+            if (contentType == null || contentType.equals(MT_APP_OCTET)) {
+                contentType = detect ? null : MT_APP_OCTET;
+            }
+        }
+        return contentType;
+    }
+
+    @Override
+    public String detectMimeType(final InputStream in) throws IOException {
+        final byte[] head = new byte[PEEK_SIZE];
+        int length = 0;
+        in.mark(PEEK_SIZE);
+        try {
+            int read;
+            while (length < PEEK_SIZE && (read = in.read(head, length, PEEK_SIZE - length)) >= 0) {
+                length += read;
+            }
+        } finally {
+            in.reset();
+        }
+        for (final Signature signature : SIGNATURES) {
+            if (signature.matches(head, length)) {
+                return signature.mimeType;
+            }
+        }
+        return MT_APP_OCTET;
+    }
+
+    /**
+     * Map the file name to a mime type with the servlet context, using the cache if the name has an extension.
+     */
+    private String getMimeType(final ServletContext servletContext, final String fileName) {
+        if (servletContext == null || fileName == null) {
+            return null;
+        }
+        final int dot = fileName.lastIndexOf('.');
+        if (cache == null || dot < 0 || dot == fileName.length() - 1) {
+            return servletContext.getMimeType(fileName);
+        }
+        // the servlet context may map the extension case sensitively, so it is cached as is
+        final String extension = fileName.substring(dot + 1);
+        String mimeType;
+        synchronized (cache) {
+            mimeType = cache.get(extension);
+        }
+        if (mimeType == null) {
+            mimeType = servletContext.getMimeType(fileName);
+            synchronized (cache) {
+                cache.put(extension, mimeType == null ? UNKNOWN : mimeType);
+            }
+        }
+        return mimeType == null || mimeType.isEmpty() ? null : mimeType;
+    }
+
+    /**
+     * The signature of a file format at a fixed offset of the content.
+     */
+    private static final class Signature {
+        private final int offset;
+        private final byte[] magic;
+        private final String mimeType;
+
+        Signature(final int offset, final String magic, final String mimeType) {
+            this(offset, magic.getBytes(StandardCharsets.US_ASCII), mimeType);
+        }
+
+        Signature(final int offset, final byte[] magic, final String mimeType) {
+            this.offset = offset;
+            this.magic = magic;
+            this.mimeType = mimeType;
+        }
+
+        boolean matches(final byte[] head, final int length) {
+            if (offset + magic.length > length) {
+                return false;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if (head[offset + i] != magic[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
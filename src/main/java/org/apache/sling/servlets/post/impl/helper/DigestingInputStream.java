@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The <code>DigestingInputStream</code> updates a set of message digests with
+ * all bytes read through it, such that the digests of an upload are computed
+ * while the content is written to the repository, without reading the binary
+ * a second time.
+ * <p>
+ * The digests are only complete once the end of the stream has been reached,
+ * which is reported by {@link #isComplete()}.
+ */
+public class DigestingInputStream extends FilterInputStream {
+
+    private final Map<String, MessageDigest> digests;
+
+    private Map<String, byte[]> values;
+
+    private boolean complete;
+
+    /**
+     * @param in the stream to read
+     * @param digests the digests to update, keyed by algorithm name
+     */
+    public DigestingInputStream(final InputStream in, final Map<String, MessageDigest> digests) {
+        super(in);
+        this.digests = digests;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+        if (b < 0) {
+            complete = true;
+        } else {
+            for (final MessageDigest digest : digests.values()) {
+                digest.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = in.read(b, off, len);
+        if (n < 0) {
+            complete = true;
+        } else {
+            for (final MessageDigest digest : digests.values()) {
+                digest.update(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Skipped bytes have to be digested as well, so they are read.
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 0))];
+        long remaining = n;
+        while (remaining > 0) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        // not supported, the digests cannot be reset
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return <code>true</code> if the end of the stream has been reached
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the digests of the content read. Must only be called once
+     * the stream {@link #isComplete() is complete}.
+     *
+     * @return the digest values keyed by algorithm name
+     */
+    public Map<String, byte[]> getDigests() {
+        if (values == null) {
+            final Map<String, byte[]> result = new LinkedHashMap<>();
+            for (final Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().digest());
+            }
+            values = Collections.unmodifiableMap(result);
+        }
+        return values;
+    }
+}
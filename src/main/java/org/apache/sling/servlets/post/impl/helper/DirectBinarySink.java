@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * The <code>DirectBinarySink</code> streams uploads of at least a threshold
+ * size directly into a binary created by the repository, if the resource is
+ * backed by a JCR node. The stream of the uploaded file is read completely
+ * when the binary is created, such that it can be closed right away and the
+ * request buffer of the upload is not held until the changes are committed.
+ * <p>
+ * Smaller uploads, uploads to resources not backed by JCR or all uploads if
+ * the threshold is negative are handed to the {@link ModifiableValueMap} as
+ * input stream.
+ */
+public class DirectBinarySink implements BinarySink {
+
+    /**
+     * The default threshold, which is the default size above which the Sling
+     * engine buffers uploaded files on disk rather than in memory.
+     */
+    public static final long DEFAULT_THRESHOLD = 256000;
+
+    private final JCRSupport jcrSupport;
+
+    private final long threshold;
+
+    public DirectBinarySink(final JCRSupport jcrSupport, final long threshold) {
+        this.jcrSupport = jcrSupport;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean write(
+            final Resource resource,
+            final ModifiableValueMap properties,
+            final String name,
+            final InputStream in,
+            final long size)
+            throws IOException, PersistenceException {
+        final Object node = threshold >= 0 && size >= threshold ? this.jcrSupport.getNode(resource) : null;
+        if (node == null) {
+            properties.put(name, in);
+            return false;
+        }
+        this.jcrSupport.setBinaryProperty(node, name, in);
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.sling.api.request.RequestParameter;
+
+/**
+ * The <code>FormFieldParameter</code> is a {@link RequestParameter} for the
+ * value of a form field read from the stream of a streamed upload.
+ */
+public class FormFieldParameter implements RequestParameter {
+
+    private final String name;
+
+    private final String value;
+
+    public FormFieldParameter(final String name, final String value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isFormField() {
+        return true;
+    }
+
+    @Override
+    public String getContentType() {
+        return null;
+    }
+
+    @Override
+    public long getSize() {
+        return get().length;
+    }
+
+    @Override
+    public byte[] get() {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(get());
+    }
+
+    @Override
+    public String getFileName() {
+        return null;
+    }
+
+    @Override
+    public String getString() {
+        return value;
+    }
+
+    @Override
+    public String getString(final String encoding) throws UnsupportedEncodingException {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.RequestParameterMap;
+
+/**
+ * The <code>FormFieldParameterMap</code> is a {@link RequestParameterMap} of
+ * the form fields read from the stream of a streamed upload.
+ */
+public class FormFieldParameterMap extends LinkedHashMap<String, RequestParameter[]> implements RequestParameterMap {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an empty map.
+     */
+    public FormFieldParameterMap() {
+        super();
+    }
+
+    /**
+     * Creates a map of the given parameters and form fields. Form fields replace
+     * parameters of the same name.
+     * @param parameters the parameters, for example from the query string
+     * @param formFields the form fields
+     */
+    public FormFieldParameterMap(
+            final Map<String, RequestParameter[]> parameters, final Map<String, List<String>> formFields) {
+        if (parameters != null) {
+            putAll(parameters);
+        }
+        for (final Map.Entry<String, List<String>> entry : formFields.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Sets the values of a form field.
+     * @param name the name of the form field
+     * @param values the values
+     */
+    public void add(final String name, final List<String> values) {
+        final RequestParameter[] parameters = new RequestParameter[values.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = new FormFieldParameter(name, values.get(i));
+        }
+        put(name, parameters);
+    }
+
+    @Override
+    public RequestParameter[] getValues(final String name) {
+        return get(name);
+    }
+
+    @Override
+    public RequestParameter getValue(final String name) {
+        final RequestParameter[] values = get(name);
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.io.InputStream;
 import java.util.List;
 
 import org.apache.sling.api.resource.PersistenceException;
@@ -130,6 +131,19 @@ public class JCRSupport {
         return null;
     }
 
+    /**
+     * Checks whether the exception is caused by a conflict with a concurrent
+     * change of the repository, like a conflicting commit or a lock.
+     * @param e the exception
+     * @return <code>true</code> if running the operation again might succeed
+     */
+    public boolean isConflict(final Exception e) {
+        if (supportImpl != null) {
+            return ((JCRSupportImpl) supportImpl).isConflict(e);
+        }
+        return false;
+    }
+
     public boolean hasSession(final ResourceResolver resolver) {
         if (supportImpl != null) {
             return ((JCRSupportImpl) supportImpl).hasSession(resolver);
@@ -137,6 +151,25 @@ public class JCRSupport {
         return false;
     }
 
+    /**
+     * Grants the user read access on the node of the resource. The access
+     * control entry is written with the session of the resource and must be
+     * committed by the caller.
+     *
+     * @param rsrc the resource
+     * @param userId the id of the user
+     * @return <code>true</code> if the access was granted, <code>false</code>
+     *         if the resource is no node of a Jackrabbit repository, the user
+     *         is unknown or the node cannot have an access control list
+     * @throws PersistenceException if the access control entry cannot be written
+     */
+    public boolean grantRead(final Resource rsrc, final String userId) throws PersistenceException {
+        if (supportImpl != null) {
+            return ((JCRSupportImpl) supportImpl).grantRead(rsrc, userId);
+        }
+        return false;
+    }
+
     /**
      * Stores property value(s) as reference(s). Will parse the reference(s) from the string
      * value(s) in the {@link RequestProperty}.
@@ -178,6 +211,25 @@ public class JCRSupport {
         }
     }
 
+    /**
+     * Creates a binary from the stream through the value factory of the
+     * repository and sets it as property of the node. The stream is read
+     * completely but not closed.
+     *
+     * @param node the node
+     * @param name the name of the property
+     * @param in the content of the binary
+     * @return the size of the binary
+     * @throws PersistenceException if the binary cannot be created or set
+     */
+    public long setBinaryProperty(final Object node, final String name, final InputStream in)
+            throws PersistenceException {
+        if (node != null && supportImpl != null) {
+            return ((JCRSupportImpl) supportImpl).setBinaryProperty(node, name, in);
+        }
+        throw new PersistenceException("Binary should be stored through JCR but JCR support is not available");
+    }
+
     public Object getNode(final Resource rsrc) {
         if (supportImpl != null) {
             return ((JCRSupportImpl) supportImpl).getNode(rsrc);
@@ -19,6 +19,7 @@
 package org.apache.sling.servlets.post.impl.helper;
 
 import javax.jcr.AccessDeniedException;
+import javax.jcr.Binary;
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.Item;
 import javax.jcr.ItemExistsException;
@@ -40,11 +41,19 @@ import javax.jcr.nodetype.NoSuchNodeTypeException;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.jcr.nodetype.PropertyDefinition;
+import javax.jcr.security.AccessControlList;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
 import javax.jcr.version.VersionException;
 
+import java.io.InputStream;
 import java.util.List;
 
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -289,10 +298,52 @@ public class JCRSupportImpl {
         }
     }
 
+    public boolean isConflict(final Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidItemStateException || cause instanceof LockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean hasSession(final ResourceResolver resolver) {
         return resolver.adaptTo(Session.class) != null;
     }
 
+    public boolean grantRead(final Resource rsrc, final String userId) throws PersistenceException {
+        final Node node = rsrc.adaptTo(Node.class);
+        if (node == null) {
+            return false;
+        }
+        try {
+            final Session session = node.getSession();
+            if (!(session instanceof JackrabbitSession)) {
+                return false;
+            }
+            final Authorizable user =
+                    ((JackrabbitSession) session).getUserManager().getAuthorizable(userId);
+            if (user == null) {
+                return false;
+            }
+            final AccessControlManager acm = session.getAccessControlManager();
+            final AccessControlPolicyIterator policies = acm.getApplicablePolicies(node.getPath());
+            while (policies.hasNext()) {
+                final AccessControlPolicy policy = policies.nextAccessControlPolicy();
+                if (policy instanceof AccessControlList) {
+                    final AccessControlList acl = (AccessControlList) policy;
+                    acl.addAccessControlEntry(
+                            user.getPrincipal(), new Privilege[] {acm.privilegeFromName(Privilege.JCR_READ)});
+                    acm.setPolicy(node.getPath(), acl);
+                    return true;
+                }
+            }
+            return false;
+        } catch (final RepositoryException re) {
+            throw new PersistenceException(re.getMessage(), re, rsrc.getPath(), null);
+        }
+    }
+
     public void setTypedProperty(
             final Object n, final String name, final String[] values, final int type, final boolean multiValued)
             throws PersistenceException {
@@ -311,6 +362,25 @@ public class JCRSupportImpl {
         }
     }
 
+    public long setBinaryProperty(final Object n, final String name, final InputStream in) throws PersistenceException {
+        try {
+            final Node node = (Node) n;
+            final Binary binary = node.getSession().getValueFactory().createBinary(in);
+            try {
+                node.setProperty(name, binary);
+                return binary.getSize();
+            } finally {
+                binary.dispose();
+            }
+        } catch (final ValueFormatException | ConstraintViolationException e) {
+            throw new PreconditionViolatedPersistenceException(e.getMessage(), e);
+        } catch (final VersionException | LockException e) {
+            throw new TemporaryPersistenceException(e.getMessage(), e);
+        } catch (final RepositoryException re) {
+            throw new PersistenceException(re.getMessage(), re);
+        }
+    }
+
     public Object getNode(final Resource rsrc) {
         return rsrc.adaptTo(Node.class);
     }
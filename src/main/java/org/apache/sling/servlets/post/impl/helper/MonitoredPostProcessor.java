@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>MonitoredPostProcessor</code> wraps a post processor to report
+ * its duration to the metrics of the request and to enforce a time budget.
+ * <p>
+ * A call taking longer than the budget is logged as warning. If the processor
+ * is not critical, it is skipped for the configured skip duration afterwards,
+ * such that a slow processor does not slow down every POST request. Once the
+ * skip duration has passed, the processor is called again and skipped again
+ * if it still exceeds the budget. Critical processors are never skipped.
+ */
+public class MonitoredPostProcessor implements SlingJakartaPostProcessor {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SlingJakartaPostProcessor delegate;
+
+    private final String name;
+
+    private final boolean critical;
+
+    private final AtomicLong overruns = new AtomicLong();
+
+    private final AtomicLong skips = new AtomicLong();
+
+    private volatile long budgetNanos;
+
+    private volatile long skipNanos;
+
+    private volatile boolean skipping;
+
+    private volatile long skipUntil;
+
+    /**
+     * @param delegate the post processor
+     * @param name the name of the post processor reported to the metrics
+     * @param critical whether the post processor must not be skipped
+     */
+    public MonitoredPostProcessor(final SlingJakartaPostProcessor delegate, final String name, final boolean critical) {
+        this.delegate = delegate;
+        this.name = name;
+        this.critical = critical;
+    }
+
+    /**
+     * Sets the time budget of the post processor.
+     * @param budget the budget of a single call in milliseconds, 0 or less to disable the budget
+     * @param skipDuration the time in milliseconds a non critical processor is skipped after exceeding the budget
+     */
+    public void setBudget(final long budget, final long skipDuration) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budget));
+        this.skipNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, skipDuration));
+        this.skipping = false;
+    }
+
+    public SlingJakartaPostProcessor getDelegate() {
+        return delegate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isCritical() {
+        return critical;
+    }
+
+    /**
+     * @return the number of calls which exceeded the budget
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * @return the number of calls skipped because the processor exceeded the budget
+     */
+    public long getSkips() {
+        return skips.get();
+    }
+
+    @Override
+    public void process(final SlingJakartaHttpServletRequest request, final List<Modification> changes)
+            throws Exception {
+        final RequestMetrics metrics = RequestMetrics.get(request);
+        final long budget = this.budgetNanos;
+        if (budget <= 0) {
+            final long start = metrics.start();
+            try {
+                delegate.process(request, changes);
+            } finally {
+                metrics.processor(name, start);
+            }
+            return;
+        }
+
+        if (skipping) {
+            if (System.nanoTime() - skipUntil < 0) {
+                skips.incrementAndGet();
+                metrics.count(SlingPostMetrics.COUNT_SKIPPED_PROCESSORS, 1);
+                log.debug("Skipping post processor {} which exceeded its time budget", name);
+                return;
+            }
+            skipping = false;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            delegate.process(request, changes);
+        } finally {
+            final long end = System.nanoTime();
+            metrics.processor(name, start);
+            if (end - start > budget) {
+                overruns.incrementAndGet();
+                final long skip = this.skipNanos;
+                if (!critical && skip > 0) {
+                    skipUntil = end + skip;
+                    skipping = true;
+                    log.warn(
+                            "Post processor {} took {}ms, exceeding its budget of {}ms. Skipping it for {}ms.",
+                            name,
+                            TimeUnit.NANOSECONDS.toMillis(end - start),
+                            TimeUnit.NANOSECONDS.toMillis(budget),
+                            TimeUnit.NANOSECONDS.toMillis(skip));
+                } else {
+                    log.warn(
+                            "Post processor {} took {}ms, exceeding its budget of {}ms.",
+                            name,
+                            TimeUnit.NANOSECONDS.toMillis(end - start),
+                            TimeUnit.NANOSECONDS.toMillis(budget));
+                }
+            }
+        }
+    }
+}
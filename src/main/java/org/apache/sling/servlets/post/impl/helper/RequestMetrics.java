@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import jakarta.servlet.ServletRequest;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RequestMetrics</code> report the metrics of a single request to
+ * the {@link SlingPostMetrics} service. An instance is created by the servlet
+ * for each request and passed to the operation as request attribute. If no
+ * metrics service is available, {@link #NONE} is used which does not even
+ * read the clock.
+ */
+public final class RequestMetrics {
+
+    /**
+     * The metrics of requests for which no metrics are collected.
+     */
+    public static final RequestMetrics NONE = new RequestMetrics(null, null);
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestMetrics.class);
+
+    private final SlingPostMetrics metrics;
+
+    private final String operation;
+
+    /**
+     * @param metrics the metrics service, or <code>null</code> if no metrics are collected
+     * @param operation the name of the operation of the request
+     */
+    public RequestMetrics(final SlingPostMetrics metrics, final String operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    /**
+     * Get the metrics of a request.
+     * @param request the request
+     * @return the metrics set on the request, or {@link #NONE}
+     */
+    public static RequestMetrics get(final ServletRequest request) {
+        final Object metrics = request.getAttribute(RequestMetrics.class.getName());
+        return metrics instanceof RequestMetrics ? (RequestMetrics) metrics : NONE;
+    }
+
+    /**
+     * Set the metrics on a request.
+     * @param request the request
+     */
+    public void set(final ServletRequest request) {
+        request.setAttribute(RequestMetrics.class.getName(), this);
+    }
+
+    /**
+     * @return the start time of a phase to be passed to {@link #phase(String, long)}
+     */
+    public long start() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Report a completed phase.
+     * @param phase the phase
+     * @param start the start time returned by {@link #start()}
+     */
+    public void phase(final String phase, final long start) {
+        if (metrics != null) {
+            try {
+                metrics.onPhase(operation, phase, System.nanoTime() - start);
+            } catch (final RuntimeException e) {
+                LOG.debug("Unable to report phase {} of operation {}", phase, operation, e);
+            }
+        }
+    }
+
+    /**
+     * Report a completed call of a post processor.
+     * @param processor the name of the post processor
+     * @param start the start time returned by {@link #start()}
+     */
+    public void processor(final String processor, final long start) {
+        if (metrics != null) {
+            try {
+                metrics.onProcessor(operation, processor, System.nanoTime() - start);
+            } catch (final RuntimeException e) {
+                LOG.debug("Unable to report post processor {} of operation {}", processor, operation, e);
+            }
+        }
+    }
+
+    /**
+     * Report a counter.
+     * @param name the name of the counter
+     * @param value the value
+     */
+    public void count(final String name, final long value) {
+        if (metrics != null) {
+            try {
+                metrics.onCount(operation, name, value);
+            } catch (final RuntimeException e) {
+                LOG.debug("Unable to report counter {} of operation {}", name, operation, e);
+            }
+        }
+    }
+
+    /**
+     * Report the current value of a gauge.
+     * @param name the name of the gauge
+     * @param value the current value
+     */
+    public void gauge(final String name, final long value) {
+        if (metrics != null) {
+            try {
+                metrics.onGauge(operation, name, value);
+            } catch (final RuntimeException e) {
+                LOG.debug("Unable to report gauge {} of operation {}", name, operation, e);
+            }
+        }
+    }
+
+    /**
+     * Report the completed request.
+     * @param status the status code of the response
+     * @param start the start time returned by {@link #start()}
+     */
+    public void request(final int status, final long start) {
+        if (metrics != null) {
+            try {
+                metrics.onRequest(operation, status, System.nanoTime() - start);
+            } catch (final RuntimeException e) {
+                LOG.debug("Unable to report request of operation {}", operation, e);
+            }
+        }
+    }
+}
@@ -67,6 +67,8 @@ public class RequestProperty {
 
     private Chunk chunk;
 
+    private String digest;
+
     public RequestProperty(String path) {
         assert path.startsWith("/");
         this.path = ResourceUtil.normalize(path);
@@ -322,4 +324,16 @@ public class RequestProperty {
     public void setChunk(Chunk chunk) {
         this.chunk = chunk;
     }
+
+    /**
+     * @return the digest of the uploaded file supplied by the client or
+     *         <code>null</code>.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
 }
@@ -20,18 +20,26 @@ package org.apache.sling.servlets.post.impl.helper;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
+import java.util.Objects;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.resource.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An input stream that reads from a list of resources that can be adapted into input streams.
+ * <p>
+ * The streams of the resources are opened lazily, one at a time, and each stream is closed
+ * as soon as it is exhausted. Bulk reads and {@link #transferTo(OutputStream)} are passed
+ * through to the current stream so that consolidating chunks does not degrade to reading
+ * one byte at a time.
  */
 public class ResourceIteratorInputStream extends InputStream {
     private static final Logger LOGGER = LoggerFactory.getLogger(ResourceIteratorInputStream.class);
-    private int n;
+    private long n;
     private InputStream currentStream;
     private final Iterator<Resource> iterator;
     private int streamNo = 0;
@@ -52,22 +60,98 @@ public class ResourceIteratorInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        int i = currentStream.read();
-        while (i == -1) {
-            if (iterator.hasNext()) {
-                LOGGER.debug("Stream {} provided {} bytes. ", streamNo, n);
-                currentStream = iterator.next().adaptTo(InputStream.class);
-                streamNo++;
-                n = 0;
-                if (currentStream != null) {
-                    i = currentStream.read();
-                }
+        while (currentStream != null) {
+            final int i = currentStream.read();
+            if (i != -1) {
+                n++;
+                return i;
+            }
+            nextStream();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        while (currentStream != null) {
+            final int read = currentStream.read(b, off, len);
+            if (read >= 0) {
+                n += read;
+                return read;
+            }
+            nextStream();
+        }
+        return -1;
+    }
+
+    @Override
+    public long skip(final long toSkip) throws IOException {
+        long remaining = toSkip;
+        while (remaining > 0 && currentStream != null) {
+            final long skipped = currentStream.skip(remaining);
+            if (skipped > 0) {
+                n += skipped;
+                remaining -= skipped;
+            } else if (currentStream.read() == -1) {
+                // skip may return 0 before the end of a stream, only move on once a read confirms the end.
+                nextStream();
             } else {
-                LOGGER.debug("Last Stream {} provided {} bytes. ", streamNo, n);
-                return -1;
+                n++;
+                remaining--;
+            }
+        }
+        return toSkip - remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return currentStream == null ? 0 : currentStream.available();
+    }
+
+    @Override
+    public long transferTo(final OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "out");
+        long transferred = 0;
+        while (currentStream != null) {
+            final long count = currentStream.transferTo(out);
+            n += count;
+            transferred += count;
+            nextStream();
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (currentStream != null) {
+            try {
+                currentStream.close();
+            } finally {
+                currentStream = null;
+            }
+        }
+    }
+
+    /**
+     * Close the exhausted stream and move on to the next resource which can be adapted
+     * to an input stream. If there is none left, the current stream is set to <code>null</code>.
+     */
+    private void nextStream() {
+        IOUtils.closeQuietly(currentStream);
+        currentStream = null;
+        while (iterator.hasNext()) {
+            LOGGER.debug("Stream {} provided {} bytes. ", streamNo, n);
+            streamNo++;
+            n = 0;
+            currentStream = iterator.next().adaptTo(InputStream.class);
+            if (currentStream != null) {
+                return;
             }
         }
-        n++;
-        return i;
+        LOGGER.debug("Last Stream {} provided {} bytes. ", streamNo, n);
     }
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -47,8 +48,10 @@ import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.servlets.post.MimeTypeResolver;
 import org.apache.sling.servlets.post.Modification;
 import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,10 +105,37 @@ public class SlingFileUploadHandler {
 
     private final JCRSupport jcrSupport = JCRSupport.INSTANCE;
 
+    /**
+     * The sink writing the content of uploads which are not chunked.
+     */
+    private volatile BinarySink binarySink = new DirectBinarySink(jcrSupport, DirectBinarySink.DEFAULT_THRESHOLD);
+
+    /**
+     * Computes and verifies the digests of uploads which are not chunked.
+     */
+    private volatile UploadDigester uploadDigester = UploadDigester.NONE;
+
+    /**
+     * Determines the mime type of uploads.
+     */
+    private volatile MimeTypeResolver mimeTypeResolver = new DefaultMimeTypeResolver();
+
     public void setServletContext(final ServletContext servletContext) {
         this.servletContext = servletContext;
     }
 
+    public void setBinarySink(final BinarySink binarySink) {
+        this.binarySink = binarySink;
+    }
+
+    public void setUploadDigester(final UploadDigester uploadDigester) {
+        this.uploadDigester = uploadDigester;
+    }
+
+    public void setMimeTypeResolver(final MimeTypeResolver mimeTypeResolver) {
+        this.mimeTypeResolver = mimeTypeResolver;
+    }
+
     /**
      * Uses the file(s) in the request parameter for creation of new nodes.
      * if the parent node is a nt:folder a new nt:file is created. otherwise
@@ -122,7 +152,8 @@ public class SlingFileUploadHandler {
             final RequestParameter value,
             final List<Modification> changes,
             String name,
-            final String contentType)
+            final String contentType,
+            final RequestMetrics metrics)
             throws PersistenceException {
         // check type hint. if the type is ok and extends from nt:file,
         // create an nt:file with that type. if it's invalid, drop it and let
@@ -169,23 +200,90 @@ public class SlingFileUploadHandler {
         final ModifiableValueMap mvm = newResource.adaptTo(ModifiableValueMap.class);
         // set properties
         mvm.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-        mvm.put(JcrConstants.JCR_MIMETYPE, contentType);
         changes.add(Modification.onModified(newResource.getPath() + "/" + JcrConstants.JCR_LASTMODIFIED));
-        changes.add(Modification.onModified(newResource.getPath() + "/" + JcrConstants.JCR_MIMETYPE));
 
         try {
             // process chunk upload request separately
             if (prop.isChunkUpload()) {
+                setMimeType(
+                        newResource, mvm, contentType != null ? contentType : MimeTypeResolver.MT_APP_OCTET, changes);
                 processChunk(resParent, newResource, prop, value, changes);
             } else {
-                mvm.put(JcrConstants.JCR_DATA, value.getInputStream());
+                final long start = System.currentTimeMillis();
+                final long metricsStart = metrics.start();
+                final UploadDigester digester = this.uploadDigester;
+                InputStream in = value.getInputStream();
+                final DigestingInputStream digesting;
+                final boolean written;
+                // the stream is closed here unless the persistence reads it on commit
+                boolean deferred = false;
+                try {
+                    if (contentType != null) {
+                        setMimeType(newResource, mvm, contentType, changes);
+                    } else {
+                        // peek at the first bytes of the content to detect the mime type
+                        if (!in.markSupported()) {
+                            in = new BufferedInputStream(in);
+                        }
+                        setMimeType(newResource, mvm, this.mimeTypeResolver.detectMimeType(in), changes);
+                    }
+                    digesting = digester.wrap(in, prop.getDigest());
+                    written = binarySink.write(
+                            newResource,
+                            mvm,
+                            JcrConstants.JCR_DATA,
+                            digesting != null ? digesting : in,
+                            value.getSize());
+                    deferred = !written;
+                } finally {
+                    if (!deferred) {
+                        IOUtils.closeQuietly(in);
+                    }
+                }
+                final boolean verifyNow = deferred && digesting != null && prop.getDigest() != null;
+                if (verifyNow) {
+                    // the persistence only reads the stream on commit, read it now such that the digest
+                    // is verified before commit and hand a new stream of the upload to the persistence
+                    try {
+                        IOUtils.consume(digesting);
+                    } finally {
+                        in.close();
+                    }
+                    mvm.put(JcrConstants.JCR_DATA, value.getInputStream());
+                }
                 changes.add(Modification.onModified(newResource.getPath() + "/" + JcrConstants.JCR_DATA));
+                if (digesting != null) {
+                    digester.apply(newResource, mvm, digesting, prop.getDigest(), changes);
+                }
+                metrics.phase(SlingPostMetrics.PHASE_UPLOAD, metricsStart);
+                metrics.count(SlingPostMetrics.COUNT_UPLOAD_BYTES, value.getSize());
+                if (log.isDebugEnabled()) {
+                    log.debug(
+                            "Upload of {} bytes to {} {} in {}ms",
+                            value.getSize(),
+                            newResource.getPath(),
+                            written
+                                    ? "written to the repository"
+                                    : verifyNow
+                                            ? "digested and handed to the persistence"
+                                            : "handed to the persistence, which reads it on commit",
+                            System.currentTimeMillis() - start);
+                }
             }
         } catch (IOException e) {
             throw new PersistenceException("Error while retrieving inputstream from parameter value.", e);
         }
     }
 
+    private void setMimeType(
+            final Resource resource,
+            final ModifiableValueMap mvm,
+            final String mimeType,
+            final List<Modification> changes) {
+        mvm.put(JcrConstants.JCR_MIMETYPE, mimeType);
+        changes.add(Modification.onModified(resource.getPath() + "/" + JcrConstants.JCR_MIMETYPE));
+    }
+
     /**
      * Process chunk upload. For first and intermediate chunks request persists
      * chunks at jcr:content/chunk_start_end/jcr:data or
@@ -421,7 +519,7 @@ public class SlingFileUploadHandler {
 
         if (chunkParent != null) {
             for (final Resource c :
-                    new FilteringResourceIterator(rsrc.listChildren(), SlingPostConstants.CHUNK_NODE_NAME)) {
+                    new FilteringResourceIterator(chunkParent.listChildren(), SlingPostConstants.CHUNK_NODE_NAME)) {
                 c.getResourceResolver().delete(c);
             }
             final ModifiableValueMap vm = chunkParent.adaptTo(ModifiableValueMap.class);
@@ -503,8 +601,6 @@ public class SlingFileUploadHandler {
         return false;
     }
 
-    private static final String MT_APP_OCTET = "application/octet-stream";
-
     /**
      * Uses the file(s) in the request parameter for creation of new nodes.
      * if the parent node is a nt:folder a new nt:file is created. otherwise
@@ -518,6 +614,25 @@ public class SlingFileUploadHandler {
      */
     public void setFile(final Resource parent, final RequestProperty prop, final List<Modification> changes)
             throws PersistenceException {
+        setFile(parent, prop, changes, RequestMetrics.NONE);
+    }
+
+    /**
+     * Uses the file(s) in the request parameter for creation of new nodes,
+     * reporting the size and the duration of uploads which are not chunked.
+     *
+     * @param parent the parent node
+     * @param prop the assembled property info
+     * @param changes the changes
+     * @param metrics the metrics of the request
+     * @throws PersistenceException if an error occurs
+     */
+    public void setFile(
+            final Resource parent,
+            final RequestProperty prop,
+            final List<Modification> changes,
+            final RequestMetrics metrics)
+            throws PersistenceException {
         for (final RequestParameter value : prop.getValues()) {
 
             // ignore if a plain form field or empty
@@ -535,26 +650,11 @@ public class SlingFileUploadHandler {
             }
             name = Text.escapeIllegalJcrChars(name);
 
-            // get content type
-            String contentType = value.getContentType();
-            if (contentType != null) {
-                int idx = contentType.indexOf(';');
-                if (idx > 0) {
-                    contentType = contentType.substring(0, idx);
-                }
-            }
-            if (contentType == null || contentType.equals(MT_APP_OCTET)) {
-                // try to find a better content type
-                final ServletContext ctx = this.servletContext;
-                if (ctx != null) {
-                    contentType = ctx.getMimeType(value.getFileName());
-                }
-                if (contentType == null) {
-                    contentType = MT_APP_OCTET;
-                }
-            }
+            // get content type, null if it is to be detected from the content
+            final String contentType =
+                    this.mimeTypeResolver.getMimeType(this.servletContext, value.getContentType(), value.getFileName());
 
-            this.setFile(parent, prop, value, changes, name, contentType);
+            this.setFile(parent, prop, value, changes, name, contentType, metrics);
         }
     }
 
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,7 +39,9 @@ import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.servlets.post.MimeTypeResolver;
 import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,7 +73,6 @@ public class StreamedChunk {
     private static final String SLING_CHUNK_MIXIN = "sling:chunks";
     private static final String SLING_CHUNK_NT = "sling:chunk";
     private static final String SLING_OFFSET = "sling:offset";
-    private static final String MT_APP_OCTET = "application/octet-stream";
     private final Logger LOGGER = LoggerFactory.getLogger(StreamedChunk.class);
 
     private final long offset;
@@ -81,6 +83,12 @@ public class StreamedChunk {
     private final boolean completed;
     private final boolean chunked;
     private final String chunkResourceName;
+    private final UploadDigester uploadDigester;
+    private final MimeTypeResolver mimeTypeResolver;
+    private final String digest;
+    private DigestingInputStream digestingInputStream;
+    private InputStream contentInputStream;
+    private String contentType;
 
     /**
      * Construct a chunk from the part and form fields. Once constructed it is immutable exposing a store method to store the chunk.
@@ -90,8 +98,48 @@ public class StreamedChunk {
      * @param servletContext the current servlet context needed to resolve mimetypes.
      */
     public StreamedChunk(Part part, Map<String, List<String>> formFields, ServletContext servletContext) {
+        this(part, formFields, servletContext, UploadDigester.NONE);
+    }
+
+    /**
+     * Construct a chunk from the part and form fields, computing digests of the part if it is not chunked.
+     * @param part the current part, not read other than headers.
+     * @param formFields form fields encountered in teh request stream prior to this part.
+     * @param servletContext the current servlet context needed to resolve mimetypes.
+     * @param uploadDigester the digester computing and verifying digests of the part.
+     */
+    public StreamedChunk(
+            Part part,
+            Map<String, List<String>> formFields,
+            ServletContext servletContext,
+            UploadDigester uploadDigester) {
+        this(part, formFields, servletContext, uploadDigester, new DefaultMimeTypeResolver());
+    }
+
+    /**
+     * Construct a chunk from the part and form fields, computing digests and detecting the mime type of the part
+     * if it is not chunked.
+     * @param part the current part, not read other than headers.
+     * @param formFields form fields encountered in teh request stream prior to this part.
+     * @param servletContext the current servlet context needed to resolve mimetypes.
+     * @param uploadDigester the digester computing and verifying digests of the part.
+     * @param mimeTypeResolver the resolver of the mime type of the part.
+     */
+    public StreamedChunk(
+            Part part,
+            Map<String, List<String>> formFields,
+            ServletContext servletContext,
+            UploadDigester uploadDigester,
+            MimeTypeResolver mimeTypeResolver) {
         this.part = part;
         this.servletContext = servletContext;
+        this.uploadDigester = uploadDigester;
+        this.mimeTypeResolver = mimeTypeResolver;
+        if (formFields.containsKey(part.getName() + SlingPostConstants.SUFFIX_DIGEST)) {
+            digest = lastFrom(formFields.get(part.getName() + SlingPostConstants.SUFFIX_DIGEST));
+        } else {
+            digest = UploadDigester.fromContentMD5(part.getHeader("Content-MD5"));
+        }
 
         String contentRangeHeader = part.getHeader("Content-Range");
         String contentLengthHeader = part.getHeader("Content-Length");
@@ -134,6 +182,18 @@ public class StreamedChunk {
                 new Object[] {chunkResourceName, chunked, completed, fileLength, chunkLength, offset});
     }
 
+    /**
+     * Check whether a part is a chunk of an upload, either by a Content-Range header or by @Length and @Offset form fields.
+     * @param part the current part, not read other than headers.
+     * @param formFields form fields encountered in the request stream prior to this part.
+     * @return true if the part is a chunk.
+     */
+    public static boolean isChunked(Part part, Map<String, List<String>> formFields) {
+        return part.getHeader("Content-Range") != null
+                || (formFields.containsKey(part.getName() + "@Length")
+                        && formFields.containsKey(part.getName() + "@Offset"));
+    }
+
     /**
      * Store the chunk in a file resource under a jcr:content sub node. The method does not commit the resource resolver. The caller
      * must perform the commit. If the stream is a stream of body parts and the parts are complete, the store operation will commit
@@ -151,6 +211,18 @@ public class StreamedChunk {
         } else {
             result = initState(fileResource, changes);
         }
+        if (digestingInputStream != null) {
+            final ModifiableValueMap vm = result.adaptTo(ModifiableValueMap.class);
+            if (digest != null && !digestingInputStream.isComplete()) {
+                // the persistence only reads the content on commit, read it now to verify the digest before commit
+                try {
+                    vm.put(JcrConstants.JCR_DATA, UploadDigester.spool(digestingInputStream));
+                } catch (IOException e) {
+                    throw new PersistenceException("Error while reading request part " + part.getName(), e);
+                }
+            }
+            uploadDigester.apply(result, vm, digestingInputStream, digest, changes);
+        }
         storeChunk(result, changes);
         return result;
     }
@@ -178,7 +250,7 @@ public class StreamedChunk {
             throw new PersistenceException("Resource at " + contentResource.getPath() + " is not modifiable.");
         }
         vm.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-        vm.put(JcrConstants.JCR_MIMETYPE, getContentType(part));
+        vm.put(JcrConstants.JCR_MIMETYPE, getContentType());
         if (chunked) {
             if (vm.containsKey(SLING_FILE_LENGTH)) {
                 long previousFileLength = vm.get(SLING_FILE_LENGTH, Long.class);
@@ -199,11 +271,7 @@ public class StreamedChunk {
             vm.put(SLING_CHUNKS_LENGTH, previousChunksLength + chunkLength);
             vm.put(JcrConstants.JCR_MIXINTYPES, SLING_CHUNK_MIXIN);
         } else {
-            try {
-                vm.put(JcrConstants.JCR_DATA, part.getInputStream());
-            } catch (IOException e) {
-                throw new PersistenceException("Error while retrieving inputstream from request part.", e);
-            }
+            vm.put(JcrConstants.JCR_DATA, getContentInputStream());
         }
     }
 
@@ -218,7 +286,7 @@ public class StreamedChunk {
         Map<String, Object> resourceProps = new HashMap<>();
         resourceProps.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE);
         resourceProps.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-        resourceProps.put(JcrConstants.JCR_MIMETYPE, getContentType(part));
+        resourceProps.put(JcrConstants.JCR_MIMETYPE, getContentType());
 
         if (chunked) {
             resourceProps.put(SLING_CHUNKS_LENGTH, chunkLength);
@@ -227,11 +295,7 @@ public class StreamedChunk {
             // add a zero size file to satisfy JCR constraints.
             resourceProps.put(JcrConstants.JCR_DATA, new ByteArrayInputStream(new byte[0]));
         } else {
-            try {
-                resourceProps.put(JcrConstants.JCR_DATA, part.getInputStream());
-            } catch (IOException e) {
-                throw new PersistenceException("Error while retrieving inputstream from request part.", e);
-            }
+            resourceProps.put(JcrConstants.JCR_DATA, getContentInputStream());
         }
 
         Resource result =
@@ -242,6 +306,34 @@ public class StreamedChunk {
         return result;
     }
 
+    /**
+     * Get the input stream of a part which is not chunked, computing digests if required.
+     * @return the input stream.
+     * @throws PersistenceException
+     */
+    private InputStream getContentInputStream() throws PersistenceException {
+        if (contentInputStream == null) {
+            InputStream in;
+            try {
+                in = part.getInputStream();
+                contentType = mimeTypeResolver.getMimeType(
+                        servletContext, part.getContentType(), part.getSubmittedFileName());
+                if (contentType == null) {
+                    // peek at the first bytes of the content to detect the mime type
+                    if (!in.markSupported()) {
+                        in = new BufferedInputStream(in);
+                    }
+                    contentType = mimeTypeResolver.detectMimeType(in);
+                }
+            } catch (IOException e) {
+                throw new PersistenceException("Error while retrieving inputstream from request part.", e);
+            }
+            digestingInputStream = uploadDigester.wrap(in, digest);
+            contentInputStream = digestingInputStream != null ? digestingInputStream : in;
+        }
+        return contentInputStream;
+    }
+
     /**
      * Store the chunk in a chunked resource. If not chunked does nothing.
      * @param contentResource
@@ -339,26 +431,21 @@ public class StreamedChunk {
     }
 
     /**
-     * Get the content type of the part.
-     * @param part
-     * @return
+     * Get the content type of the part. The content of a part which is not chunked is opened to detect the
+     * content type if required.
+     * @return the content type.
+     * @throws PersistenceException
      */
-    private String getContentType(final Part part) {
-        String contentType = part.getContentType();
-        if (contentType != null) {
-            int idx = contentType.indexOf(';');
-            if (idx > 0) {
-                contentType = contentType.substring(0, idx);
-            }
-        }
-        if (contentType == null || contentType.equals(MT_APP_OCTET)) {
-            // try to find a better content type
-            ServletContext ctx = this.servletContext;
-            if (ctx != null) {
-                contentType = ctx.getMimeType(part.getSubmittedFileName());
-            }
-            if (contentType == null || contentType.equals(MT_APP_OCTET)) {
-                contentType = MT_APP_OCTET;
+    private String getContentType() throws PersistenceException {
+        if (contentType == null) {
+            if (chunked) {
+                contentType = mimeTypeResolver.getMimeType(
+                        servletContext, part.getContentType(), part.getSubmittedFileName());
+                if (contentType == null) {
+                    contentType = MimeTypeResolver.MT_APP_OCTET;
+                }
+            } else {
+                getContentInputStream();
             }
         }
         return contentType;
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.exceptions.PreconditionViolatedPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>UploadDigester</code> computes digests of uploaded files while
+ * they are streamed into the repository and stores them in the multi-valued
+ * {@value #PN_DIGESTS} property of the resource holding the binary, as
+ * <code>&lt;algorithm&gt;:&lt;hex value&gt;</code>.
+ * <p>
+ * Digests are computed for the configured algorithms and for the algorithm
+ * of a digest supplied by the client, either with the
+ * {@link org.apache.sling.servlets.post.SlingPostConstants#SUFFIX_DIGEST @Digest}
+ * suffix or a <code>Content-MD5</code> part header. The client digest uses
+ * the instance digest format of RFC 3230, <code>&lt;algorithm&gt;=&lt;value&gt;</code>,
+ * where the value is either base64 or hex encoded. If it does not match the
+ * uploaded content the upload is rejected before the changes are committed.
+ */
+public class UploadDigester {
+
+    /**
+     * The mixin allowing the {@link #PN_DIGESTS} property.
+     */
+    public static final String MT_DIGESTS = "sling:binaryDigests";
+
+    /**
+     * The property storing the digests.
+     */
+    public static final String PN_DIGESTS = "sling:digests";
+
+    /**
+     * An instance computing digests only if supplied by the client.
+     */
+    public static final UploadDigester NONE = new UploadDigester(new String[0]);
+
+    private static final Logger log = LoggerFactory.getLogger(UploadDigester.class);
+
+    private final JCRSupport jcrSupport = JCRSupport.INSTANCE;
+
+    private final Set<String> algorithms = new LinkedHashSet<>();
+
+    /**
+     * @param algorithms the algorithms to compute for each upload, unsupported
+     *            algorithms are ignored.
+     */
+    public UploadDigester(final String[] algorithms) {
+        if (algorithms != null) {
+            for (final String algorithm : algorithms) {
+                if (algorithm == null || algorithm.trim().isEmpty()) {
+                    continue;
+                }
+                final String name = algorithm.trim().toUpperCase(Locale.ROOT);
+                try {
+                    MessageDigest.getInstance(name);
+                    this.algorithms.add(name);
+                } catch (final NoSuchAlgorithmException e) {
+                    log.warn("Ignoring unsupported upload digest algorithm {}", algorithm);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the client digest value for a <code>Content-MD5</code> header.
+     *
+     * @param contentMD5 the header value, may be <code>null</code>
+     * @return the digest or <code>null</code>
+     */
+    public static String fromContentMD5(final String contentMD5) {
+        return contentMD5 == null ? null : "MD5=" + contentMD5.trim();
+    }
+
+    /**
+     * Wraps the stream of an upload to compute the digests.
+     *
+     * @param in the stream of the uploaded file
+     * @param expected the digest supplied by the client or <code>null</code>
+     * @return the digesting stream or <code>null</code> if no digest has to be
+     *         computed
+     * @throws PersistenceException if the expected digest is invalid
+     */
+    public DigestingInputStream wrap(final InputStream in, final String expected) throws PersistenceException {
+        final Set<String> names = new LinkedHashSet<>(this.algorithms);
+        if (expected != null) {
+            names.add(algorithmOf(expected));
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+        for (final String name : names) {
+            try {
+                digests.put(name, MessageDigest.getInstance(name));
+            } catch (final NoSuchAlgorithmException e) {
+                throw new PreconditionViolatedPersistenceException("Unsupported digest algorithm " + name, e);
+            }
+        }
+        return new DigestingInputStream(in, digests);
+    }
+
+    /**
+     * Reads the content of an upload which the persistence only reads on
+     * commit, such that the digest supplied by the client can be verified
+     * before committing. The content is spooled to a temporary file, which is
+     * deleted when the returned stream is closed.
+     *
+     * @param in the digesting stream returned by {@link #wrap(InputStream, String)},
+     *            which has not been read yet
+     * @return the content to hand to the persistence instead of the digesting stream
+     * @throws IOException if the content cannot be read or spooled
+     */
+    public static InputStream spool(final DigestingInputStream in) throws IOException {
+        final Path file = Files.createTempFile("sling-post-upload", ".tmp");
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies the digest supplied by the client and stores the digests on the
+     * resource. This must be called after the content has been handed to the
+     * persistence but before committing. If a digest is supplied, the content
+     * must have been read by then, see {@link #spool(DigestingInputStream)}.
+     *
+     * @param resource the resource holding the binary
+     * @param properties the modifiable properties of the resource
+     * @param in the digesting stream returned by {@link #wrap(InputStream, String)}
+     * @param expected the digest supplied by the client or <code>null</code>
+     * @param changes the changes
+     * @throws PersistenceException if the digest does not match or cannot be
+     *             verified before commit
+     */
+    public void apply(
+            final Resource resource,
+            final ModifiableValueMap properties,
+            final DigestingInputStream in,
+            final String expected,
+            final List<Modification> changes)
+            throws PersistenceException {
+        if (!in.isComplete()) {
+            // the persistence reads the content on commit
+            if (expected != null) {
+                throw new PreconditionViolatedPersistenceException(
+                        "Digest of upload cannot be verified before commit", null, resource.getPath(), null);
+            }
+            log.debug("Upload to {} is read on commit, not storing digests", resource.getPath());
+            return;
+        }
+        final Map<String, byte[]> digests = in.getDigests();
+        if (expected != null) {
+            final String algorithm = algorithmOf(expected);
+            final byte[] actual = digests.get(algorithm);
+            if (!MessageDigest.isEqual(actual, decode(expected, actual.length))) {
+                throw new PreconditionViolatedPersistenceException(
+                        "Digest mismatch, expected " + expected + " but was " + algorithm + "=" + toHex(actual),
+                        null,
+                        resource.getPath(),
+                        null);
+            }
+        }
+        final String[] values = new String[digests.size()];
+        int i = 0;
+        for (final Map.Entry<String, byte[]> entry : digests.entrySet()) {
+            values[i++] = entry.getKey() + ":" + toHex(entry.getValue());
+        }
+        if (jcrSupport.isNode(resource)) {
+            addMixin(properties);
+        }
+        properties.put(PN_DIGESTS, values);
+        changes.add(Modification.onModified(resource.getPath() + "/" + PN_DIGESTS));
+    }
+
+    private static void addMixin(final ModifiableValueMap vm) {
+        final String[] mixins = vm.get(JcrConstants.JCR_MIXINTYPES, String[].class);
+        if (mixins == null) {
+            vm.put(JcrConstants.JCR_MIXINTYPES, new String[] {MT_DIGESTS});
+        } else {
+            final Set<String> types = new HashSet<>(Arrays.asList(mixins));
+            if (types.add(MT_DIGESTS)) {
+                vm.put(JcrConstants.JCR_MIXINTYPES, types.toArray(new String[types.size()]));
+            }
+        }
+    }
+
+    private static String algorithmOf(final String digest) throws PersistenceException {
+        final int pos = digest.indexOf('=');
+        if (pos <= 0) {
+            throw new PreconditionViolatedPersistenceException("Invalid digest " + digest);
+        }
+        return digest.substring(0, pos).trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static byte[] decode(final String digest, final int length) throws PersistenceException {
+        final String value = digest.substring(digest.indexOf('=') + 1).trim();
+        if (value.length() == length * 2 && value.matches("[0-9a-fA-F]+")) {
+            final byte[] result = new byte[length];
+            for (int i = 0; i < length; i++) {
+                result[i] = (byte) Integer.parseInt(value.substring(i * 2, i * 2 + 2), 16);
+            }
+            return result;
+        }
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (final IllegalArgumentException e) {
+            throw new PreconditionViolatedPersistenceException("Invalid digest " + digest, e);
+        }
+    }
+
+    static String toHex(final byte[] value) {
+        final StringBuilder sb = new StringBuilder(value.length * 2);
+        for (final byte b : value) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -38,6 +38,11 @@ import org.apache.sling.servlets.post.VersioningConfiguration;
  */
 abstract class AbstractCopyMoveOperation extends AbstractPostOperation {
 
+    @Override
+    protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+        return true;
+    }
+
     @Override
     protected final void doRun(
             final SlingJakartaHttpServletRequest request,
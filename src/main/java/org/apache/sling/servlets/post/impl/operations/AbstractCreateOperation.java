@@ -35,6 +35,7 @@ import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.servlets.post.JakartaNodeNameGenerator;
 import org.apache.sling.servlets.post.JakartaPostResponse;
 import org.apache.sling.servlets.post.Modification;
@@ -93,7 +94,7 @@ abstract class AbstractCreateOperation extends AbstractPostOperation {
      * @param request The http request
      * @return If a prefix is required.
      */
-    private final boolean requireItemPathPrefix(SlingJakartaHttpServletRequest request) {
+    protected final boolean requireItemPathPrefix(SlingJakartaHttpServletRequest request) {
 
         boolean requirePrefix = false;
 
@@ -225,13 +226,25 @@ abstract class AbstractCreateOperation extends AbstractPostOperation {
      */
     protected Map<String, RequestProperty> collectContent(
             final SlingJakartaHttpServletRequest request, final JakartaPostResponse response) {
+        return collectContent(request.getRequestParameterMap(), requireItemPathPrefix(request), response);
+    }
 
-        final boolean requireItemPrefix = requireItemPathPrefix(request);
+    /**
+     * Collects the properties that form the content to be written back to the
+     * resource tree from the given parameters.
+     * @param parameters the parameters
+     * @param requireItemPrefix whether parameters must start with an item path prefix
+     * @param response the response
+     * @return the collected properties
+     */
+    protected Map<String, RequestProperty> collectContent(
+            final Map<String, RequestParameter[]> parameters,
+            final boolean requireItemPrefix,
+            final JakartaPostResponse response) {
 
         // walk the request parameters and collect the properties
         final LinkedHashMap<String, RequestProperty> reqProperties = new LinkedHashMap<>();
-        for (final Map.Entry<String, RequestParameter[]> e :
-                request.getRequestParameterMap().entrySet()) {
+        for (final Map.Entry<String, RequestParameter[]> e : parameters.entrySet()) {
             final String paramName = e.getKey();
 
             if (ignoreParameter(paramName)) {
@@ -285,7 +298,7 @@ abstract class AbstractCreateOperation extends AbstractPostOperation {
                 // @ValueFrom params must have exactly one value, else ignored
                 if (e.getValue().length == 1) {
                     final String refName = e.getValue()[0].getString();
-                    final RequestParameter[] refValues = request.getRequestParameters(refName);
+                    final RequestParameter[] refValues = parameters.get(refName);
                     if (refValues != null) {
                         prop.setValues(refValues);
                     }
@@ -428,6 +441,15 @@ abstract class AbstractCreateOperation extends AbstractPostOperation {
                 continue;
             }
 
+            if (propPath.endsWith(SlingPostConstants.SUFFIX_DIGEST)) {
+                final RequestProperty prop =
+                        getOrCreateRequestProperty(reqProperties, propPath, SlingPostConstants.SUFFIX_DIGEST);
+                if (e.getValue().length == 1) {
+                    prop.setDigest(e.getValue()[0].getString());
+                }
+                continue;
+            }
+
             // plain property, create from values
             final RequestProperty prop = getOrCreateRequestProperty(reqProperties, propPath, null);
             prop.setValues(e.getValue());
@@ -500,6 +522,189 @@ abstract class AbstractCreateOperation extends AbstractPostOperation {
         return prop;
     }
 
+    /**
+     * Moves all repository content listed as repository move source in the
+     * request properties to the locations indicated by the resource properties.
+     * @param checkedOutNodes
+     */
+    protected void processMoves(
+            final ResourceResolver resolver,
+            Map<String, RequestProperty> reqProperties,
+            List<Modification> changes,
+            VersioningConfiguration versioningConfiguration)
+            throws PersistenceException {
+
+        for (RequestProperty property : reqProperties.values()) {
+            if (property.hasRepositoryMoveSource()) {
+                processMovesCopiesInternal(property, true, resolver, reqProperties, changes, versioningConfiguration);
+            }
+        }
+    }
+
+    /**
+     * Copies all repository content listed as repository copy source in the
+     * request properties to the locations indicated by the resource properties.
+     * @param checkedOutNodes
+     */
+    protected void processCopies(
+            final ResourceResolver resolver,
+            Map<String, RequestProperty> reqProperties,
+            List<Modification> changes,
+            VersioningConfiguration versioningConfiguration)
+            throws PersistenceException {
+
+        for (RequestProperty property : reqProperties.values()) {
+            if (property.hasRepositoryCopySource()) {
+                processMovesCopiesInternal(property, false, resolver, reqProperties, changes, versioningConfiguration);
+            }
+        }
+    }
+
+    /**
+     * Internal implementation of the
+     * {@link #processCopies(ResourceResolver, Map, HtmlResponse)} and
+     * {@link #processMoves(ResourceResolver, Map, HtmlResponse)} methods taking into
+     * account whether the source is actually a property or a node.
+     * <p>
+     * Any intermediary nodes to the destination as indicated by the
+     * <code>property</code> path are created using the
+     * <code>reqProperties</code> as indications for required node types.
+     *
+     * @param property The {@link RequestProperty} identifying the source
+     *            content of the operation.
+     * @param isMove <code>true</code> if the source item is to be moved.
+     *            Otherwise the source item is just copied.
+     * @param resolver The resource resolver to use to access the content
+     * @param reqProperties All accepted request properties. This is used to
+     *            create intermediary nodes along the property path.
+     * @param response The <code>HtmlResponse</code> into which successful
+     *            copies and moves as well as intermediary node creations are
+     *            recorded.
+     * @throws PersistenceException May be thrown if an error occurs.
+     */
+    private void processMovesCopiesInternal(
+            RequestProperty property,
+            boolean isMove,
+            final ResourceResolver resolver,
+            Map<String, RequestProperty> reqProperties,
+            List<Modification> changes,
+            VersioningConfiguration versioningConfiguration)
+            throws PersistenceException {
+
+        String propPath = property.getPath();
+        String source = property.getRepositorySource();
+
+        // only continue here, if the source really exists
+        if (resolver.getResource(source) != null) {
+
+            // if the destination item already exists, remove it
+            // first, otherwise ensure the parent location
+            if (resolver.getResource(propPath) != null) {
+                final Resource parent = resolver.getResource(propPath).getParent();
+                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
+
+                resolver.delete(resolver.getResource(propPath));
+                changes.add(Modification.onDeleted(propPath));
+            } else {
+                Resource parent = deepGetOrCreateResource(
+                        resolver, property.getParentPath(), reqProperties, changes, versioningConfiguration);
+                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
+            }
+
+            // move through the session and record operation
+            // check if the item is backed by JCR
+            Resource sourceRsrc = resolver.getResource(source);
+            final Object sourceItem = this.jcrSupport.getItem(sourceRsrc);
+            final Object destItem = this.jcrSupport.getItem(resolver.getResource(property.getParentPath()));
+            if (sourceItem != null && destItem != null) {
+                if (this.jcrSupport.isNode(sourceRsrc)) {
+                    if (isMove) {
+                        this.jcrSupport.checkoutIfNecessary(sourceRsrc.getParent(), changes, versioningConfiguration);
+                        this.jcrSupport.move(sourceItem, destItem, ResourceUtil.getName(propPath));
+                    } else {
+                        this.jcrSupport.checkoutIfNecessary(
+                                resolver.getResource(property.getParentPath()), changes, versioningConfiguration);
+                        this.jcrSupport.copy(sourceItem, destItem, property.getName());
+                    }
+                } else {
+                    // property: move manually
+                    this.jcrSupport.checkoutIfNecessary(
+                            resolver.getResource(property.getParentPath()), changes, versioningConfiguration);
+                    // create destination property
+                    this.jcrSupport.copy(sourceItem, destItem, ResourceUtil.getName(source));
+
+                    // remove source property (if not just copying)
+                    if (isMove) {
+                        this.jcrSupport.checkoutIfNecessary(sourceRsrc.getParent(), changes, versioningConfiguration);
+                        resolver.delete(sourceRsrc);
+                    }
+                }
+            }
+
+            // make sure the property is not deleted even in case for a given
+            // property both @MoveFrom and @Delete is set
+            property.setDelete(false);
+
+            // record successful move
+            if (isMove) {
+                changes.add(Modification.onMoved(source, propPath));
+            } else {
+                changes.add(Modification.onCopied(source, propPath));
+            }
+        }
+    }
+
+    /**
+     * Removes all properties listed as {@link RequestProperty#isDelete()} from
+     * the resource.
+     *
+     * @param resolver The <code>ResourceResolver</code> used to access the
+     *            resources to delete the properties.
+     * @param reqProperties The map of request properties to check for
+     *            properties to be removed.
+     * @param response The <code>HtmlResponse</code> to be updated with
+     *            information on deleted properties.
+     * @throws PersistenceException Is thrown if an error occurs checking or
+     *             removing properties.
+     */
+    protected void processDeletes(
+            final ResourceResolver resolver,
+            final Map<String, RequestProperty> reqProperties,
+            final List<Modification> changes,
+            final VersioningConfiguration versioningConfiguration)
+            throws PersistenceException {
+
+        for (final RequestProperty property : reqProperties.values()) {
+
+            if (property.isDelete()) {
+                final Resource parent = resolver.getResource(property.getParentPath());
+                if (parent == null) {
+                    continue;
+                }
+                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
+
+                final ValueMap vm = parent.adaptTo(ModifiableValueMap.class);
+                if (vm == null) {
+                    throw new PersistenceException("Resource '" + parent.getPath() + "' is not modifiable.");
+                }
+                if (vm.containsKey(property.getName())) {
+                    if (JcrConstants.JCR_MIXINTYPES.equals(property.getName())) {
+                        vm.put(JcrConstants.JCR_MIXINTYPES, new String[0]);
+                    } else {
+                        vm.remove(property.getName());
+                    }
+                } else {
+                    final Resource childRsrc = resolver.getResource(parent.getPath() + '/' + property.getName());
+                    if (childRsrc != null) {
+                        resolver.delete(childRsrc);
+                    }
+                }
+
+                changes.add(Modification.onDeleted(property.getPath()));
+            }
+        }
+    }
+
     /**
      * Deep gets or creates a resource, parent-padding with default resources. If
      * the path is empty, the given parent resource is returned.
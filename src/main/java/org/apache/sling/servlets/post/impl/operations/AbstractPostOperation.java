@@ -26,6 +26,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
@@ -34,15 +35,19 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.wrappers.SlingRequestPaths;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
 import org.apache.sling.servlets.post.JakartaPostOperation;
 import org.apache.sling.servlets.post.JakartaPostResponse;
 import org.apache.sling.servlets.post.Modification;
 import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
 import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
 import org.apache.sling.servlets.post.VersioningConfiguration;
 import org.apache.sling.servlets.post.exceptions.PreconditionViolatedPersistenceException;
 import org.apache.sling.servlets.post.exceptions.TemporaryPersistenceException;
 import org.apache.sling.servlets.post.impl.helper.JCRSupport;
+import org.apache.sling.servlets.post.impl.helper.MonitoredPostProcessor;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +63,13 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class AbstractPostOperation implements JakartaPostOperation {
 
+    /** Name of the request attribute holding the paths externalized for the request. */
+    private static final String ATTR_EXTERNALIZED_PATHS = AbstractPostOperation.class.getName() + ".externalizedPaths";
+
+    /** The versioning configuration used if the request does not provide one. */
+    private static final VersioningConfiguration DEFAULT_VERSIONING_CONFIGURATION =
+            VersioningConfiguration.valueOf(false, false, true);
+
     /**
      * Default logger
      */
@@ -66,6 +78,18 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
     /** The JCR support provides additional functionality if the resources are backed by JCR. */
     protected final JCRSupport jcrSupport = JCRSupport.INSTANCE;
 
+    private volatile RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+    /**
+     * Sets the policy for running the operation again after a commit conflict.
+     * Only {@link #isReplayable(SlingJakartaHttpServletRequest) replayable}
+     * requests are run again.
+     * @param retryPolicy the retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     /**
      * Prepares and finalizes the actual operation. Preparation encompasses
      * getting the absolute path of the item to operate on by calling the
@@ -87,119 +111,59 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
             final SlingJakartaPostProcessor[] processors)
             throws PreconditionViolatedPersistenceException, TemporaryPersistenceException, PersistenceException {
         final VersioningConfiguration versionableConfiguration = getVersioningConfiguration(request);
+        final RequestMetrics metrics = RequestMetrics.get(request);
 
         try {
             // calculate the paths
-            String path = this.getResourcePath(request);
+            final String path = this.getResourcePath(request);
             response.setPath(path);
 
-            // location
-            response.setLocation(externalizePath(request, path));
+            // location, externalized when used by the response
+            response.setLocationSupplier(() -> externalizePath(request, path));
 
             // parent location
-            path = ResourceUtil.getParent(path);
-            if (path != null) {
-                response.setParentLocation(externalizePath(request, path));
-            }
-
-            final List<Modification> changes = new ArrayList<>();
-
-            doRun(request, response, changes);
-
-            // invoke processors
-            try {
-                if (processors != null) {
-                    for (SlingJakartaPostProcessor processor : processors) {
-                        request.getRequestProgressTracker()
-                                .log(
-                                        "Calling Sling Post Processor {0}",
-                                        processor.getClass().getName());
-                        processor.process(request, changes);
-                    }
-                }
-            } catch (PreconditionViolatedPersistenceException | TemporaryPersistenceException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new PersistenceException("Exception during response processing", e);
+            final String parentPath = ResourceUtil.getParent(path);
+            if (parentPath != null) {
+                response.setParentLocationSupplier(() -> externalizePath(request, parentPath));
             }
 
-            // check modifications for remaining postfix and store the base path
-            final Map<String, String> modificationSourcesContainingPostfix = new HashMap<>();
-            final Set<String> allModificationSources = new HashSet<>(changes.size());
-            for (final Modification modification : changes) {
-                final String source = modification.getSource();
-                if (source != null) {
-                    allModificationSources.add(source);
-                    final int atIndex = source.indexOf('@');
-                    if (atIndex > 0) {
-                        modificationSourcesContainingPostfix.put(source.substring(0, atIndex), source);
-                    }
-                }
-            }
-
-            // fail if any of the base paths (before the postfix) which had a postfix are contained in the modification
-            // set
-            if (modificationSourcesContainingPostfix.size() > 0) {
-                for (final Map.Entry<String, String> sourceToCheck : modificationSourcesContainingPostfix.entrySet()) {
-                    if (allModificationSources.contains(sourceToCheck.getKey())) {
-                        throw new PersistenceException("Postfix-containing path " + sourceToCheck.getValue()
-                                + " contained in the modification list. Check configuration.");
-                    }
-                }
-            }
+            // run the operation, replaying it on commit conflicts if possible
+            final List<Modification> changes = runAndCommit(request, response, processors, metrics);
 
             final Set<String> nodesToCheckin = new LinkedHashSet<>();
+            final ChangeReport report = new ChangeReport(request, response);
 
             // set changes on html response
             for (Modification change : changes) {
+                report.report(change);
                 switch (change.getType()) {
-                    case MODIFY:
-                        response.onModified(change.getSource());
-                        break;
-                    case DELETE:
-                        response.onDeleted(change.getSource());
-                        break;
-                    case MOVE:
-                        response.onMoved(change.getSource(), change.getDestination());
-                        break;
-                    case COPY:
-                        response.onCopied(change.getSource(), change.getDestination());
-                        break;
                     case CREATE:
-                        response.onCreated(change.getSource());
                         if (versionableConfiguration.isCheckinOnNewVersionableNode()) {
                             nodesToCheckin.add(change.getSource());
                         }
                         break;
-                    case ORDER:
-                        response.onChange("ordered", change.getSource(), change.getDestination());
-                        break;
                     case CHECKOUT:
-                        response.onChange("checkout", change.getSource());
                         nodesToCheckin.add(change.getSource());
                         break;
                     case CHECKIN:
-                        response.onChange("checkin", change.getSource());
                         nodesToCheckin.remove(change.getSource());
                         break;
-                    case RESTORE:
-                        response.onChange("restore", change.getSource());
+                    default:
                         break;
                 }
             }
 
-            if (isResourceResolverCommitRequired(request)) {
-                request.getResourceResolver().commit();
-            }
-
-            if (!isSkipCheckin(request)) {
+            if (!isSkipCheckin(request) && !nodesToCheckin.isEmpty()) {
                 // now do the checkins
+                final long start = metrics.start();
                 for (String checkinPath : nodesToCheckin) {
                     if (this.jcrSupport.checkin(request.getResourceResolver().getResource(checkinPath))) {
-                        response.onChange("checkin", checkinPath);
+                        report.report("checkin", checkinPath);
                     }
                 }
+                metrics.phase(SlingPostMetrics.PHASE_CHECKIN, start);
             }
+            report.finish();
 
         } finally {
             if (isResourceResolverCommitRequired(request)) {
@@ -208,6 +172,161 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
         }
     }
 
+    /**
+     * Runs the operation and the processors and commits the changes. If the
+     * operation is {@link #isReplayable(SlingJakartaHttpServletRequest) replayable},
+     * it is run again after a commit conflict as allowed by the retry policy.
+     */
+    private List<Modification> runAndCommit(
+            final SlingJakartaHttpServletRequest request,
+            final JakartaPostResponse response,
+            final SlingJakartaPostProcessor[] processors,
+            final RequestMetrics metrics)
+            throws PreconditionViolatedPersistenceException, TemporaryPersistenceException, PersistenceException {
+        final RetryPolicy policy = this.retryPolicy;
+        final boolean replayable =
+                policy.getMaxRetries() > 0 && !isSkipSessionHandling(request) && isReplayable(request);
+        final AttemptState initial = replayable ? new AttemptState(response) : null;
+        int retries = 0;
+        try {
+            while (true) {
+                try {
+                    if (retries > 0) {
+                        initial.restore(response);
+                    }
+                    final List<Modification> changes = new ArrayList<>();
+                    long start = metrics.start();
+                    doRun(request, response, changes);
+                    metrics.phase(SlingPostMetrics.PHASE_RUN, start);
+
+                    // invoke processors
+                    start = metrics.start();
+                    try {
+                        if (processors != null) {
+                            for (SlingJakartaPostProcessor processor : processors) {
+                                request.getRequestProgressTracker()
+                                        .log(
+                                                "Calling Sling Post Processor {0}",
+                                                processor instanceof MonitoredPostProcessor
+                                                        ? ((MonitoredPostProcessor) processor).getName()
+                                                        : processor.getClass().getName());
+                                processor.process(request, changes);
+                            }
+                        }
+                    } catch (PreconditionViolatedPersistenceException | TemporaryPersistenceException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new PersistenceException("Exception during response processing", e);
+                    }
+                    metrics.phase(SlingPostMetrics.PHASE_PROCESSORS, start);
+                    metrics.count(SlingPostMetrics.COUNT_CHANGES, changes.size());
+
+                    // check modifications for remaining postfix and store the base path
+                    final Map<String, String> modificationSourcesContainingPostfix = new HashMap<>();
+                    final Set<String> allModificationSources = new HashSet<>(changes.size());
+                    for (final Modification modification : changes) {
+                        final String source = modification.getSource();
+                        if (source != null) {
+                            allModificationSources.add(source);
+                            final int atIndex = source.indexOf('@');
+                            if (atIndex > 0) {
+                                modificationSourcesContainingPostfix.put(source.substring(0, atIndex), source);
+                            }
+                        }
+                    }
+
+                    // fail if any of the base paths (before the postfix) which had a postfix are contained in the
+                    // modification
+                    // set
+                    if (modificationSourcesContainingPostfix.size() > 0) {
+                        for (final Map.Entry<String, String> sourceToCheck :
+                                modificationSourcesContainingPostfix.entrySet()) {
+                            if (allModificationSources.contains(sourceToCheck.getKey())) {
+                                throw new PersistenceException("Postfix-containing path " + sourceToCheck.getValue()
+                                        + " contained in the modification list. Check configuration.");
+                            }
+                        }
+                    }
+
+                    if (isResourceResolverCommitRequired(request)) {
+                        start = metrics.start();
+                        request.getResourceResolver().commit();
+                        metrics.phase(SlingPostMetrics.PHASE_COMMIT, start);
+                    }
+                    return changes;
+                } catch (final PersistenceException e) {
+                    if (!replayable || retries >= policy.getMaxRetries() || !isConflict(e)) {
+                        throw e;
+                    }
+                    retries++;
+                    final long backoff = policy.getBackoff(retries);
+                    log.debug("Retrying {} after conflict in {} ms: {}", response.getPath(), backoff, e.getMessage());
+                    final ResourceResolver resolver = request.getResourceResolver();
+                    resolver.revert();
+                    resolver.refresh();
+                    if (backoff > 0) {
+                        try {
+                            Thread.sleep(backoff);
+                        } catch (final InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            throw e;
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (retries > 0) {
+                metrics.count(SlingPostMetrics.COUNT_RETRIES, retries);
+            }
+        }
+    }
+
+    /**
+     * The state of the response set by an attempt to run the operation, which
+     * is restored before the operation is run again, such that the response
+     * only reflects the last attempt.
+     */
+    private static final class AttemptState {
+
+        private static final String[] JSON_PROPERTIES = {ModifyOperation.PN_COMMITS, ModifyOperation.PN_CHECKPOINT};
+
+        private final String path;
+
+        private final boolean createRequest;
+
+        private final Object[] jsonValues;
+
+        AttemptState(final JakartaPostResponse response) {
+            this.path = response.getPath();
+            this.createRequest = response.isCreateRequest();
+            if (response instanceof JakartaJSONResponse) {
+                this.jsonValues = new Object[JSON_PROPERTIES.length];
+                for (int i = 0; i < JSON_PROPERTIES.length; i++) {
+                    jsonValues[i] = ((JakartaJSONResponse) response).getProperty(JSON_PROPERTIES[i]);
+                }
+            } else {
+                this.jsonValues = null;
+            }
+        }
+
+        void restore(final JakartaPostResponse response) {
+            response.setPath(path);
+            response.setCreateRequest(createRequest);
+            if (jsonValues != null) {
+                final JakartaJSONResponse json = (JakartaJSONResponse) response;
+                for (int i = 0; i < JSON_PROPERTIES.length; i++) {
+                    if (!Objects.equals(jsonValues[i], json.getProperty(JSON_PROPERTIES[i]))) {
+                        json.setProperty(JSON_PROPERTIES[i], jsonValues[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isConflict(final PersistenceException e) {
+        return e instanceof TemporaryPersistenceException || this.jcrSupport.isConflict(e);
+    }
+
     /**
      * Actually performs the desired operation filling progress into the
      * <code>changes</code> list and preparing and further information in the
@@ -231,15 +350,47 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
             SlingJakartaHttpServletRequest request, JakartaPostResponse response, List<Modification> changes)
             throws PersistenceException;
 
+    /**
+     * Returns whether the operation can be run again for the request after a
+     * commit conflict. The operation must have the same effect when run
+     * again on the reverted and refreshed resource resolver and it must be
+     * able to read the request content again. This default implementation
+     * returns <code>false</code>.
+     *
+     * @param request The request
+     * @return <code>true</code> if the operation can be run again
+     */
+    protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+        return false;
+    }
+
     /**
      * Get the versioning configuration.
      * @param request The http request
-     * @return The versioning configuration
+     * @return The versioning configuration, which might be shared and unmodifiable
      */
     protected VersioningConfiguration getVersioningConfiguration(final SlingJakartaHttpServletRequest request) {
-        VersioningConfiguration versionableConfiguration =
+        final VersioningConfiguration versionableConfiguration =
                 (VersioningConfiguration) request.getAttribute(VersioningConfiguration.class.getName());
-        return versionableConfiguration != null ? versionableConfiguration : new VersioningConfiguration();
+        return versionableConfiguration != null ? versionableConfiguration : DEFAULT_VERSIONING_CONFIGURATION;
+    }
+
+    /**
+     * Get a modifiable versioning configuration for the request. If the
+     * configuration of the request is shared, it is replaced with a copy
+     * which is returned.
+     * @param request The http request
+     * @return The modifiable versioning configuration of the request
+     * @since 2.6.0
+     */
+    protected VersioningConfiguration getModifiableVersioningConfiguration(
+            final SlingJakartaHttpServletRequest request) {
+        VersioningConfiguration versionableConfiguration = getVersioningConfiguration(request);
+        if (!versionableConfiguration.isModifiable()) {
+            versionableConfiguration = versionableConfiguration.clone();
+            request.setAttribute(VersioningConfiguration.class.getName(), versionableConfiguration);
+        }
+        return versionableConfiguration;
     }
 
     /**
@@ -256,7 +407,7 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
      * @param request The http request
      * @return {@code true} If committing be skipped
      */
-    private boolean isSkipSessionHandling(SlingJakartaHttpServletRequest request) {
+    boolean isSkipSessionHandling(SlingJakartaHttpServletRequest request) {
         return Boolean.parseBoolean((String) request.getAttribute(SlingPostConstants.ATTR_SKIP_SESSION_HANDLING))
                 == true;
     }
@@ -302,6 +453,18 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
      * @return the url
      */
     protected final String externalizePath(final SlingJakartaHttpServletRequest request, final String path) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> externalizedPaths = (Map<String, String>) request.getAttribute(ATTR_EXTERNALIZED_PATHS);
+        if (externalizedPaths == null) {
+            externalizedPaths = new HashMap<>();
+            request.setAttribute(ATTR_EXTERNALIZED_PATHS, externalizedPaths);
+        } else {
+            final String externalized = externalizedPaths.get(path);
+            if (externalized != null) {
+                return externalized;
+            }
+        }
+
         StringBuilder ret = new StringBuilder();
         ret.append(SlingRequestPaths.getContextPath(request));
         ret.append(request.getResourceResolver().map(path));
@@ -315,7 +478,9 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
             ret.append(ext);
         }
 
-        return ret.toString();
+        final String externalized = ret.toString();
+        externalizedPaths.put(path, externalized);
+        return externalized;
     }
 
     /**
@@ -344,8 +509,21 @@ public abstract class AbstractPostOperation implements JakartaPostOperation {
     protected void orderResource(
             final SlingJakartaHttpServletRequest request, final Resource resource, final List<Modification> changes)
             throws PersistenceException {
+        orderResource(request.getParameter(SlingPostConstants.RP_ORDER), resource, changes);
+    }
+
+    /**
+     * Orders the given resource according to the given command, see
+     * {@link #orderResource(SlingJakartaHttpServletRequest, Resource, List)}.
+     *
+     * @param command The ordering command, may be <code>null</code>
+     * @param resource the resource to order
+     * @param changes the list of modifications
+     * @throws PersistenceException in case the operation is not successful
+     */
+    protected void orderResource(final String command, final Resource resource, final List<Modification> changes)
+            throws PersistenceException {
 
-        final String command = request.getParameter(SlingPostConstants.RP_ORDER);
         if (command == null || command.length() == 0) {
             // nothing to do
             return;
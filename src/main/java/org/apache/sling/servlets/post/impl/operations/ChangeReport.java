@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+
+/**
+ * The <code>ChangeReport</code> reports the changes of an operation to the
+ * response as requested by the {@link SlingPostConstants#RP_CHANGES}
+ * parameter. For a summary, only the first and the last
+ * {@link #SUMMARY_CHANGES} changes are passed to the response, followed by
+ * a <code>summary</code> change with the number of changes per type.
+ */
+class ChangeReport {
+
+    /** The number of changes reported at the start and at the end of a summary. */
+    static final int SUMMARY_CHANGES = 10;
+
+    private static final String SUMMARY = "summary";
+
+    private static final String OMITTED = "omitted";
+
+    private final JakartaPostResponse response;
+
+    private final boolean none;
+
+    private final boolean summary;
+
+    /** Number of changes per type, only used for a summary. */
+    private Map<String, int[]> counts;
+
+    /** The last changes not reported yet, only used for a summary. */
+    private ArrayDeque<String[]> last;
+
+    private int reported;
+
+    private int omitted;
+
+    ChangeReport(final SlingJakartaHttpServletRequest request, final JakartaPostResponse response) {
+        this.response = response;
+        final String mode = request.getParameter(SlingPostConstants.RP_CHANGES);
+        this.none = SlingPostConstants.CHANGES_VALUE_NONE.equals(mode);
+        this.summary = SlingPostConstants.CHANGES_VALUE_SUMMARY.equals(mode);
+        if (summary) {
+            this.counts = new LinkedHashMap<>();
+            this.last = new ArrayDeque<>(SUMMARY_CHANGES);
+        }
+    }
+
+    /**
+     * Report a modification.
+     * @param change the modification
+     */
+    void report(final Modification change) {
+        if (none) {
+            return;
+        }
+        if (summary) {
+            switch (change.getType()) {
+                case MOVE:
+                    add("moved", change.getSource(), change.getDestination());
+                    break;
+                case COPY:
+                    add("copied", change.getSource(), change.getDestination());
+                    break;
+                case ORDER:
+                    add("ordered", change.getSource(), change.getDestination());
+                    break;
+                default:
+                    add(getChangeType(change), change.getSource());
+            }
+            return;
+        }
+        switch (change.getType()) {
+            case MODIFY:
+                response.onModified(change.getSource());
+                break;
+            case DELETE:
+                response.onDeleted(change.getSource());
+                break;
+            case MOVE:
+                response.onMoved(change.getSource(), change.getDestination());
+                break;
+            case COPY:
+                response.onCopied(change.getSource(), change.getDestination());
+                break;
+            case CREATE:
+                response.onCreated(change.getSource());
+                break;
+            case ORDER:
+                response.onChange("ordered", change.getSource(), change.getDestination());
+                break;
+            case CHECKOUT:
+                response.onChange("checkout", change.getSource());
+                break;
+            case CHECKIN:
+                response.onChange("checkin", change.getSource());
+                break;
+            case RESTORE:
+                response.onChange("restore", change.getSource());
+                break;
+        }
+    }
+
+    /**
+     * Report a change which is not a modification.
+     * @param type the type of the change
+     * @param arguments the arguments of the change
+     */
+    void report(final String type, final String... arguments) {
+        if (none) {
+            return;
+        }
+        if (summary) {
+            add(type, arguments);
+        } else {
+            response.onChange(type, arguments);
+        }
+    }
+
+    /**
+     * Report the last changes and the summary, if a summary is requested.
+     */
+    void finish() {
+        if (!summary || counts.isEmpty()) {
+            return;
+        }
+        for (final String[] change : last) {
+            send(change[0], copyOfRange(change));
+        }
+        last.clear();
+        final String[] arguments = new String[counts.size() + (omitted > 0 ? 1 : 0)];
+        int index = 0;
+        for (final Map.Entry<String, int[]> entry : counts.entrySet()) {
+            arguments[index++] = entry.getKey() + ':' + entry.getValue()[0];
+        }
+        if (omitted > 0) {
+            arguments[index] = OMITTED + ':' + omitted;
+        }
+        response.onChange(SUMMARY, arguments);
+    }
+
+    private void add(final String type, final String... arguments) {
+        counts.computeIfAbsent(type, t -> new int[1])[0]++;
+        if (reported < SUMMARY_CHANGES) {
+            reported++;
+            send(type, arguments);
+            return;
+        }
+        if (last.size() == SUMMARY_CHANGES) {
+            last.removeFirst();
+            omitted++;
+        }
+        final String[] change = new String[arguments.length + 1];
+        change[0] = type;
+        System.arraycopy(arguments, 0, change, 1, arguments.length);
+        last.addLast(change);
+    }
+
+    /**
+     * Pass a change of a summary to the response, using the same callbacks as
+     * for a full report, such that responses overwriting them see the change.
+     */
+    private void send(final String type, final String[] arguments) {
+        switch (type) {
+            case "modified":
+                response.onModified(arguments[0]);
+                break;
+            case "deleted":
+                response.onDeleted(arguments[0]);
+                break;
+            case "created":
+                response.onCreated(arguments[0]);
+                break;
+            case "moved":
+                response.onMoved(arguments[0], arguments[1]);
+                break;
+            case "copied":
+                response.onCopied(arguments[0], arguments[1]);
+                break;
+            default:
+                response.onChange(type, arguments);
+        }
+    }
+
+    private static String[] copyOfRange(final String[] change) {
+        final String[] arguments = new String[change.length - 1];
+        System.arraycopy(change, 1, arguments, 0, arguments.length);
+        return arguments;
+    }
+
+    private static String getChangeType(final Modification change) {
+        switch (change.getType()) {
+            case MODIFY:
+                return "modified";
+            case DELETE:
+                return "deleted";
+            case CREATE:
+                return "created";
+            case CHECKOUT:
+                return "checkout";
+            case CHECKIN:
+                return "checkin";
+            case RESTORE:
+                return "restore";
+            default:
+                return change.getType().name().toLowerCase();
+        }
+    }
+}
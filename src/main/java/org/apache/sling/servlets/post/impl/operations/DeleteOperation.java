@@ -48,6 +48,11 @@ public class DeleteOperation extends AbstractPostOperation {
         this.uploadHandler = new SlingFileUploadHandler();
     }
 
+    @Override
+    protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+        return true;
+    }
+
     @Override
     protected void doRun(
             final SlingJakartaHttpServletRequest request,
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * Reads the form fields of a streamed request, enforcing a limit on the size of
+ * each field and of all fields together while the stream is read. The buffers
+ * and the decoder are reused for all fields of the request.
+ */
+class FormFieldReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final long maxFieldBytes;
+
+    private final long maxTotalBytes;
+
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final StringBuilder value = new StringBuilder();
+
+    private long totalBytes;
+
+    /**
+     * @param maxFieldBytes the maximum number of bytes of a field, 0 or less for no limit.
+     * @param maxTotalBytes the maximum number of bytes of all fields, 0 or less for no limit.
+     */
+    FormFieldReader(final long maxFieldBytes, final long maxTotalBytes) {
+        this.maxFieldBytes = maxFieldBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * Read the value of a form field.
+     * @param part the part of the form field.
+     * @return the value.
+     * @throws PayloadTooLargeException if a limit is exceeded, before reading more than the limit.
+     * @throws IOException if the part cannot be read.
+     */
+    String read(final Part part) throws IOException, PayloadTooLargeException {
+        final long length = StreamedUploadOperation.getContentLength(part);
+        if (length >= 0) {
+            check(part.getName(), length, totalBytes + length);
+        }
+        value.setLength(0);
+        decoder.reset();
+        bytes.clear();
+        long fieldBytes = 0;
+        try (InputStream in = part.getInputStream()) {
+            int read;
+            while ((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) >= 0) {
+                fieldBytes += read;
+                totalBytes += read;
+                check(part.getName(), fieldBytes, totalBytes);
+                bytes.position(bytes.position() + read);
+                decode(false);
+            }
+        }
+        decode(true);
+        decoder.flush(chars);
+        drain();
+        return value.toString();
+    }
+
+    /**
+     * @return the number of bytes of all form fields read so far.
+     */
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void check(final String name, final long fieldBytes, final long total) throws PayloadTooLargeException {
+        if (maxFieldBytes > 0 && fieldBytes > maxFieldBytes) {
+            throw new PayloadTooLargeException(
+                    "Form field " + name + " exceeds the limit of " + maxFieldBytes + " bytes");
+        }
+        if (maxTotalBytes > 0 && total > maxTotalBytes) {
+            throw new PayloadTooLargeException("Form fields exceed the limit of " + maxTotalBytes + " bytes");
+        }
+    }
+
+    private void decode(final boolean endOfInput) {
+        bytes.flip();
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+            drain();
+        }
+        drain();
+        bytes.compact();
+    }
+
+    private void drain() {
+        chars.flip();
+        value.append(chars);
+        chars.clear();
+    }
+}
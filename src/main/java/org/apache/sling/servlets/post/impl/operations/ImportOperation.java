@@ -258,13 +258,13 @@ public class ImportOperation extends AbstractCreateOperation {
                     // fill in the data for the response report
                     Modification modification = changes.get(0);
                     if (modification.getType() == ModificationType.CREATE) {
-                        String importedPath = modification.getSource();
-                        response.setLocation(externalizePath(request, importedPath));
+                        final String importedPath = modification.getSource();
+                        response.setLocationSupplier(() -> externalizePath(request, importedPath));
                         response.setPath(importedPath);
                         int lastSlashIndex = importedPath.lastIndexOf('/');
                         if (lastSlashIndex != -1) {
-                            String parentPath = importedPath.substring(0, lastSlashIndex);
-                            response.setParentLocation(externalizePath(request, parentPath));
+                            final String parentPath = importedPath.substring(0, lastSlashIndex);
+                            response.setParentLocationSupplier(() -> externalizePath(request, parentPath));
                         }
                     }
                 }
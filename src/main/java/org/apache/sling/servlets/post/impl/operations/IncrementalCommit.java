@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.List;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>IncrementalCommit</code> commits the pending changes of a
+ * request each time the number of changes since the last commit reaches
+ * the interval requested by the {@link SlingPostConstants#RP_COMMIT_INTERVAL}
+ * parameter. This keeps the transient space of very large requests small.
+ */
+final class IncrementalCommit {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalCommit.class);
+
+    private final ResourceResolver resolver;
+
+    private final List<Modification> changes;
+
+    /** The number of changes after which the changes are committed, 0 if disabled. */
+    private final int interval;
+
+    /** The number of changes already committed. */
+    private int committed;
+
+    private int commits;
+
+    IncrementalCommit(final ResourceResolver resolver, final List<Modification> changes, final int interval) {
+        this.resolver = resolver;
+        this.changes = changes;
+        this.interval = interval;
+    }
+
+    /**
+     * Create the incremental commit for the request.
+     * @param request the request
+     * @param changes the changes of the request
+     * @param maxInterval the upper bound of the interval, 0 or less if incremental commits are disabled
+     * @return the incremental commit, which does nothing if not requested
+     */
+    static IncrementalCommit create(
+            final SlingJakartaHttpServletRequest request, final List<Modification> changes, final int maxInterval) {
+        return new IncrementalCommit(
+                request.getResourceResolver(),
+                changes,
+                getInterval(request.getParameter(SlingPostConstants.RP_COMMIT_INTERVAL), maxInterval));
+    }
+
+    static int getInterval(final String value, final int maxInterval) {
+        if (value == null || maxInterval <= 0) {
+            return 0;
+        }
+        try {
+            final int interval = Integer.parseInt(value.trim());
+            return interval > 0 ? Math.min(interval, maxInterval) : 0;
+        } catch (final NumberFormatException nfe) {
+            LOG.debug("Ignoring invalid commit interval {}", value);
+            return 0;
+        }
+    }
+
+    /**
+     * Commit the pending changes if the interval is reached.
+     * @throws PersistenceException if the commit fails
+     */
+    void checkpoint() throws PersistenceException {
+        if (interval > 0 && changes.size() - committed >= interval && resolver.hasChanges()) {
+            resolver.commit();
+            committed = changes.size();
+            commits++;
+        }
+    }
+
+    int getCommits() {
+        return commits;
+    }
+
+    /**
+     * Returns the last committed modification.
+     * @return the modification or <code>null</code> if nothing is committed yet
+     */
+    Modification getCheckpoint() {
+        return committed > 0 ? changes.get(committed - 1) : null;
+    }
+
+    /**
+     * Report the commits in the metrics and in a JSON response.
+     * @param request the request
+     * @param response the response
+     */
+    void report(final SlingJakartaHttpServletRequest request, final JakartaPostResponse response) {
+        if (interval <= 0) {
+            return;
+        }
+        final Modification checkpoint = getCheckpoint();
+        LOG.debug(
+                "Modification of {} committed {} times, last at {}",
+                response.getPath(),
+                commits,
+                checkpoint == null ? null : checkpoint.getSource());
+        RequestMetrics.get(request).count(SlingPostMetrics.COUNT_COMMITS, commits);
+        if (response instanceof JakartaJSONResponse) {
+            final JakartaJSONResponse json = (JakartaJSONResponse) response;
+            json.setProperty(ModifyOperation.PN_COMMITS, commits);
+            if (checkpoint != null) {
+                json.setProperty(ModifyOperation.PN_CHECKPOINT, checkpoint.getSource());
+            }
+        }
+    }
+}
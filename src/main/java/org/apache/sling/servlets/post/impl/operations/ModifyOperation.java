@@ -25,20 +25,22 @@ import jakarta.servlet.ServletContext;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
-import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
-import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.MimeTypeResolver;
 import org.apache.sling.servlets.post.Modification;
 import org.apache.sling.servlets.post.SlingPostConstants;
 import org.apache.sling.servlets.post.VersioningConfiguration;
 import org.apache.sling.servlets.post.impl.helper.DateParser;
+import org.apache.sling.servlets.post.impl.helper.DirectBinarySink;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
 import org.apache.sling.servlets.post.impl.helper.RequestProperty;
 import org.apache.sling.servlets.post.impl.helper.SlingFileUploadHandler;
 import org.apache.sling.servlets.post.impl.helper.SlingPropertyValueHandler;
+import org.apache.sling.servlets.post.impl.helper.UploadDigester;
 
 /**
  * The <code>ModifyOperation</code> class implements the default operation
@@ -47,8 +49,20 @@ import org.apache.sling.servlets.post.impl.helper.SlingPropertyValueHandler;
  */
 public class ModifyOperation extends AbstractCreateOperation {
 
+    /**
+     * The JSON response property reporting the number of incremental commits of the request.
+     */
+    public static final String PN_COMMITS = "commits";
+
+    /**
+     * The JSON response property reporting the path of the last change committed by an incremental commit.
+     */
+    public static final String PN_CHECKPOINT = "checkpoint";
+
     private DateParser dateParser;
 
+    private volatile int maxCommitInterval;
+
     /**
      * handler that deals with file upload
      */
@@ -63,10 +77,47 @@ public class ModifyOperation extends AbstractCreateOperation {
         this.uploadHandler.setServletContext(servletContext);
     }
 
+    /**
+     * Sets the size from which uploaded files are streamed directly into a
+     * repository binary.
+     * @param threshold the size in bytes, a negative value disables direct streaming
+     */
+    public void setDirectBinaryThreshold(final long threshold) {
+        this.uploadHandler.setBinarySink(new DirectBinarySink(this.jcrSupport, threshold));
+    }
+
+    public void setUploadDigester(final UploadDigester uploadDigester) {
+        this.uploadHandler.setUploadDigester(uploadDigester);
+    }
+
+    public void setMimeTypeResolver(final MimeTypeResolver mimeTypeResolver) {
+        this.uploadHandler.setMimeTypeResolver(mimeTypeResolver);
+    }
+
     public void setDateParser(final DateParser dateParser) {
         this.dateParser = dateParser;
     }
 
+    /**
+     * Sets the upper bound of the {@link SlingPostConstants#RP_COMMIT_INTERVAL} parameter.
+     * @param maxCommitInterval the maximum number of changes committed together, 0 disables incremental commits
+     */
+    public void setMaxCommitInterval(final int maxCommitInterval) {
+        this.maxCommitInterval = maxCommitInterval;
+    }
+
+    /**
+     * The request content including uploaded files is buffered by the request
+     * parameter support and can be read again, but changes committed by
+     * incremental commits cannot be reverted.
+     */
+    @Override
+    protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+        return IncrementalCommit.getInterval(
+                        request.getParameter(SlingPostConstants.RP_COMMIT_INTERVAL), maxCommitInterval)
+                == 0;
+    }
+
     @Override
     protected void doRun(
             final SlingJakartaHttpServletRequest request,
@@ -77,20 +128,38 @@ public class ModifyOperation extends AbstractCreateOperation {
 
         final VersioningConfiguration versioningConfiguration = getVersioningConfiguration(request);
 
-        // do not change order unless you have a very good reason.
-
-        // ensure root of new content
-        processCreate(request.getResourceResolver(), reqProperties, response, changes, versioningConfiguration);
-
-        // write content from existing content (@Move/CopyFrom parameters)
-        processMoves(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
-        processCopies(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
-
-        // cleanup any old content (@Delete parameters)
-        processDeletes(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
-
-        // write content from form
-        writeContent(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
+        // commit large requests in steps, if requested
+        final IncrementalCommit commit = isSkipSessionHandling(request)
+                ? new IncrementalCommit(request.getResourceResolver(), changes, 0)
+                : IncrementalCommit.create(request, changes, maxCommitInterval);
+
+        try {
+            // do not change order unless you have a very good reason.
+
+            // ensure root of new content
+            processCreate(request.getResourceResolver(), reqProperties, response, changes, versioningConfiguration);
+            commit.checkpoint();
+
+            // write content from existing content (@Move/CopyFrom parameters)
+            processMoves(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
+            processCopies(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
+            commit.checkpoint();
+
+            // cleanup any old content (@Delete parameters)
+            processDeletes(request.getResourceResolver(), reqProperties, changes, versioningConfiguration);
+            commit.checkpoint();
+
+            // write content from form
+            writeContent(
+                    request.getResourceResolver(),
+                    reqProperties,
+                    changes,
+                    versioningConfiguration,
+                    commit,
+                    RequestMetrics.get(request));
+        } finally {
+            commit.report(request, response);
+        }
 
         // order content
         final Resource newResource = request.getResourceResolver().getResource(response.getPath());
@@ -158,189 +227,6 @@ public class ModifyOperation extends AbstractCreateOperation {
         return path;
     }
 
-    /**
-     * Moves all repository content listed as repository move source in the
-     * request properties to the locations indicated by the resource properties.
-     * @param checkedOutNodes
-     */
-    private void processMoves(
-            final ResourceResolver resolver,
-            Map<String, RequestProperty> reqProperties,
-            List<Modification> changes,
-            VersioningConfiguration versioningConfiguration)
-            throws PersistenceException {
-
-        for (RequestProperty property : reqProperties.values()) {
-            if (property.hasRepositoryMoveSource()) {
-                processMovesCopiesInternal(property, true, resolver, reqProperties, changes, versioningConfiguration);
-            }
-        }
-    }
-
-    /**
-     * Copies all repository content listed as repository copy source in the
-     * request properties to the locations indicated by the resource properties.
-     * @param checkedOutNodes
-     */
-    private void processCopies(
-            final ResourceResolver resolver,
-            Map<String, RequestProperty> reqProperties,
-            List<Modification> changes,
-            VersioningConfiguration versioningConfiguration)
-            throws PersistenceException {
-
-        for (RequestProperty property : reqProperties.values()) {
-            if (property.hasRepositoryCopySource()) {
-                processMovesCopiesInternal(property, false, resolver, reqProperties, changes, versioningConfiguration);
-            }
-        }
-    }
-
-    /**
-     * Internal implementation of the
-     * {@link #processCopies(ResourceResolver, Map, HtmlResponse)} and
-     * {@link #processMoves(ResourceResolver, Map, HtmlResponse)} methods taking into
-     * account whether the source is actually a property or a node.
-     * <p>
-     * Any intermediary nodes to the destination as indicated by the
-     * <code>property</code> path are created using the
-     * <code>reqProperties</code> as indications for required node types.
-     *
-     * @param property The {@link RequestProperty} identifying the source
-     *            content of the operation.
-     * @param isMove <code>true</code> if the source item is to be moved.
-     *            Otherwise the source item is just copied.
-     * @param resolver The resource resolver to use to access the content
-     * @param reqProperties All accepted request properties. This is used to
-     *            create intermediary nodes along the property path.
-     * @param response The <code>HtmlResponse</code> into which successful
-     *            copies and moves as well as intermediary node creations are
-     *            recorded.
-     * @throws PersistenceException May be thrown if an error occurs.
-     */
-    private void processMovesCopiesInternal(
-            RequestProperty property,
-            boolean isMove,
-            final ResourceResolver resolver,
-            Map<String, RequestProperty> reqProperties,
-            List<Modification> changes,
-            VersioningConfiguration versioningConfiguration)
-            throws PersistenceException {
-
-        String propPath = property.getPath();
-        String source = property.getRepositorySource();
-
-        // only continue here, if the source really exists
-        if (resolver.getResource(source) != null) {
-
-            // if the destination item already exists, remove it
-            // first, otherwise ensure the parent location
-            if (resolver.getResource(propPath) != null) {
-                final Resource parent = resolver.getResource(propPath).getParent();
-                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
-
-                resolver.delete(resolver.getResource(propPath));
-                changes.add(Modification.onDeleted(propPath));
-            } else {
-                Resource parent = deepGetOrCreateResource(
-                        resolver, property.getParentPath(), reqProperties, changes, versioningConfiguration);
-                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
-            }
-
-            // move through the session and record operation
-            // check if the item is backed by JCR
-            Resource sourceRsrc = resolver.getResource(source);
-            final Object sourceItem = this.jcrSupport.getItem(sourceRsrc);
-            final Object destItem = this.jcrSupport.getItem(resolver.getResource(property.getParentPath()));
-            if (sourceItem != null && destItem != null) {
-                if (this.jcrSupport.isNode(sourceRsrc)) {
-                    if (isMove) {
-                        this.jcrSupport.checkoutIfNecessary(sourceRsrc.getParent(), changes, versioningConfiguration);
-                        this.jcrSupport.move(sourceItem, destItem, ResourceUtil.getName(propPath));
-                    } else {
-                        this.jcrSupport.checkoutIfNecessary(
-                                resolver.getResource(property.getParentPath()), changes, versioningConfiguration);
-                        this.jcrSupport.copy(sourceItem, destItem, property.getName());
-                    }
-                } else {
-                    // property: move manually
-                    this.jcrSupport.checkoutIfNecessary(
-                            resolver.getResource(property.getParentPath()), changes, versioningConfiguration);
-                    // create destination property
-                    this.jcrSupport.copy(sourceItem, destItem, ResourceUtil.getName(source));
-
-                    // remove source property (if not just copying)
-                    if (isMove) {
-                        this.jcrSupport.checkoutIfNecessary(sourceRsrc.getParent(), changes, versioningConfiguration);
-                        resolver.delete(sourceRsrc);
-                    }
-                }
-            }
-
-            // make sure the property is not deleted even in case for a given
-            // property both @MoveFrom and @Delete is set
-            property.setDelete(false);
-
-            // record successful move
-            if (isMove) {
-                changes.add(Modification.onMoved(source, propPath));
-            } else {
-                changes.add(Modification.onCopied(source, propPath));
-            }
-        }
-    }
-
-    /**
-     * Removes all properties listed as {@link RequestProperty#isDelete()} from
-     * the resource.
-     *
-     * @param resolver The <code>ResourceResolver</code> used to access the
-     *            resources to delete the properties.
-     * @param reqProperties The map of request properties to check for
-     *            properties to be removed.
-     * @param response The <code>HtmlResponse</code> to be updated with
-     *            information on deleted properties.
-     * @throws PersistenceException Is thrown if an error occurs checking or
-     *             removing properties.
-     */
-    private void processDeletes(
-            final ResourceResolver resolver,
-            final Map<String, RequestProperty> reqProperties,
-            final List<Modification> changes,
-            final VersioningConfiguration versioningConfiguration)
-            throws PersistenceException {
-
-        for (final RequestProperty property : reqProperties.values()) {
-
-            if (property.isDelete()) {
-                final Resource parent = resolver.getResource(property.getParentPath());
-                if (parent == null) {
-                    continue;
-                }
-                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
-
-                final ValueMap vm = parent.adaptTo(ModifiableValueMap.class);
-                if (vm == null) {
-                    throw new PersistenceException("Resource '" + parent.getPath() + "' is not modifiable.");
-                }
-                if (vm.containsKey(property.getName())) {
-                    if (JcrConstants.JCR_MIXINTYPES.equals(property.getName())) {
-                        vm.put(JcrConstants.JCR_MIXINTYPES, new String[0]);
-                    } else {
-                        vm.remove(property.getName());
-                    }
-                } else {
-                    final Resource childRsrc = resolver.getResource(parent.getPath() + '/' + property.getName());
-                    if (childRsrc != null) {
-                        resolver.delete(childRsrc);
-                    }
-                }
-
-                changes.add(Modification.onDeleted(property.getPath()));
-            }
-        }
-    }
-
     /**
      * Writes back the content
      *
@@ -350,7 +236,9 @@ public class ModifyOperation extends AbstractCreateOperation {
             final ResourceResolver resolver,
             final Map<String, RequestProperty> reqProperties,
             final List<Modification> changes,
-            final VersioningConfiguration versioningConfiguration)
+            final VersioningConfiguration versioningConfiguration,
+            final IncrementalCommit commit,
+            final RequestMetrics metrics)
             throws PersistenceException {
 
         final SlingPropertyValueHandler propHandler =
@@ -370,10 +258,13 @@ public class ModifyOperation extends AbstractCreateOperation {
                 }
 
                 if (prop.isFileUpload()) {
-                    uploadHandler.setFile(parent, prop, changes);
+                    uploadHandler.setFile(parent, prop, changes, metrics);
                 } else {
                     propHandler.setProperty(parent, prop);
                 }
+
+                // the intermediate resources created above are counted as changes as well
+                commit.checkpoint();
             }
         }
     }
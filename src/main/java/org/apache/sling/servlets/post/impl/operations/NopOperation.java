@@ -18,6 +18,11 @@
  */
 package org.apache.sling.servlets.post.impl.operations;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.servlets.post.JakartaPostOperation;
 import org.apache.sling.servlets.post.JakartaPostResponse;
@@ -30,30 +35,113 @@ import org.apache.sling.servlets.post.exceptions.TemporaryPersistenceException;
  * The <code>NopOperation</code> class implements no operation at all. It just
  * sets the response status according to the <i>:nopstatus</i> parameter if
  * availables. Otherwise the status is set as 200/OK.
+ * <p>
+ * As the operation is used for health checks and keep alive requests, the
+ * servlet may bypass the post response and send a minimal response prepared
+ * once per status code by calling {@link #sendResponse(int, HttpServletResponse, boolean)}.
+ * No entity is sent for statuses which do not allow one.
  */
 public class NopOperation implements JakartaPostOperation {
 
+    private static final int MIN_STATUS = 100;
+
+    private static final int MAX_STATUS = 999;
+
+    /** The minimal responses, indexed by the status code minus {@link #MIN_STATUS}. */
+    private final AtomicReferenceArray<byte[]> responses = new AtomicReferenceArray<>(MAX_STATUS - MIN_STATUS + 1);
+
     @Override
     public void run(
             SlingJakartaHttpServletRequest request,
             JakartaPostResponse response,
             SlingJakartaPostProcessor[] processors)
             throws PreconditionViolatedPersistenceException, TemporaryPersistenceException {
+        final int status = getStatus(request);
+        response.setStatus(status, getMessage(status));
+    }
 
+    /**
+     * Whether a minimal response can be sent for the status. This is the case
+     * if the status does not require a location, that is if it is not
+     * 201/CREATED and no redirect.
+     * @param status The status code
+     * @return {@code true} if a minimal response can be sent
+     */
+    public static boolean hasMinimalResponse(final int status) {
+        return status != HttpServletResponse.SC_CREATED && status / 100 != 3;
+    }
+
+    /**
+     * Send the minimal response for the status.
+     * @param status The status code as returned by {@link #getStatus(SlingJakartaHttpServletRequest)}
+     * @param response The response
+     * @param setStatus Whether the status is set on the response
+     * @throws IOException If the response can not be written
+     */
+    public void sendResponse(final int status, final HttpServletResponse response, final boolean setStatus)
+            throws IOException {
+        if (setStatus && !hasEntity(status)) {
+            response.setStatus(status);
+            return;
+        }
+        byte[] body = responses.get(status - MIN_STATUS);
+        if (body == null) {
+            body = createResponse(status);
+            responses.set(status - MIN_STATUS, body);
+        }
+        if (setStatus) {
+            response.setStatus(status);
+        }
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Whether a response with the status may have an entity, which is not the
+     * case for the informational statuses and 204/NO CONTENT.
+     */
+    private static boolean hasEntity(final int status) {
+        return status / 100 != 1 && status != HttpServletResponse.SC_NO_CONTENT;
+    }
+
+    /**
+     * Get the status requested by the <i>:nopstatus</i> parameter.
+     * @param request The request
+     * @return The status code
+     */
+    public static int getStatus(final SlingJakartaHttpServletRequest request) {
         // get the :nopstatus parameter for a specific code
         int status = SlingPostConstants.NOPSTATUS_VALUE_DEFAULT;
         String nopStatusString = request.getParameter(SlingPostConstants.RP_NOP_STATUS);
         if (nopStatusString != null) {
             try {
                 int nopStatusPar = Integer.parseInt(nopStatusString);
-                if (nopStatusPar >= 100 && nopStatusPar <= 999) {
+                if (nopStatusPar >= MIN_STATUS && nopStatusPar <= MAX_STATUS) {
                     status = nopStatusPar;
                 }
             } catch (NumberFormatException nfe) {
                 // illegal number, use default
             }
         }
+        return status;
+    }
+
+    private static String getMessage(final int status) {
+        return "Null Operation Status: " + status;
+    }
 
-        response.setStatus(status, "Null Operation Status: " + status);
+    /**
+     * Create the minimal response which keeps the status and message
+     * elements of the html response.
+     */
+    private static byte[] createResponse(final int status) {
+        final String message = getMessage(status);
+        return ("<html>\n<head>\n    <title>" + message + "</title>\n</head>\n    <body>\n"
+                        + "    <div id=\"Status\">" + status + "</div>\n"
+                        + "    <div id=\"Message\">" + message + "</div>\n"
+                        + "    </body>\n</html>")
+                .getBytes(StandardCharsets.UTF_8);
     }
 }
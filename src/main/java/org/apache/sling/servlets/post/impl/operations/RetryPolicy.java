@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The <code>RetryPolicy</code> decides how often an operation is run again
+ * after a commit conflict and how long to wait before. The wait time is
+ * chosen randomly up to an exponentially growing bound, so that concurrent
+ * requests conflicting with each other do not retry at the same time.
+ */
+public final class RetryPolicy {
+
+    /** The policy not retrying at all. */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0);
+
+    /** The maximum exponent of the backoff bound. */
+    private static final int MAX_SHIFT = 10;
+
+    private final int maxRetries;
+
+    private final long delay;
+
+    /**
+     * Create a new policy
+     * @param maxRetries the maximum number of retries of a request, 0 or less disables retries
+     * @param delay the bound of the wait time in milliseconds before the first retry, doubled for every further retry
+     */
+    public RetryPolicy(final int maxRetries, final long delay) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.delay = Math.max(0, delay);
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the time to wait before a retry.
+     * @param retry the number of the retry, starting with 1
+     * @return the time in milliseconds
+     */
+    long getBackoff(final int retry) {
+        if (delay == 0) {
+            return 0;
+        }
+        final long bound = delay << Math.min(retry - 1, MAX_SHIFT);
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
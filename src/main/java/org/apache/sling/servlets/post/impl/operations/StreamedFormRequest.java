@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.RequestParameterMap;
+import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
+import org.apache.sling.servlets.post.impl.helper.FormFieldParameterMap;
+
+/**
+ * Exposes the form fields read so far from the stream of a streamed upload as
+ * request parameters, such that node name generators see them like the
+ * parameters of a request which is not streamed. It also exposes the merged
+ * parameters of coalesced requests.
+ */
+class StreamedFormRequest extends SlingJakartaHttpServletRequestWrapper {
+
+    private final FormFieldParameterMap parameters;
+
+    StreamedFormRequest(final SlingJakartaHttpServletRequest request, final Map<String, List<String>> formFields) {
+        this(request, new FormFieldParameterMap(request.getRequestParameterMap(), formFields));
+    }
+
+    StreamedFormRequest(final SlingJakartaHttpServletRequest request, final FormFieldParameterMap parameters) {
+        super(request);
+        this.parameters = parameters;
+    }
+
+    @Override
+    public RequestParameterMap getRequestParameterMap() {
+        return parameters;
+    }
+
+    @Override
+    public RequestParameter getRequestParameter(final String name) {
+        return parameters.getValue(name);
+    }
+
+    @Override
+    public RequestParameter[] getRequestParameters(final String name) {
+        return parameters.getValues(name);
+    }
+
+    @Override
+    public List<RequestParameter> getRequestParameterList() {
+        final List<RequestParameter> result = new ArrayList<>();
+        for (final RequestParameter[] values : parameters.values()) {
+            result.addAll(Arrays.asList(values));
+        }
+        return result;
+    }
+
+    @Override
+    public String getParameter(final String name) {
+        final RequestParameter value = parameters.getValue(name);
+        return value == null ? null : value.getString();
+    }
+
+    @Override
+    public String[] getParameterValues(final String name) {
+        final RequestParameter[] values = parameters.getValues(name);
+        if (values == null) {
+            return null;
+        }
+        final String[] result = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].getString();
+        }
+        return result;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        final Map<String, String[]> result = new LinkedHashMap<>();
+        for (final String name : parameters.keySet()) {
+            result.put(name, getParameterValues(name));
+        }
+        return result;
+    }
+}
@@ -18,50 +18,177 @@
  */
 package org.apache.sling.servlets.post.impl.operations;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.Part;
 import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.util.Text;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
 import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.MimeTypeResolver;
 import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.VersioningConfiguration;
+import org.apache.sling.servlets.post.impl.helper.DateParser;
+import org.apache.sling.servlets.post.impl.helper.DefaultMimeTypeResolver;
+import org.apache.sling.servlets.post.impl.helper.FormFieldParameterMap;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.apache.sling.servlets.post.impl.helper.RequestProperty;
+import org.apache.sling.servlets.post.impl.helper.SlingPropertyValueHandler;
 import org.apache.sling.servlets.post.impl.helper.StreamedChunk;
+import org.apache.sling.servlets.post.impl.helper.UploadDigester;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Performs a streamed modification of the content.
- * Each File body encountered will result in a session save operation, to cause the underlying Resource implementation
- * to stream content from the request to the target.
+ * Each large File body encountered will result in a session save operation, to cause the underlying Resource implementation
+ * to stream content from the request to the target. File bodies up to a configurable size are read into memory instead and
+ * saved together with other small bodies, once a number of bodies or a number of bytes is pending. Chunked bodies are
+ * always saved on their own.
  *
  * This implements PostOperation but does not touch the normal Sling Request processing which is not streamed.
  *
  * The map of available fields is built up as the request is streamed. It is advisable to submit the request with all the form
  * fields at the start of the request (normally based on DOM order) to ensure they are available before the streamed bodies are processed.
  *
- * The implementation does not implement the full Sling protocol aiming to keep it simple, and just deal with a streaming upload operation.
+ * The form fields preceding each body are written like the parameters of a request which is not streamed, supporting plain
+ * properties, @TypeHint, @Delete and the other suffixes, as well as creating the target with a generated name if the request
+ * path ends with / or /* (using :name or :nameHint if sent before the first body). Form fields following the last body are
+ * written at the end of the request. Operations other than the upload (:operation) are not supported.
  * The implementation binds to the Sling Resource API rather than JCR to keep it independent of the type of persistence.
  */
-public class StreamedUploadOperation extends AbstractPostOperation {
+public class StreamedUploadOperation extends AbstractCreateOperation {
     private static final Logger LOG = LoggerFactory.getLogger(StreamedUploadOperation.class);
     public static final String NT_FILE = "nt:file";
+
+    /**
+     * The JSON response property reporting the number of commits of the request.
+     */
+    public static final String PN_COMMITS = "commits";
+
+    /**
+     * The default size in bytes up to which bodies are committed together.
+     */
+    public static final long DEFAULT_COMMIT_THRESHOLD = 65536;
+
+    /**
+     * The default number of bodies committed together.
+     */
+    public static final int DEFAULT_COMMIT_PARTS = 100;
+
+    /**
+     * The default number of buffered bytes committed together.
+     */
+    public static final long DEFAULT_COMMIT_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default maximum number of bytes of a form field.
+     */
+    public static final long DEFAULT_MAX_FIELD_BYTES = 1024 * 1024;
+
+    /**
+     * The default maximum number of bytes of all form fields of a request.
+     */
+    public static final long DEFAULT_MAX_FIELDS_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * Form field suffix giving the length of a chunk, used by {@link StreamedChunk}.
+     */
+    private static final String SUFFIX_PART_LENGTH = "@PartLength";
+
     private ServletContext servletContext;
+    private volatile DateParser dateParser = new DateParser();
+    private volatile long maxFieldBytes = DEFAULT_MAX_FIELD_BYTES;
+    private volatile long maxFieldsBytes = DEFAULT_MAX_FIELDS_BYTES;
+    private final AtomicLong streamedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong formFieldBytes = new AtomicLong();
+    private volatile UploadDigester uploadDigester = UploadDigester.NONE;
+    private volatile MimeTypeResolver mimeTypeResolver = new DefaultMimeTypeResolver();
+    private volatile CommitPolicy commitPolicy =
+            new CommitPolicy(DEFAULT_COMMIT_THRESHOLD, DEFAULT_COMMIT_PARTS, DEFAULT_COMMIT_BYTES);
 
     public void setServletContext(final ServletContext servletContext) {
         this.servletContext = servletContext;
     }
 
+    public void setDateParser(final DateParser dateParser) {
+        this.dateParser = dateParser;
+    }
+
+    public void setUploadDigester(final UploadDigester uploadDigester) {
+        this.uploadDigester = uploadDigester;
+    }
+
+    public void setMimeTypeResolver(final MimeTypeResolver mimeTypeResolver) {
+        this.mimeTypeResolver = mimeTypeResolver;
+    }
+
+    /**
+     * Sets when bodies are committed.
+     * @param threshold the size in bytes up to which bodies are buffered and committed together, 0 or less commits every body.
+     * @param maxParts the number of buffered bodies after which they are committed.
+     * @param maxBytes the number of buffered bytes after which the bodies are committed.
+     */
+    public void setCommitPolicy(final long threshold, final int maxParts, final long maxBytes) {
+        this.commitPolicy = new CommitPolicy(threshold, maxParts, maxBytes);
+    }
+
+    /**
+     * Sets the limits of the size of form fields, requests exceeding them are rejected with status 413.
+     * @param maxFieldBytes the maximum number of bytes of a form field, 0 or less for no limit.
+     * @param maxFieldsBytes the maximum number of bytes of all form fields of a request, 0 or less for no limit.
+     */
+    public void setFormFieldLimits(final long maxFieldBytes, final long maxFieldsBytes) {
+        this.maxFieldBytes = maxFieldBytes;
+        this.maxFieldsBytes = maxFieldsBytes;
+    }
+
+    /**
+     * @return the number of streamed requests processed.
+     */
+    public long getStreamedRequests() {
+        return streamedRequests.get();
+    }
+
+    /**
+     * @return the number of streamed requests rejected because of the form field limits.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return the number of bytes of form fields read by all streamed requests.
+     */
+    public long getFormFieldBytes() {
+        return formFieldBytes.get();
+    }
+
     /**
      * Check the request and return true if there is a parts iterator attribute present. This attribute
      * will have been put there by the Sling Engine ParameterSupport class. If its not present, the request
@@ -79,27 +206,113 @@ public class StreamedUploadOperation extends AbstractPostOperation {
             throws PersistenceException {
         @SuppressWarnings("unchecked")
         Iterator<Part> partsIterator = (Iterator<Part>) request.getAttribute("request-parts-iterator");
+        final CommitPolicy policy = this.commitPolicy;
+        final FormFieldReader fieldReader = new FormFieldReader(maxFieldBytes, maxFieldsBytes);
+        try {
+            doRun(request, response, changes, partsIterator, fieldReader, policy);
+        } catch (PayloadTooLargeException e) {
+            rejectedRequests.incrementAndGet();
+            throw e;
+        } finally {
+            streamedRequests.incrementAndGet();
+            formFieldBytes.addAndGet(fieldReader.getTotalBytes());
+            RequestMetrics.get(request).count(SlingPostMetrics.COUNT_FORM_FIELD_BYTES, fieldReader.getTotalBytes());
+        }
+    }
+
+    private void doRun(
+            final SlingJakartaHttpServletRequest request,
+            final JakartaPostResponse response,
+            final List<Modification> changes,
+            final Iterator<Part> partsIterator,
+            final FormFieldReader fieldReader,
+            final CommitPolicy policy)
+            throws PersistenceException {
         Map<String, List<String>> formFields = new HashMap<>();
+        final Map<String, List<String>> pendingFields = new LinkedHashMap<>();
+        final ResourceResolver resolver = request.getResourceResolver();
+        final VersioningConfiguration versioningConfiguration = getVersioningConfiguration(request);
+        String createBasePath = getCreateBasePath(response.getPath());
+        int commits = 0;
+        int pendingParts = 0;
+        long pendingBytes = 0;
         boolean streamingBodies = false;
         while (partsIterator.hasNext()) {
             Part part = partsIterator.next();
             String name = part.getName();
 
             if (isFormField(part)) {
-                addField(formFields, name, part);
+                final String value = addField(formFields, name, part, fieldReader);
+                if (value != null) {
+                    pendingFields.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+                }
                 if (streamingBodies) {
-                    LOG.warn(
+                    LOG.debug(
                             "Form field {} was sent after the bodies started to be streamed. "
-                                    + "Will not have been available to all streamed bodies. "
-                                    + "It is recommended to send all form fields before streamed bodies in the POST ",
+                                    + "Will not be available to the streamed bodies sent before it.",
                             name);
                 }
             } else {
+                // write the form fields preceding the body, creating the target and any missing
+                // parents if required, using the jcr:primaryType hints of the fields
+                final boolean create = createBasePath != null;
+                if (create) {
+                    resolveCreatePath(request, response, createBasePath, formFields);
+                    createBasePath = null;
+                }
+                final boolean missing =
+                        !create && !streamingBodies && !resourceExists(resolver.getResource(response.getPath()));
                 streamingBodies = true;
-                // process the file body and commit.
-                writeContent(request.getResourceResolver(), part, formFields, response, changes);
+                if (create || missing || !pendingFields.isEmpty()) {
+                    writeFields(request, response, pendingFields, formFields, changes, versioningConfiguration);
+                    pendingFields.clear();
+                }
+                final BufferedPart buffered = StreamedChunk.isChunked(part, formFields) ? null : policy.buffer(part);
+                if (buffered == null || !buffered.isComplete()) {
+                    // process the file body and commit, together with the pending bodies.
+                    writeContent(resolver, buffered == null ? part : buffered, formFields, response, changes);
+                    resolver.commit();
+                    commits++;
+                    pendingParts = 0;
+                    pendingBytes = 0;
+                } else {
+                    writeContent(resolver, buffered, formFields, response, changes);
+                    pendingParts++;
+                    pendingBytes += buffered.getSize();
+                    if (pendingParts >= policy.maxParts || pendingBytes >= policy.maxBytes) {
+                        resolver.commit();
+                        commits++;
+                        pendingParts = 0;
+                        pendingBytes = 0;
+                    }
+                }
             }
         }
+        // trailing form fields
+        if (createBasePath != null) {
+            resolveCreatePath(request, response, createBasePath, formFields);
+        }
+        if (!pendingFields.isEmpty()) {
+            writeFields(request, response, pendingFields, formFields, changes, versioningConfiguration);
+        }
+        // order content, the :order field may be sent anywhere in the body
+        final List<String> order = formFields.get(SlingPostConstants.RP_ORDER);
+        if (order != null && !order.isEmpty()) {
+            orderResource(order.get(0), resolver.getResource(response.getPath()), changes);
+        }
+        if (pendingParts > 0) {
+            resolver.commit();
+            commits++;
+        }
+        LOG.debug(
+                "Streamed upload to {} read {} bytes of form fields and committed {} times",
+                response.getPath(),
+                fieldReader.getTotalBytes(),
+                commits);
+        RequestMetrics.get(request).count(SlingPostMetrics.COUNT_COMMITS, commits);
+        if (response instanceof JakartaJSONResponse) {
+            ((JakartaJSONResponse) response).setProperty(PN_COMMITS, commits);
+        }
     }
 
     /**
@@ -107,24 +320,124 @@ public class StreamedUploadOperation extends AbstractPostOperation {
      * @param formFields the formFileds
      * @param name the name of the field.
      * @param part the part.
+     * @param fieldReader the reader of the form fields of the request.
+     * @return the value of the field or null if it could not be read.
+     * @throws PayloadTooLargeException if the field exceeds the configured limits.
      */
-    private void addField(Map<String, List<String>> formFields, String name, Part part) {
+    private String addField(Map<String, List<String>> formFields, String name, Part part, FormFieldReader fieldReader)
+            throws PayloadTooLargeException {
         List<String> values = formFields.get(name);
         if (values == null) {
             values = new ArrayList<>();
             formFields.put(name, values);
         }
         try {
-            values.add(IOUtils.toString(part.getInputStream(), "UTF-8"));
+            final String value = fieldReader.read(part);
+            values.add(value);
+            return value;
+        } catch (PayloadTooLargeException e) {
+            throw e;
         } catch (IOException e) {
             LOG.error("Failed to read form field " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the path below which a resource with a generated name is to be created.
+     * @param path the path of the request resource.
+     * @return the path without the trailing / or /*, or null if the path does not end with either.
+     */
+    private String getCreateBasePath(final String path) {
+        if (path.endsWith(SlingPostConstants.STAR_CREATE_SUFFIX)) {
+            return path.substring(0, path.length() - SlingPostConstants.STAR_CREATE_SUFFIX.length());
+        } else if (path.endsWith(SlingPostConstants.DEFAULT_CREATE_SUFFIX) && path.length() > 1) {
+            return path.substring(0, path.length() - SlingPostConstants.DEFAULT_CREATE_SUFFIX.length());
+        }
+        return null;
+    }
+
+    /**
+     * Generate the name of the resource to create from the form fields read so far and update the response.
+     * @param request the request.
+     * @param response the response.
+     * @param basePath the path below which the resource is created.
+     * @param formFields form fields collected so far.
+     * @throws PersistenceException
+     */
+    private void resolveCreatePath(
+            final SlingJakartaHttpServletRequest request,
+            final JakartaPostResponse response,
+            final String basePath,
+            final Map<String, List<String>> formFields)
+            throws PersistenceException {
+        final String path = generateName(new StreamedFormRequest(request, formFields), basePath);
+        response.setPath(path);
+        response.setLocationSupplier(() -> externalizePath(request, path));
+        final String parentPath = ResourceUtil.getParent(path);
+        if (parentPath != null) {
+            response.setParentLocationSupplier(() -> externalizePath(request, parentPath));
+        }
+    }
+
+    /**
+     * Write form fields to the target resource the same way as the parameters of a request which is not streamed.
+     * @param request the request.
+     * @param response the response.
+     * @param fields the form fields to write.
+     * @param formFields all form fields collected so far.
+     * @param changes changes made to the repo.
+     * @param versioningConfiguration the versioning configuration.
+     * @throws PersistenceException
+     */
+    private void writeFields(
+            final SlingJakartaHttpServletRequest request,
+            final JakartaPostResponse response,
+            final Map<String, List<String>> fields,
+            final Map<String, List<String>> formFields,
+            final List<Modification> changes,
+            final VersioningConfiguration versioningConfiguration)
+            throws PersistenceException {
+        final ResourceResolver resolver = request.getResourceResolver();
+        final FormFieldParameterMap parameters = new FormFieldParameterMap();
+        for (final Map.Entry<String, List<String>> entry : fields.entrySet()) {
+            if (!entry.getKey().endsWith(SUFFIX_PART_LENGTH)) {
+                parameters.add(entry.getKey(), entry.getValue());
+            }
+        }
+        boolean requireItemPrefix = requireItemPathPrefix(request);
+        for (final String name : formFields.keySet()) {
+            requireItemPrefix |= name.startsWith(SlingPostConstants.ITEM_PREFIX_RELATIVE_CURRENT);
+        }
+        final Map<String, RequestProperty> reqProperties = collectContent(parameters, requireItemPrefix, response);
+
+        processCreate(resolver, reqProperties, response, changes, versioningConfiguration);
+        processMoves(resolver, reqProperties, changes, versioningConfiguration);
+        processCopies(resolver, reqProperties, changes, versioningConfiguration);
+        processDeletes(resolver, reqProperties, changes, versioningConfiguration);
+
+        final SlingPropertyValueHandler propHandler =
+                new SlingPropertyValueHandler(dateParser, this.jcrSupport, changes);
+        for (final RequestProperty prop : reqProperties.values()) {
+            if (prop.hasValues()) {
+                final Resource parent = deepGetOrCreateResource(
+                        resolver, prop.getParentPath(), reqProperties, changes, versioningConfiguration);
+                this.jcrSupport.checkoutIfNecessary(parent, changes, versioningConfiguration);
+
+                // skip jcr special properties
+                if (prop.getName().equals(JcrConstants.JCR_PRIMARYTYPE)
+                        || prop.getName().equals(JcrConstants.JCR_MIXINTYPES)) {
+                    continue;
+                }
+                propHandler.setProperty(parent, prop);
+            }
         }
     }
 
     /**
      * Write content to the resource API creating a standard JCR structure of nt:file - nt:resource - jcr:data.
-     * This method will commit to the repository to force the repository to read from the input stream and write
-     * to the target. How efficient that is depends on the repository implementation.
+     * The caller must commit to force the repository to read from the input stream and write to the target.
+     * How efficient that is depends on the repository implementation.
      * @param resolver the resource resolver.
      * @param part the part containing the file body.
      * @param formFields form fields collected so far.
@@ -143,8 +456,7 @@ public class StreamedUploadOperation extends AbstractPostOperation {
         final String path = response.getPath();
         final Resource parentResource = resolver.getResource(path);
         if (!resourceExists(parentResource)) {
-            throw new IllegalArgumentException(
-                    "Parent resource must already exist to be able to stream upload content. Please create first ");
+            throw new IllegalArgumentException("Parent resource " + path + " could not be created");
         }
         String name = getUploadName(part);
         Resource fileResource = parentResource.getChild(name);
@@ -154,9 +466,29 @@ public class StreamedUploadOperation extends AbstractPostOperation {
             fileResource = parentResource.getResourceResolver().create(parentResource, name, fileProps);
         }
 
-        StreamedChunk chunk = new StreamedChunk(part, formFields, servletContext);
-        Resource result = chunk.store(fileResource, changes);
-        result.getResourceResolver().commit();
+        StreamedChunk chunk = new StreamedChunk(part, formFields, servletContext, uploadDigester, mimeTypeResolver);
+        chunk.store(fileResource, changes);
+    }
+
+    /**
+     * Get the length of the body of a part from its Content-Length header.
+     * @param part the part.
+     * @return the length, or -1 if the header is missing or not a valid length.
+     */
+    static long getContentLength(final Part part) {
+        final String contentLength = part.getHeader("Content-Length");
+        if (contentLength != null) {
+            try {
+                final long length = Long.parseLong(contentLength.trim());
+                if (length >= 0) {
+                    return length;
+                }
+            } catch (final NumberFormatException e) {
+                // treated as unknown below
+            }
+            LOG.debug("Ignoring invalid Content-Length {} of part {}", contentLength, part.getName());
+        }
+        return -1;
     }
 
     /**
@@ -196,4 +528,132 @@ public class StreamedUploadOperation extends AbstractPostOperation {
     private boolean resourceExists(final Resource resource) {
         return (resource != null && !ResourceUtil.isSyntheticResource(resource));
     }
+
+    /**
+     * Decides which bodies are buffered and when buffered bodies are committed.
+     */
+    private static final class CommitPolicy {
+        private final long threshold;
+        private final int maxParts;
+        private final long maxBytes;
+
+        CommitPolicy(final long threshold, final int maxParts, final long maxBytes) {
+            this.threshold = threshold;
+            this.maxParts = Math.max(1, maxParts);
+            this.maxBytes = Math.max(1, maxBytes);
+        }
+
+        /**
+         * Read the body into memory if it is not larger than the threshold.
+         * @param part the part.
+         * @return the buffered part, which is incomplete if the body is larger than the threshold, or null if the
+         * body has not been read.
+         * @throws PersistenceException
+         */
+        BufferedPart buffer(final Part part) throws PersistenceException {
+            if (threshold <= 0) {
+                return null;
+            }
+            final long contentLength = getContentLength(part);
+            if (contentLength > threshold) {
+                return null;
+            }
+            // read one byte more than the threshold or the Content-Length to detect a longer body
+            final long limit = (contentLength >= 0 ? contentLength : Math.min(threshold, Integer.MAX_VALUE - 9)) + 1;
+            try {
+                final InputStream in = part.getInputStream();
+                // without a Content-Length the buffer grows with the body instead of taking the threshold
+                final ByteArrayOutputStream buffer =
+                        new ByteArrayOutputStream((int) (contentLength >= 0 ? limit : Math.min(limit, 8192)));
+                final long length = IOUtils.copyLarge(in, buffer, 0, limit);
+                if (length < limit) {
+                    return new BufferedPart(part, buffer.toByteArray(), null);
+                }
+                return new BufferedPart(part, buffer.toByteArray(), in);
+            } catch (IOException e) {
+                throw new PersistenceException("Error while reading request part " + part.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * A part of which the start or all of the body has been read into memory.
+     */
+    static final class BufferedPart implements Part {
+        private final Part part;
+        private final byte[] head;
+        private final InputStream rest;
+
+        BufferedPart(final Part part, final byte[] head, final InputStream rest) {
+            this.part = part;
+            this.head = head;
+            this.rest = rest;
+        }
+
+        /**
+         * @return true if the body has been read completely.
+         */
+        boolean isComplete() {
+            return rest == null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            final InputStream in = new ByteArrayInputStream(head);
+            return rest == null ? in : new SequenceInputStream(in, rest);
+        }
+
+        @Override
+        public String getContentType() {
+            return part.getContentType();
+        }
+
+        @Override
+        public String getName() {
+            return part.getName();
+        }
+
+        @Override
+        public String getSubmittedFileName() {
+            return part.getSubmittedFileName();
+        }
+
+        @Override
+        public long getSize() {
+            return rest == null ? head.length : part.getSize();
+        }
+
+        /**
+         * Writes the body, including the buffered start, to a file. Relative
+         * file names are resolved against the working directory, as the
+         * multipart location of the container is not known here.
+         */
+        @Override
+        public void write(final String fileName) throws IOException {
+            try (InputStream in = getInputStream();
+                    OutputStream out = Files.newOutputStream(Paths.get(fileName))) {
+                IOUtils.copy(in, out);
+            }
+        }
+
+        @Override
+        public void delete() throws IOException {
+            part.delete();
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return part.getHeader(name);
+        }
+
+        @Override
+        public Collection<String> getHeaders(final String name) {
+            return part.getHeaders(name);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return part.getHeaderNames();
+        }
+    }
 }
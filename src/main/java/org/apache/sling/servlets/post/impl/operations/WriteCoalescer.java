@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.header.JakartaMediaRangeList;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.helper.FormFieldParameterMap;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>WriteCoalescer</code> merges modify requests of the same user to
+ * the same resource arriving within a short delay into a single run of the
+ * {@link ModifyOperation} and a single commit. The first request of a batch
+ * waits for the delay, runs the merged request and shares the outcome with
+ * the other requests of the batch.
+ * <p>
+ * Only requests setting or patching properties with form fields are merged.
+ * A property set by a later request replaces the values of an earlier one,
+ * patches of a later request are applied to the values of an earlier one or
+ * appended to its patches.
+ */
+public final class WriteCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteCoalescer.class);
+
+    /** The request parameters not changing the content which a merged request may have. */
+    private static final Set<String> ALLOWED_PARAMETERS = new HashSet<>(Arrays.asList(
+            SlingPostConstants.RP_OPERATION,
+            SlingPostConstants.RP_STATUS,
+            SlingPostConstants.RP_REDIRECT_TO,
+            SlingPostConstants.RP_SEND_ERROR,
+            JakartaMediaRangeList.PARAM_ACCEPT,
+            "_charset_"));
+
+    /**
+     * The time in milliseconds the other requests of a batch wait for the merged
+     * request in addition to the delay, before they fail.
+     */
+    private static final long OUTCOME_TIMEOUT = 60_000;
+
+    private final ModifyOperation operation;
+
+    private final Pattern pattern;
+
+    private final long delay;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new coalescer
+     * @param operation the modify operation
+     * @param pattern the pattern of the resource paths whose requests are merged
+     * @param delay the time in milliseconds the first request of a batch waits for further requests
+     */
+    public WriteCoalescer(final ModifyOperation operation, final Pattern pattern, final long delay) {
+        this.operation = operation;
+        this.pattern = pattern;
+        this.delay = Math.max(0, delay);
+    }
+
+    /**
+     * Checks whether the request can be merged with other requests.
+     * @param request the request
+     * @return <code>true</code> if the request can be merged
+     */
+    public boolean accepts(final SlingJakartaHttpServletRequest request) {
+        final String path = request.getResource().getPath();
+        if (path.endsWith(SlingPostConstants.DEFAULT_CREATE_SUFFIX)
+                || path.endsWith(SlingPostConstants.STAR_CREATE_SUFFIX)
+                || !pattern.matcher(path).matches()
+                || request.getResourceResolver().getUserID() == null) {
+            return false;
+        }
+        for (final Map.Entry<String, RequestParameter[]> entry :
+                request.getRequestParameterMap().entrySet()) {
+            final String name = entry.getKey();
+            if (ALLOWED_PARAMETERS.contains(name)) {
+                continue;
+            }
+            if (name.startsWith(SlingPostConstants.RP_PREFIX)) {
+                return false;
+            }
+            if (name.indexOf('@') >= 0
+                    && !name.endsWith(SlingPostConstants.TYPE_HINT_SUFFIX)
+                    && !name.endsWith(SlingPostConstants.SUFFIX_PATCH)) {
+                return false;
+            }
+            for (final RequestParameter value : entry.getValue()) {
+                if (!value.isFormField()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the request together with the other requests of its batch.
+     * @param request the request
+     * @param response the response of the request
+     * @param processors the post processors
+     * @throws PersistenceException if the merged request fails
+     */
+    public void run(
+            final SlingJakartaHttpServletRequest request,
+            final JakartaPostResponse response,
+            final SlingJakartaPostProcessor[] processors)
+            throws PersistenceException {
+        final String key = request.getResource().getPath()
+                + '\n'
+                + request.getResourceResolver().getUserID();
+        final Map<String, String[]> fields = getFields(request);
+
+        Batch batch;
+        boolean first;
+        while (true) {
+            batch = batches.computeIfAbsent(key, k -> new Batch());
+            synchronized (batch) {
+                if (!batch.closed) {
+                    first = batch.fields.isEmpty();
+                    batch.fields.add(fields);
+                    break;
+                }
+            }
+            // the batch is running already, start a new one
+            batches.remove(key, batch);
+        }
+
+        if (first) {
+            runBatch(key, batch, request, processors);
+        }
+        getOutcome(batch).apply(response);
+    }
+
+    private void runBatch(
+            final String key,
+            final Batch batch,
+            final SlingJakartaHttpServletRequest request,
+            final SlingJakartaPostProcessor[] processors) {
+        final Outcome outcome = new Outcome();
+        Throwable failure = null;
+        try {
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final List<Map<String, String[]>> requests = close(key, batch);
+
+            final FormFieldParameterMap parameters = new FormFieldParameterMap();
+            for (final Map.Entry<String, RequestParameter[]> entry :
+                    request.getRequestParameterMap().entrySet()) {
+                if (entry.getKey().startsWith(SlingPostConstants.RP_PREFIX)) {
+                    parameters.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (final Map.Entry<String, String[]> entry : merge(requests).entrySet()) {
+                parameters.add(entry.getKey(), Arrays.asList(entry.getValue()));
+            }
+
+            LOG.debug(
+                    "Running {} merged requests to {}",
+                    requests.size(),
+                    request.getResource().getPath());
+            RequestMetrics.get(request).count(SlingPostMetrics.COUNT_COALESCED_REQUESTS, requests.size());
+            operation.run(new StreamedFormRequest(request, parameters), outcome, processors);
+            // resolve the locations while the request is still valid
+            outcome.setLocation(outcome.getLocation());
+            outcome.setParentLocation(outcome.getParentLocation());
+        } catch (final Throwable t) {
+            failure = t;
+        } finally {
+            // never leave the other requests of the batch waiting, and never let
+            // further requests join a batch whose outcome is known
+            close(key, batch);
+            if (failure == null) {
+                batch.outcome.complete(outcome);
+            } else {
+                batch.outcome.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Closes the batch for further requests.
+     * @return the form fields of the requests of the batch
+     */
+    private List<Map<String, String[]>> close(final String key, final Batch batch) {
+        batches.remove(key, batch);
+        synchronized (batch) {
+            batch.closed = true;
+            return new ArrayList<>(batch.fields);
+        }
+    }
+
+    private Outcome getOutcome(final Batch batch) throws PersistenceException {
+        try {
+            return batch.outcome.get(delay + OUTCOME_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException te) {
+            throw new PersistenceException("Timed out waiting for merged request", te);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Interrupted while waiting for merged request", ie);
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof PersistenceException) {
+                throw (PersistenceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PersistenceException(cause.getMessage(), (Exception) cause);
+        }
+    }
+
+    /**
+     * Returns the property form fields of the request.
+     */
+    private static Map<String, String[]> getFields(final SlingJakartaHttpServletRequest request) {
+        final Map<String, String[]> fields = new LinkedHashMap<>();
+        for (final Map.Entry<String, RequestParameter[]> entry :
+                request.getRequestParameterMap().entrySet()) {
+            if (!entry.getKey().startsWith(SlingPostConstants.RP_PREFIX)
+                    && !ALLOWED_PARAMETERS.contains(entry.getKey())) {
+                final RequestParameter[] parameters = entry.getValue();
+                final String[] values = new String[parameters.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = parameters[i].getString();
+                }
+                fields.put(entry.getKey(), values);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Merges the property form fields of the requests in their order.
+     * @param requests the form fields of the requests
+     * @return the merged form fields
+     */
+    static Map<String, String[]> merge(final List<Map<String, String[]>> requests) {
+        final Map<String, List<String>> merged = new LinkedHashMap<>();
+        final Set<String> patched = new HashSet<>();
+        for (final Map<String, String[]> fields : requests) {
+            for (final Map.Entry<String, String[]> entry : fields.entrySet()) {
+                final String name = entry.getKey();
+                final List<String> values = new ArrayList<>(Arrays.asList(entry.getValue()));
+                if (name.endsWith(SlingPostConstants.SUFFIX_PATCH)) {
+                    continue;
+                } else if (name.endsWith(SlingPostConstants.TYPE_HINT_SUFFIX)) {
+                    merged.put(name, values);
+                } else if (!fields.containsKey(name + SlingPostConstants.SUFFIX_PATCH)) {
+                    merged.put(name, values);
+                    patched.remove(name);
+                } else if (!merged.containsKey(name)) {
+                    merged.put(name, values);
+                    patched.add(name);
+                } else if (patched.contains(name)) {
+                    merged.get(name).addAll(values);
+                } else {
+                    patch(merged.get(name), values);
+                }
+            }
+        }
+
+        final Map<String, String[]> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<String>> entry : merged.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+            if (patched.contains(entry.getKey())) {
+                result.put(entry.getKey() + SlingPostConstants.SUFFIX_PATCH, new String[] {"true"});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies the patch operations to the values like the modify operation
+     * applies them to a multi-value property.
+     */
+    private static void patch(final List<String> values, final List<String> operations) {
+        for (final String operation : operations) {
+            if (operation != null && operation.length() > 0) {
+                final String value = operation.substring(1);
+                if (operation.charAt(0) == SlingPostConstants.PATCH_ADD) {
+                    if (!values.contains(value)) {
+                        values.add(value);
+                    }
+                } else if (operation.charAt(0) == SlingPostConstants.PATCH_REMOVE) {
+                    while (values.remove(value)) {
+                        // remove all occurrences
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The requests to the same resource waiting to be run together.
+     */
+    private static final class Batch {
+        final List<Map<String, String[]>> fields = new ArrayList<>();
+        final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        boolean closed;
+    }
+
+    /**
+     * Records the outcome of a merged request to pass it to the responses of
+     * all requests of the batch.
+     */
+    private static final class Outcome extends AbstractJakartaPostResponse {
+
+        private final List<String[]> changes = new ArrayList<>();
+
+        @Override
+        public void onChange(final String type, final String... arguments) {
+            final String[] change = new String[arguments.length + 1];
+            change[0] = type;
+            System.arraycopy(arguments, 0, change, 1, arguments.length);
+            changes.add(change);
+        }
+
+        void apply(final JakartaPostResponse response) {
+            response.setPath(getPath());
+            response.setLocation(getLocation());
+            response.setParentLocation(getParentLocation());
+            response.setCreateRequest(isCreateRequest());
+            for (final String[] change : changes) {
+                final String[] arguments = Arrays.copyOfRange(change, 1, change.length);
+                response.onChange(change[0], arguments);
+            }
+        }
+
+        @Override
+        protected void doSend(final HttpServletResponse response) {
+            // only recorded
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.sling.servlets.post;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.sling.api.request.builder.Builders;
 import org.apache.sling.api.request.builder.SlingJakartaHttpServletResponseResult;
 import org.junit.Before;
@@ -55,4 +57,30 @@ public class JakartaHtmlResponseTest {
         assertTrue(output.contains(
                 "<div id=\"ChangeLog\">&lt;pre&gt;modified(&quot;argument1&quot;);&lt;br/&gt;&lt;/pre&gt;</div>"));
     }
+
+    @Test
+    public void testLocationSupplier() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        res.setLocationSupplier(() -> {
+            calls.incrementAndGet();
+            return "/mapped/content";
+        });
+        res.setParentLocationSupplier(() -> "/mapped");
+        assertEquals(0, calls.get());
+
+        SlingJakartaHttpServletResponseResult response =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        res.send(response, true);
+        assertEquals(1, calls.get());
+        assertEquals("/mapped/content", res.getLocation());
+        assertEquals(1, calls.get());
+        String output = response.getOutputAsString();
+        assertTrue(output.contains("<a href=\"/mapped/content\" id=\"Location\">/mapped/content</a>"));
+        assertTrue(output.contains("<a href=\"/mapped\" id=\"ParentLocation\">/mapped</a>"));
+
+        // setting the location replaces the supplier
+        res.setLocationSupplier(() -> "/other");
+        res.setLocation("/content");
+        assertEquals("/content", res.getLocation());
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VersioningConfigurationTest {
+
+    @Test
+    public void testSharedConfigurations() {
+        final VersioningConfiguration cfg = VersioningConfiguration.valueOf(true, false, true);
+        Assert.assertSame(cfg, VersioningConfiguration.valueOf(true, false, true));
+        Assert.assertTrue(cfg.isCheckinOnNewVersionableNode());
+        Assert.assertFalse(cfg.isAutoCheckout());
+        Assert.assertTrue(cfg.isAutoCheckin());
+        Assert.assertFalse(cfg.isModifiable());
+        Assert.assertNotSame(cfg, VersioningConfiguration.valueOf(true, true, true));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSharedConfigurationNotModifiable() {
+        VersioningConfiguration.valueOf(false, false, true).setAutoCheckout(true);
+    }
+
+    @Test
+    public void testCloneIsModifiable() {
+        final VersioningConfiguration cfg =
+                VersioningConfiguration.valueOf(false, false, true).clone();
+        Assert.assertTrue(cfg.isModifiable());
+        cfg.setAutoCheckout(true);
+        Assert.assertTrue(cfg.isAutoCheckout());
+        Assert.assertFalse(VersioningConfiguration.valueOf(false, false, true).isAutoCheckout());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testParse() {
+        Assert.assertTrue(new AdmissionControl(new String[] {"import", "=1", "copy=0", "move=x"}, 0).isEmpty());
+        Assert.assertFalse(new AdmissionControl(new String[] {"import=2,10"}, 0).isEmpty());
+    }
+
+    @Test
+    public void testUnlimited() {
+        final AdmissionControl admission = new AdmissionControl(new String[] {"import=1"}, 0);
+        Assert.assertSame(AdmissionControl.UNLIMITED, admission.acquire("modify", "/content", RequestMetrics.NONE));
+    }
+
+    @Test
+    public void testReject() {
+        final AdmissionControl admission = new AdmissionControl(new String[] {"import=1"}, 0);
+        final AdmissionControl.Ticket ticket = admission.acquire("import", "/content", RequestMetrics.NONE);
+        Assert.assertNotNull(ticket);
+        Assert.assertNull(admission.acquire("import", "/content", RequestMetrics.NONE));
+        ticket.release();
+        Assert.assertNotNull(admission.acquire("import", "/content", RequestMetrics.NONE));
+    }
+
+    @Test
+    public void testPathPrefix() {
+        final AdmissionControl admission = new AdmissionControl(new String[] {"copy=5", "copy@/content/dam=1"}, 0);
+        Assert.assertNotNull(admission.acquire("copy", "/content/dam/a", RequestMetrics.NONE));
+        Assert.assertNull(admission.acquire("copy", "/content/dam/b", RequestMetrics.NONE));
+        // the prefix only matches whole path segments
+        Assert.assertNotNull(admission.acquire("copy", "/content/damaged", RequestMetrics.NONE));
+        Assert.assertNotNull(admission.acquire("copy", "/content/site", RequestMetrics.NONE));
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        final AdmissionControl admission = new AdmissionControl(new String[] {"import=1,1"}, 5000);
+        final AdmissionControl.Ticket ticket = admission.acquire("import", "/content", RequestMetrics.NONE);
+
+        final CompletableFuture<AdmissionControl.Ticket> waiting =
+                CompletableFuture.supplyAsync(() -> admission.acquire("import", "/content", RequestMetrics.NONE));
+        Thread.sleep(200);
+        // the queue is full
+        Assert.assertNull(admission.acquire("import", "/content", RequestMetrics.NONE));
+
+        ticket.release();
+        final AdmissionControl.Ticket queued = waiting.get();
+        Assert.assertNotNull(queued);
+        Assert.assertEquals(1, queued.getQueued());
+    }
+
+    @Test
+    public void testQueueDepth() throws Exception {
+        final AdmissionControl admission = new AdmissionControl(new String[] {"import=1,2"}, 5000);
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        final RequestMetrics requestMetrics = new RequestMetrics(metrics, "import");
+        final AdmissionControl.Ticket ticket = admission.acquire("import", "/content", requestMetrics);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CompletableFuture<AdmissionControl.Ticket> first = CompletableFuture.supplyAsync(
+                    () -> admission.acquire("import", "/content", requestMetrics), executor);
+            awaitQueueDepth(metrics, 1);
+            final CompletableFuture<AdmissionControl.Ticket> second = CompletableFuture.supplyAsync(
+                    () -> admission.acquire("import", "/content", requestMetrics), executor);
+            awaitQueueDepth(metrics, 2);
+            Assert.assertEquals(2, admission.getWaiting("import"));
+
+            ticket.release();
+            ((AdmissionControl.Ticket) CompletableFuture.anyOf(first, second).get()).release();
+            Assert.assertNotNull(first.get());
+            Assert.assertNotNull(second.get());
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(0, admission.getWaiting("import"));
+        Assert.assertEquals(Long.valueOf(0), metrics.getGauges().get("import." + SlingPostMetrics.GAUGE_QUEUE_DEPTH));
+    }
+
+    private static void awaitQueueDepth(final DefaultSlingPostMetrics metrics, final long depth)
+            throws InterruptedException {
+        final String name = "import." + SlingPostMetrics.GAUGE_QUEUE_DEPTH;
+        final long end = System.currentTimeMillis() + 5000;
+        while (!Long.valueOf(depth).equals(metrics.getGauges().get(name)) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Long.valueOf(depth), metrics.getGauges().get(name));
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.servlets.post.JakartaPostOperation;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class AsyncPostExecutorTest {
+
+    private static final String JOB_ROOT = "/var/jobs";
+
+    private final Map<String, Map<String, Object>> jobs = new HashMap<>();
+
+    private ResourceResolverFactory factory;
+
+    private ResourceResolver userResolver;
+
+    private Map<String, Object> impersonated;
+
+    @Before
+    public void setup() throws Exception {
+        final ResourceResolver serviceResolver = Mockito.mock(ResourceResolver.class);
+        final Resource root = Mockito.mock(Resource.class);
+        Mockito.when(serviceResolver.getResource(JOB_ROOT)).thenReturn(root);
+        Mockito.when(root.listChildren()).thenAnswer(invocation -> {
+            synchronized (jobs) {
+                final List<Resource> children = new ArrayList<>();
+                for (final String path : jobs.keySet()) {
+                    children.add(mockJob(path));
+                }
+                return children.iterator();
+            }
+        });
+        Mockito.when(serviceResolver.create(
+                        ArgumentMatchers.eq(root), ArgumentMatchers.anyString(), ArgumentMatchers.anyMap()))
+                .thenAnswer(invocation -> {
+                    final String path = JOB_ROOT + "/" + invocation.getArgument(1);
+                    synchronized (jobs) {
+                        jobs.put(path, new HashMap<>(invocation.getArgument(2)));
+                    }
+                    return mockJob(path);
+                });
+        Mockito.when(serviceResolver.getResource(ArgumentMatchers.startsWith(JOB_ROOT + "/")))
+                .thenAnswer(invocation -> {
+                    synchronized (jobs) {
+                        final String path = invocation.getArgument(0);
+                        return jobs.containsKey(path) ? mockJob(path) : null;
+                    }
+                });
+        Mockito.doAnswer(invocation -> {
+                    synchronized (jobs) {
+                        jobs.remove(((Resource) invocation.getArgument(0)).getPath());
+                    }
+                    return null;
+                })
+                .when(serviceResolver)
+                .delete(ArgumentMatchers.any(Resource.class));
+
+        userResolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(userResolver.getUserID()).thenReturn("alice");
+
+        factory = Mockito.mock(ResourceResolverFactory.class);
+        Mockito.when(factory.getServiceResourceResolver(ArgumentMatchers.anyMap()))
+                .thenAnswer(invocation -> {
+                    final Map<String, Object> info = invocation.getArgument(0);
+                    Assert.assertEquals(
+                            AsyncPostExecutor.SUBSERVICE_NAME, info.get(ResourceResolverFactory.SUBSERVICE));
+                    if (info.containsKey(ResourceResolverFactory.USER_IMPERSONATION)) {
+                        impersonated = info;
+                        return userResolver;
+                    }
+                    return serviceResolver;
+                });
+    }
+
+    private Resource mockJob(final String path) {
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn(path);
+        Mockito.when(resource.adaptTo(ModifiableValueMap.class))
+                .thenReturn(new ModifiableValueMapDecorator(jobs.get(path)));
+        Mockito.when(resource.getValueMap()).thenReturn(new ValueMapDecorator(jobs.get(path)));
+        return resource;
+    }
+
+    private SlingJakartaHttpServletRequest createRequest() {
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn("/content/a");
+        Mockito.when(resource.getResourceResolver()).thenReturn(userResolver);
+        return Builders.newRequestBuilder(resource)
+                .withRequestMethod("POST")
+                .withParameter("title", "A")
+                .withParameter(SlingPostConstants.RP_ASYNC, "true")
+                .buildJakartaRequest();
+    }
+
+    private Object awaitStatus(final String jobPath, final String status) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < end) {
+            synchronized (jobs) {
+                if (status.equals(jobs.get(jobPath).get(AsyncPostExecutor.PN_STATUS))) {
+                    return status;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return jobs.get(jobPath).get(AsyncPostExecutor.PN_STATUS);
+    }
+
+    @Test
+    public void testAccepts() {
+        Assert.assertTrue(AsyncPostExecutor.accepts(createRequest()));
+
+        final ResourceResolver anonymous = Mockito.mock(ResourceResolver.class);
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getResourceResolver()).thenReturn(anonymous);
+        Assert.assertFalse(
+                AsyncPostExecutor.accepts(Builders.newRequestBuilder(resource).buildJakartaRequest()));
+
+        Mockito.when(anonymous.getUserID()).thenReturn(AsyncPostExecutor.ANONYMOUS_USER_ID);
+        Assert.assertFalse(
+                AsyncPostExecutor.accepts(Builders.newRequestBuilder(resource).buildJakartaRequest()));
+    }
+
+    @Test
+    public void testRunJob() throws Exception {
+        final JakartaPostOperation operation = Mockito.mock(JakartaPostOperation.class);
+        Mockito.doAnswer(invocation -> {
+                    final SlingJakartaHttpServletRequest request = invocation.getArgument(0);
+                    Assert.assertEquals("A", request.getParameter("title"));
+                    Assert.assertNull(request.getParameter(SlingPostConstants.RP_ASYNC));
+                    final JakartaPostResponse response = invocation.getArgument(1);
+                    response.onModified("/content/a/title");
+                    response.onModified("/content/a/text");
+                    response.onCreated("/content/a/b");
+                    return null;
+                })
+                .when(operation)
+                .run(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        final AsyncPostExecutor executor = new AsyncPostExecutor(JOB_ROOT, 1, 1, 0);
+        try {
+            final String jobPath =
+                    executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]);
+            Assert.assertNotNull(jobPath);
+            Assert.assertEquals(AsyncPostExecutor.STATUS_SUCCEEDED, awaitStatus(jobPath, "succeeded"));
+
+            final Map<String, Object> job = jobs.get(jobPath);
+            Assert.assertEquals("modify", job.get(AsyncPostExecutor.PN_OPERATION));
+            Assert.assertEquals("/content/a", job.get(AsyncPostExecutor.PN_PATH));
+            Assert.assertEquals("alice", job.get(AsyncPostExecutor.PN_USER_ID));
+            Assert.assertEquals(200L, job.get(AsyncPostExecutor.PN_STATUS_CODE));
+            Assert.assertArrayEquals(
+                    new String[] {"modified:2", "created:1"}, (String[]) job.get(AsyncPostExecutor.PN_CHANGES));
+            Assert.assertEquals("alice", impersonated.get(ResourceResolverFactory.USER_IMPERSONATION));
+            Mockito.verify(userResolver).close();
+        } finally {
+            executor.shutdown(AsyncPostExecutor.SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final JakartaPostOperation operation = Mockito.mock(JakartaPostOperation.class);
+        Mockito.doAnswer(invocation -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    throw new IllegalStateException("failed");
+                })
+                .when(operation)
+                .run(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        final AsyncPostExecutor executor = new AsyncPostExecutor(JOB_ROOT, 1, 1, 0);
+        try {
+            final String running =
+                    executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]);
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            final String queued =
+                    executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]);
+            Assert.assertNotNull(queued);
+            Assert.assertNull(
+                    executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]));
+            Assert.assertEquals(2, jobs.size());
+            Assert.assertEquals(
+                    AsyncPostExecutor.STATUS_QUEUED, jobs.get(queued).get(AsyncPostExecutor.PN_STATUS));
+
+            release.countDown();
+            Assert.assertEquals(AsyncPostExecutor.STATUS_FAILED, awaitStatus(running, "failed"));
+            Assert.assertEquals(500L, jobs.get(running).get(AsyncPostExecutor.PN_STATUS_CODE));
+            Assert.assertEquals("failed", jobs.get(running).get(AsyncPostExecutor.PN_ERROR));
+        } finally {
+            executor.shutdown(AsyncPostExecutor.SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final JakartaPostOperation operation = Mockito.mock(JakartaPostOperation.class);
+        Mockito.doAnswer(invocation -> {
+                    started.countDown();
+                    // ignore the interrupt, like an operation blocked in the repository
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (final InterruptedException ie) {
+                            // keep waiting
+                        }
+                    }
+                    return null;
+                })
+                .when(operation)
+                .run(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        final AsyncPostExecutor executor = new AsyncPostExecutor(JOB_ROOT, 1, 1, 0);
+        final String running =
+                executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        final String queued =
+                executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]);
+
+        executor.shutdown(100);
+        for (final String jobPath : new String[] {running, queued}) {
+            Assert.assertEquals(
+                    AsyncPostExecutor.STATUS_FAILED, jobs.get(jobPath).get(AsyncPostExecutor.PN_STATUS));
+            Assert.assertEquals(503L, jobs.get(jobPath).get(AsyncPostExecutor.PN_STATUS_CODE));
+        }
+        Assert.assertNull(
+                executor.submit(factory, createRequest(), "modify", operation, new SlingJakartaPostProcessor[0]));
+
+        // the aborted job keeps its status when the operation finishes after all
+        release.countDown();
+        Thread.sleep(200);
+        Assert.assertEquals(AsyncPostExecutor.STATUS_FAILED, jobs.get(running).get(AsyncPostExecutor.PN_STATUS));
+        Mockito.verify(operation).run(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    private void addJob(final String name, final String status, final long createdAgo, final Long finishedAgo) {
+        final Map<String, Object> job = new HashMap<>();
+        job.put(AsyncPostExecutor.PN_STATUS, status);
+        final Calendar created = Calendar.getInstance();
+        created.setTimeInMillis(System.currentTimeMillis() - createdAgo);
+        job.put(AsyncPostExecutor.PN_CREATED, created);
+        if (finishedAgo != null) {
+            final Calendar finished = Calendar.getInstance();
+            finished.setTimeInMillis(System.currentTimeMillis() - finishedAgo);
+            job.put(AsyncPostExecutor.PN_FINISHED, finished);
+        }
+        jobs.put(JOB_ROOT + "/" + name, job);
+    }
+
+    @Test
+    public void testRemoveExpiredJobs() throws Exception {
+        addJob("expired", AsyncPostExecutor.STATUS_SUCCEEDED, 120_000, 90_000L);
+        addJob("recent", AsyncPostExecutor.STATUS_FAILED, 120_000, 30_000L);
+        addJob("abandoned", AsyncPostExecutor.STATUS_RUNNING, 120_000, null);
+        addJob("running", AsyncPostExecutor.STATUS_RUNNING, 30_000, null);
+
+        final AsyncPostExecutor executor = new AsyncPostExecutor(JOB_ROOT, 1, 1, 60_000);
+        try {
+            Assert.assertEquals(2, executor.removeExpiredJobs(factory));
+            Assert.assertEquals(
+                    new TreeSet<>(List.of(JOB_ROOT + "/recent", JOB_ROOT + "/running")), new TreeSet<>(jobs.keySet()));
+        } finally {
+            executor.shutdown(AsyncPostExecutor.SHUTDOWN_TIMEOUT);
+        }
+    }
+}
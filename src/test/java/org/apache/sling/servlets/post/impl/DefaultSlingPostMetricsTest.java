@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.helper.RequestMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultSlingPostMetricsTest {
+
+    @Test
+    public void testStatistics() {
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        metrics.onPhase("modify", SlingPostMetrics.PHASE_COMMIT, 10);
+        metrics.onPhase("modify", SlingPostMetrics.PHASE_COMMIT, 30);
+        metrics.onCount("modify", SlingPostMetrics.COUNT_CHANGES, 5);
+        metrics.onRequest("modify", 200, 100);
+
+        final Map<String, DefaultSlingPostMetrics.Statistics> stats = metrics.getStatistics();
+        Assert.assertEquals(2, stats.get("modify.commit").getCount());
+        Assert.assertEquals(40, stats.get("modify.commit").getTotal());
+        Assert.assertEquals(30, stats.get("modify.commit").getMax());
+        Assert.assertEquals(5, stats.get("modify.changes").getTotal());
+        Assert.assertEquals(1, stats.get("modify.requests").getCount());
+        Assert.assertEquals(1, stats.get("modify.status.200").getCount());
+
+        // durations below a millisecond are counted in the first bucket of the histogram
+        Assert.assertEquals(2, stats.get("modify.commit").getHistogram()[0]);
+        Assert.assertEquals(
+                DefaultSlingPostMetrics.Statistics.getHistogramBounds().length + 1,
+                stats.get("modify.commit").getHistogram().length);
+        Assert.assertNull(stats.get("modify.changes").getHistogram());
+    }
+
+    @Test
+    public void testRequestMetrics() {
+        final Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn("/content");
+        final SlingJakartaHttpServletRequest request =
+                Builders.newRequestBuilder(resource).buildJakartaRequest();
+        Assert.assertSame(RequestMetrics.NONE, RequestMetrics.get(request));
+        RequestMetrics.NONE.count(SlingPostMetrics.COUNT_CHANGES, 1);
+
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        new RequestMetrics(metrics, "copy").set(request);
+        final RequestMetrics requestMetrics = RequestMetrics.get(request);
+        requestMetrics.phase(SlingPostMetrics.PHASE_RUN, requestMetrics.start());
+        requestMetrics.count(SlingPostMetrics.COUNT_CHANGES, 3);
+
+        Assert.assertEquals(1, metrics.getStatistics().get("copy.run").getCount());
+        Assert.assertEquals(3, metrics.getStatistics().get("copy.changes").getTotal());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        metrics.onProcessor("modify", "org.example.Processor", 3_000_000);
+        metrics.onCount("modify", SlingPostMetrics.COUNT_CHANGES, 5);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.apache.sling.servlets.post:type=SlingPostMetrics,test=true");
+        server.registerMBean(metrics, name);
+        try {
+            final TabularData stats = (TabularData) server.getAttribute(name, "Statistics");
+            final CompositeData processor =
+                    (CompositeData) stats.get(new Object[] {"modify.processor.org.example.Processor"})
+                            .get("value");
+            Assert.assertEquals(1L, processor.get("count"));
+            // 3ms are counted in the bucket up to 5ms
+            Assert.assertEquals(1L, ((long[]) processor.get("histogram"))[2]);
+            final CompositeData changes =
+                    (CompositeData) stats.get(new Object[] {"modify.changes"}).get("value");
+            Assert.assertEquals(5L, changes.get("total"));
+            Assert.assertArrayEquals(DefaultSlingPostMetrics.Statistics.getHistogramBounds(), (long[])
+                    server.getAttribute(name, "HistogramBounds"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.request.builder.SlingJakartaHttpServletResponseResult;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaHtmlResponse;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponsePoolTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        final ResponsePool pool = new ResponsePool();
+        final AbstractJakartaPostResponse response = pool.acquire(true);
+        Assert.assertTrue(response instanceof JakartaJSONResponse);
+        response.setPath("/content");
+        response.setLocation("/content.html");
+        response.onCreated("/content");
+        response.setError(new Exception("failed"));
+
+        // a response in use is not handed out again
+        final AbstractJakartaPostResponse nested = pool.acquire(true);
+        Assert.assertNotSame(response, nested);
+        pool.release(nested);
+
+        pool.release(response);
+        Assert.assertSame(response, pool.acquire(true));
+        Assert.assertNull(response.getPath());
+        Assert.assertNull(response.getLocation());
+        Assert.assertNull(response.getError());
+
+        final SlingJakartaHttpServletResponseResult result =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        response.send(result, true);
+        Assert.assertEquals(200, result.getStatus());
+        Assert.assertFalse(result.getOutputAsString().contains("/content"));
+    }
+
+    @Test
+    public void testHtmlReset() throws Exception {
+        final ResponsePool pool = new ResponsePool();
+        final AbstractJakartaPostResponse response = pool.acquire(false);
+        Assert.assertTrue(response instanceof JakartaHtmlResponse);
+        response.setReferer("");
+        response.onModified("/content/title");
+        pool.release(response);
+
+        Assert.assertSame(response, pool.acquire(false));
+        response.setReferer("");
+        final SlingJakartaHttpServletResponseResult result =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        response.send(result, true);
+        Assert.assertTrue(result.getOutputAsString().contains("<div id=\"ChangeLog\">&lt;pre&gt;&lt;/pre&gt;</div>"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final ResponsePool pool = new ResponsePool();
+        final AbstractJakartaPostResponse response = pool.acquire(false);
+        pool.release(response);
+
+        // the responses of other threads are dropped as well
+        final AbstractJakartaPostResponse[] other = new AbstractJakartaPostResponse[1];
+        final Thread thread = new Thread(() -> {
+            other[0] = pool.acquire(true);
+            pool.release(other[0]);
+        });
+        thread.start();
+        thread.join();
+
+        pool.close();
+        final AbstractJakartaPostResponse afterClose = pool.acquire(false);
+        Assert.assertNotSame(response, afterClose);
+        pool.release(afterClose);
+        Assert.assertNotSame(afterClose, pool.acquire(false));
+
+        final AbstractJakartaPostResponse[] otherAfterClose = new AbstractJakartaPostResponse[1];
+        final Thread next = new Thread(() -> otherAfterClose[0] = pool.acquire(true));
+        next.start();
+        next.join();
+        Assert.assertNotNull(otherAfterClose[0]);
+        Assert.assertNotSame(other[0], otherAfterClose[0]);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServiceRegistryTest {
+
+    @Test
+    public void testRankingOrder() {
+        final List<String[]> published = new ArrayList<>();
+        final ServiceRegistry<String> registry = new ServiceRegistry<>(String[]::new, published::add);
+        Assert.assertEquals(0, registry.get().length);
+
+        registry.add("a", 0);
+        registry.add("b", 10);
+        registry.add("c", 0);
+        registry.add("d", -5);
+        // a service is added before the services with the same ranking
+        Assert.assertArrayEquals(new String[] {"b", "c", "a", "d"}, registry.get());
+        Assert.assertEquals(4, published.size());
+
+        // a snapshot is never changed by later modifications
+        final String[] snapshot = registry.get();
+        registry.remove("a"::equals);
+        Assert.assertArrayEquals(new String[] {"b", "c", "a", "d"}, snapshot);
+        Assert.assertArrayEquals(new String[] {"b", "c", "d"}, registry.get());
+
+        registry.add("e", 5);
+        Assert.assertArrayEquals(new String[] {"b", "e", "c", "d"}, registry.get());
+
+        // removing an unknown service does not publish a new snapshot
+        registry.remove("x"::equals);
+        Assert.assertEquals(6, published.size());
+    }
+}
@@ -19,7 +19,11 @@
 package org.apache.sling.servlets.post.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import org.apache.commons.httpclient.URIException;
@@ -27,6 +31,8 @@ import org.apache.commons.httpclient.util.URIUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.request.builder.SlingHttpServletRequestBuilder;
+import org.apache.sling.api.request.builder.SlingJakartaHttpServletResponseResult;
 import org.apache.sling.api.request.header.JakartaMediaRangeList;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
@@ -35,8 +41,12 @@ import org.apache.sling.servlets.post.JakartaHtmlResponse;
 import org.apache.sling.servlets.post.JakartaJSONResponse;
 import org.apache.sling.servlets.post.JakartaPostOperation;
 import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaPostResponseCreator;
 import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.VersioningConfiguration;
+import org.apache.sling.servlets.post.impl.helper.CborPostResponse;
 import org.apache.sling.servlets.post.impl.operations.DeleteOperation;
+import org.apache.sling.servlets.post.impl.operations.NopOperation;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 
@@ -178,6 +188,136 @@ public class SlingPostServletTest extends TestCase {
         assertTrue(result instanceof JakartaHtmlResponse);
     }
 
+    public void testResponseCreatorContentTypes() {
+        final JakartaPostResponse xmlResponse = new JakartaHtmlResponse();
+        final AtomicInteger calls = new AtomicInteger();
+        servlet.bindJakartaPostResponseCreator(
+                req -> {
+                    calls.incrementAndGet();
+                    return xmlResponse;
+                },
+                Collections.singletonMap(JakartaPostResponseCreator.PROP_CONTENT_TYPES, "application/xml"));
+
+        final SlingJakartaHttpServletRequest json = Builders.newRequestBuilder(fakeResource)
+                .withParameter(JakartaMediaRangeList.PARAM_ACCEPT, "application/json")
+                .buildJakartaRequest();
+        assertTrue(servlet.createPostResponse(json) instanceof JakartaJSONResponse);
+        assertEquals(0, calls.get());
+
+        final SlingJakartaHttpServletRequest xml = Builders.newRequestBuilder(fakeResource)
+                .withParameter(JakartaMediaRangeList.PARAM_ACCEPT, "application/xml, application/json;q=0.5")
+                .buildJakartaRequest();
+        assertSame(xmlResponse, servlet.createPostResponse(xml));
+        assertEquals(1, calls.get());
+
+        // no accept header accepts all types
+        assertSame(
+                xmlResponse,
+                servlet.createPostResponse(
+                        Builders.newRequestBuilder(fakeResource).buildJakartaRequest()));
+        assertEquals(2, calls.get());
+    }
+
+    public void testGetCborResponse() {
+        final SlingJakartaHttpServletRequest req = Builders.newRequestBuilder(fakeResource)
+                .withParameter(JakartaMediaRangeList.PARAM_ACCEPT, "application/cbor, application/json;q=0.5")
+                .buildJakartaRequest();
+        assertTrue(servlet.createPostResponse(req) instanceof CborPostResponse);
+
+        // wildcards do not select the compact response
+        final SlingJakartaHttpServletRequest any = Builders.newRequestBuilder(fakeResource)
+                .withParameter(JakartaMediaRangeList.PARAM_ACCEPT, "*/*")
+                .buildJakartaRequest();
+        assertTrue(servlet.createPostResponse(any) instanceof JakartaHtmlResponse);
+    }
+
+    public void testNopMinimalResponse() throws Exception {
+        servlet.bindJakartaPostOperation(
+                new NopOperation(),
+                Collections.singletonMap(JakartaPostOperation.PROP_OPERATION_NAME, SlingPostConstants.OPERATION_NOP));
+        final SlingJakartaHttpServletRequest req = Builders.newRequestBuilder(fakeResource)
+                .withRequestMethod("POST")
+                .withParameter(SlingPostConstants.RP_OPERATION, SlingPostConstants.OPERATION_NOP)
+                .withParameter(SlingPostConstants.RP_NOP_STATUS, "204")
+                .buildJakartaRequest();
+        assertTrue(servlet.isMinimalResponse(req));
+
+        final SlingJakartaHttpServletResponseResult resp =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        servlet.doPost(req, resp);
+        assertEquals(204, resp.getStatus());
+        assertEquals("", resp.getOutputAsString());
+
+        final SlingJakartaHttpServletRequest accepted = Builders.newRequestBuilder(fakeResource)
+                .withRequestMethod("POST")
+                .withParameter(SlingPostConstants.RP_OPERATION, SlingPostConstants.OPERATION_NOP)
+                .withParameter(SlingPostConstants.RP_NOP_STATUS, "202")
+                .buildJakartaRequest();
+        final SlingJakartaHttpServletResponseResult acceptedResp =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        servlet.doPost(accepted, acceptedResp);
+        assertEquals(202, acceptedResp.getStatus());
+        assertEquals("text/html", acceptedResp.getContentType().split(";")[0]);
+        assertTrue(acceptedResp.getOutputAsString().contains("<div id=\"Status\">202</div>"));
+
+        // content negotiation and redirects require the post response
+        final SlingJakartaHttpServletRequest redirect = Builders.newRequestBuilder(fakeResource)
+                .withParameter(SlingPostConstants.RP_REDIRECT_TO, "/")
+                .buildJakartaRequest();
+        assertFalse(servlet.isMinimalResponse(redirect));
+        final SlingJakartaHttpServletRequest json = new SlingJakartaHttpServletRequestWrapper(req) {
+            @Override
+            public String getHeader(String name) {
+                return name.equals(JakartaMediaRangeList.HEADER_ACCEPT) ? "application/json" : super.getHeader(name);
+            }
+        };
+        assertFalse(servlet.isMinimalResponse(json));
+    }
+
+    public void testMetricsOperationName() throws Exception {
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        servlet.bindSlingPostMetrics(metrics);
+        servlet.bindJakartaPostOperation(
+                new NopOperation(),
+                Collections.singletonMap(JakartaPostOperation.PROP_OPERATION_NAME, SlingPostConstants.OPERATION_NOP));
+        for (final String operation : new String[] {SlingPostConstants.OPERATION_NOP, "random1", "random2"}) {
+            final SlingJakartaHttpServletRequest req = Builders.newRequestBuilder(fakeResource)
+                    .withRequestMethod("POST")
+                    .withParameter(SlingPostConstants.RP_OPERATION, operation)
+                    .buildJakartaRequest();
+            servlet.doPost(req, Builders.newResponseBuilder().buildJakartaResponseResult());
+        }
+
+        // names of operations which are not registered are reported in a single bucket
+        assertEquals(1, metrics.getStatistics().get("nop.requests").getCount());
+        assertEquals(2, metrics.getStatistics().get("unknown.requests").getCount());
+        for (final String name : metrics.getStatistics().keySet()) {
+            assertFalse(name, name.startsWith("random"));
+        }
+    }
+
+    public void testVersioningConfigurationIsShared() throws Exception {
+        final List<Object> configurations = new ArrayList<>();
+        final JakartaPostOperation operation = (request, response, processors) ->
+                configurations.add(request.getAttribute(VersioningConfiguration.class.getName()));
+        servlet.bindJakartaPostOperation(
+                operation, Collections.singletonMap(JakartaPostOperation.PROP_OPERATION_NAME, "versioning"));
+        for (final String autoCheckout : new String[] {"true", "true", null}) {
+            final SlingHttpServletRequestBuilder builder = Builders.newRequestBuilder(fakeResource)
+                    .withRequestMethod("POST")
+                    .withParameter(SlingPostConstants.RP_OPERATION, "versioning");
+            if (autoCheckout != null) {
+                builder.withParameter(":autoCheckout", autoCheckout);
+            }
+            servlet.doPost(
+                    builder.buildJakartaRequest(), Builders.newResponseBuilder().buildJakartaResponseResult());
+        }
+        assertEquals(3, configurations.size());
+        assertSame(VersioningConfiguration.valueOf(false, true, true), configurations.get(0));
+        assertSame(configurations.get(0), configurations.get(1));
+        assertSame(VersioningConfiguration.valueOf(false, false, true), configurations.get(2));
+    }
+
     public void testRedirection() throws Exception {
         String utf8Path = "\u0414\u0440\u0443\u0433\u0430";
         String encodedUtf8 = "%D0%94%D1%80%D1%83%D0%B3%D0%B0";
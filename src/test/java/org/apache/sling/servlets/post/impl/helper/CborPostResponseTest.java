@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.request.builder.SlingJakartaHttpServletResponseResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CborPostResponseTest {
+
+    @Test
+    public void testChangeCounts() throws Exception {
+        final CborPostResponse response = new CborPostResponse();
+        response.setPath("/a");
+        response.setCreateRequest(true);
+        for (int i = 0; i < 30; i++) {
+            response.onModified("/a/p" + i);
+        }
+        response.onCreated("/a");
+
+        final SlingJakartaHttpServletResponseResult result =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        response.send(result, true);
+        Assert.assertEquals(201, result.getStatus());
+        Assert.assertEquals(CborPostResponse.RESPONSE_CONTENT_TYPE, result.getContentType());
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(0xa4); // map with 4 entries
+        text(expected, "status");
+        expected.write(new byte[] {0x18, (byte) 201});
+        text(expected, "path");
+        text(expected, "/a");
+        text(expected, "created");
+        expected.write(0xf5);
+        text(expected, "changes");
+        expected.write(0xa2); // map with 2 entries
+        text(expected, "modified");
+        expected.write(new byte[] {0x18, 30});
+        text(expected, "created");
+        expected.write(0x01);
+        Assert.assertArrayEquals(expected.toByteArray(), result.getOutput());
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        final CborPostResponse response = new CborPostResponse();
+        response.onModified("/a/p0");
+        response.onModified("/a/p99");
+        response.onChange("summary", "modified:100", "created:1", "omitted:80");
+
+        final SlingJakartaHttpServletResponseResult result =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        response.send(result, true);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        text(expected, "changes");
+        expected.write(0xa2); // map with 2 entries
+        text(expected, "modified");
+        expected.write(new byte[] {0x18, 100});
+        text(expected, "created");
+        expected.write(0x01);
+        final String output = new String(result.getOutput(), StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(output.endsWith(new String(expected.toByteArray(), StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void testError() throws Exception {
+        final CborPostResponse response = new CborPostResponse();
+        response.onModified("/a/p");
+        response.setError(new Exception("failed"));
+
+        final SlingJakartaHttpServletResponseResult result =
+                Builders.newResponseBuilder().buildJakartaResponseResult();
+        response.send(result, true);
+        Assert.assertEquals(500, result.getStatus());
+        final byte[] output = result.getOutput();
+        Assert.assertEquals((byte) 0xa4, output[0]);
+        Assert.assertTrue(new String(output, StandardCharsets.UTF_8).endsWith("error" + (char) 0x66 + "failed"));
+    }
+
+    private static void text(final ByteArrayOutputStream out, final String value) {
+        out.write(0x60 + value.length());
+        out.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.testing.mock.osgi.junit.OsgiContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class ChunkCleanUpTaskTest {
+
+    @Rule
+    public final OsgiContext context = new OsgiContext();
+
+    private final Map<String, List<Resource>> uploads = new HashMap<>();
+
+    private ResourceResolverFactory factory;
+
+    private ResourceResolver resolver;
+
+    /** Delay of the query results in millisec, to exceed the maximum duration. */
+    private long delay;
+
+    /** Number of partitions currently iterating their query results. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setup() throws Exception {
+        resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.hasChanges()).thenReturn(true);
+        Mockito.when(resolver.findResources(ArgumentMatchers.anyString(), ArgumentMatchers.anyString()))
+                .thenAnswer(invocation -> {
+                    final String query = invocation.getArgument(0);
+                    threads.add(Thread.currentThread().getName());
+                    for (final Map.Entry<String, List<Resource>> entry : uploads.entrySet()) {
+                        if (query.contains("ISDESCENDANTNODE(c, '" + entry.getKey() + "')")) {
+                            return delayed(entry.getValue().iterator());
+                        }
+                    }
+                    return Collections.emptyIterator();
+                });
+        final Resource root = Mockito.mock(Resource.class);
+        Mockito.when(root.getChildren()).thenAnswer(invocation -> {
+            final List<Resource> children = new ArrayList<>();
+            for (final String path : uploads.keySet()) {
+                final Resource child = Mockito.mock(Resource.class);
+                Mockito.when(child.getPath()).thenReturn(path);
+                children.add(child);
+            }
+            return children;
+        });
+        Mockito.when(resolver.getResource("/")).thenReturn(root);
+
+        factory = Mockito.mock(ResourceResolverFactory.class);
+        Mockito.when(factory.getServiceResourceResolver(ArgumentMatchers.anyMap()))
+                .thenReturn(resolver);
+        context.registerService(ResourceResolverFactory.class, factory);
+    }
+
+    private Iterator<Resource> delayed(final Iterator<Resource> iterator) {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        return new Iterator<Resource>() {
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                final boolean hasNext = iterator.hasNext();
+                if (!hasNext && !done) {
+                    done = true;
+                    active.decrementAndGet();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Resource next() {
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return iterator.next();
+            }
+        };
+    }
+
+    private void addUploads(final String root, final int count, final long length) {
+        final List<Resource> resources = uploads.computeIfAbsent(root, key -> new ArrayList<>());
+        for (int i = 0; i < count; i++) {
+            final Map<String, Object> props = new HashMap<>();
+            props.put(JcrConstants.JCR_MIXINTYPES, new String[] {SlingPostConstants.NT_SLING_CHUNK_MIXIN});
+            props.put(SlingPostConstants.NT_SLING_CHUNKS_LENGTH, length);
+            final Resource upload = Mockito.mock(Resource.class);
+            Mockito.when(upload.getPath()).thenReturn(root + "/upload" + i);
+            Mockito.when(upload.getValueMap()).thenReturn(new ModifiableValueMapDecorator(props));
+            Mockito.when(upload.adaptTo(ModifiableValueMap.class)).thenReturn(new ModifiableValueMapDecorator(props));
+            Mockito.when(upload.listChildren()).thenReturn(Collections.emptyIterator());
+            resources.add(upload);
+        }
+    }
+
+    private ChunkCleanUpTask activate(final Object... properties) {
+        return context.registerInjectActivateService(new ChunkCleanUpTask(), properties);
+    }
+
+    @Test
+    public void testCreateQuery() {
+        final Calendar threshold = Calendar.getInstance();
+        threshold.setTimeInMillis(0);
+        final String query = ChunkCleanUpTask.createQuery("/content/o'brien", threshold);
+        Assert.assertTrue(query.startsWith("SELECT * FROM [" + SlingPostConstants.NT_SLING_CHUNK_MIXIN + "]"));
+        Assert.assertTrue(query.contains("ISDESCENDANTNODE(c, '/content/o''brien')"));
+        Assert.assertTrue(query.contains("[" + JcrConstants.JCR_LASTMODIFIED + "] < CAST('1970-01-01T"));
+        Assert.assertTrue(query.endsWith("ORDER BY c.[" + JcrConstants.JCR_LASTMODIFIED + "]"));
+    }
+
+    @Test
+    public void testCreateQueryMatchesPartitionRoot() {
+        final String query = ChunkCleanUpTask.createQuery("/upload.bin", Calendar.getInstance());
+        // a chunk upload directly below the repository root is the root of its partition
+        Assert.assertTrue(query.contains("(ISDESCENDANTNODE(c, '/upload.bin') OR ISSAMENODE(c, '/upload.bin'))"));
+    }
+
+    @Test
+    public void testCommitPerBatch() throws Exception {
+        addUploads("/content", 5, 100);
+        final ChunkCleanUpTask task = activate("chunk.cleanup.batchSize", 2);
+
+        task.run();
+
+        // two full batches and the remaining upload
+        Mockito.verify(resolver, Mockito.times(3)).commit();
+        Assert.assertEquals(5, task.getChunkUploadsFound());
+        Assert.assertEquals(5, task.getChunkUploadsCleaned());
+        Assert.assertEquals(500, task.getBytesReclaimed());
+        for (final Resource upload : uploads.get("/content")) {
+            Assert.assertNull(upload.getValueMap().get(SlingPostConstants.NT_SLING_CHUNKS_LENGTH));
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsNotCounted() throws Exception {
+        addUploads("/content", 4, 100);
+        Mockito.doThrow(new PersistenceException("conflict"))
+                .doNothing()
+                .when(resolver)
+                .commit();
+        final ChunkCleanUpTask task = activate("chunk.cleanup.batchSize", 2);
+
+        task.run();
+
+        Mockito.verify(resolver).revert();
+        Assert.assertEquals(4, task.getChunkUploadsFound());
+        Assert.assertEquals(2, task.getChunkUploadsCleaned());
+        Assert.assertEquals(200, task.getBytesReclaimed());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        addUploads("/content", 10, 100);
+        delay = 400;
+        final ChunkCleanUpTask task = activate("chunk.cleanup.batchSize", 100, "chunk.cleanup.maxDuration", 1);
+
+        task.run();
+
+        // the run stops with the first upload after the deadline, the uploads removed until then are committed
+        Mockito.verify(resolver).commit();
+        Assert.assertTrue(task.getChunkUploadsFound() < 10);
+        Assert.assertEquals(task.getChunkUploadsFound(), task.getChunkUploadsCleaned());
+        Assert.assertTrue(task.getLastRunDuration() >= 1000);
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+        addUploads("/content", 3, 10);
+        addUploads("/var", 2, 10);
+        final ChunkCleanUpTask task = activate();
+
+        task.run();
+
+        Mockito.verify(resolver)
+                .findResources(ArgumentMatchers.contains("ISDESCENDANTNODE(c, '/content')"), ArgumentMatchers.any());
+        Mockito.verify(resolver)
+                .findResources(ArgumentMatchers.contains("ISDESCENDANTNODE(c, '/var')"), ArgumentMatchers.any());
+        // one resolver for the partition roots and one per partition
+        Mockito.verify(factory, Mockito.times(3)).getServiceResourceResolver(ArgumentMatchers.anyMap());
+        Mockito.verify(resolver, Mockito.times(3)).close();
+        Assert.assertEquals(5, task.getChunkUploadsCleaned());
+        Assert.assertEquals(50, task.getBytesReclaimed());
+    }
+
+    @Test
+    public void testParallelism() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            addUploads("/root" + i, 2, 10);
+        }
+        delay = 50;
+        final ChunkCleanUpTask task = activate("chunk.cleanup.parallelism", 2);
+
+        task.run();
+
+        Assert.assertEquals(12, task.getChunkUploadsCleaned());
+        Assert.assertEquals(2, maxActive.get());
+        Assert.assertEquals(2, threads.size());
+        for (final String thread : threads) {
+            Assert.assertTrue(thread, thread.startsWith("sling-post-chunk-cleanup-"));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testSubserviceNotMapped() throws Exception {
+        addUploads("/content", 3, 10);
+        Mockito.when(factory.getServiceResourceResolver(ArgumentMatchers.anyMap()))
+                .thenThrow(new LoginException("not mapped"));
+        final ChunkCleanUpTask task = activate();
+
+        task.run();
+
+        Mockito.verify(factory, Mockito.never()).getAdministrativeResourceResolver(ArgumentMatchers.any());
+        Mockito.verify(factory).getServiceResourceResolver(ArgumentMatchers.anyMap());
+        Mockito.verify(resolver, Mockito.never())
+                .findResources(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+        Assert.assertEquals(0, task.getChunkUploadsFound());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jakarta.servlet.ServletContext;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.servlets.post.MimeTypeResolver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultMimeTypeResolverTest {
+
+    @Test
+    public void testDeclaredType() {
+        final DefaultMimeTypeResolver resolver = new DefaultMimeTypeResolver(16, true);
+        final ServletContext ctx = mock(ServletContext.class);
+        Assert.assertEquals("text/plain", resolver.getMimeType(ctx, "text/plain; charset=UTF-8", "a.bin"));
+        verify(ctx, times(0)).getMimeType("a.bin");
+    }
+
+    @Test
+    public void testCachedExtension() {
+        final DefaultMimeTypeResolver resolver = new DefaultMimeTypeResolver(16, false);
+        final ServletContext ctx = mock(ServletContext.class);
+        when(ctx.getMimeType("a.png")).thenReturn("image/png");
+        Assert.assertEquals("image/png", resolver.getMimeType(ctx, "application/octet-stream", "a.png"));
+        Assert.assertEquals("image/png", resolver.getMimeType(ctx, null, "b.png"));
+        verify(ctx, times(1)).getMimeType("a.png");
+        verify(ctx, times(0)).getMimeType("b.png");
+
+        // the extension is cached with its case, as the servlet context may map it case sensitively
+        Assert.assertEquals(MimeTypeResolver.MT_APP_OCTET, resolver.getMimeType(ctx, null, "c.PNG"));
+        Assert.assertEquals("image/png", resolver.getMimeType(ctx, null, "d.png"));
+        verify(ctx, times(1)).getMimeType("c.PNG");
+        verify(ctx, times(0)).getMimeType("d.png");
+
+        // unknown extensions are cached as well
+        Assert.assertEquals(MimeTypeResolver.MT_APP_OCTET, resolver.getMimeType(ctx, null, "a.xyz"));
+        Assert.assertEquals(MimeTypeResolver.MT_APP_OCTET, resolver.getMimeType(ctx, null, "a.xyz"));
+        verify(ctx, times(1)).getMimeType("a.xyz");
+    }
+
+    @Test
+    public void testDetect() throws IOException {
+        final DefaultMimeTypeResolver resolver = new DefaultMimeTypeResolver(16, true);
+        final ServletContext ctx = mock(ServletContext.class);
+        Assert.assertNull(resolver.getMimeType(ctx, null, "upload"));
+
+        final byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R', 1, 2};
+        final InputStream in = new BufferedInputStream(new ByteArrayInputStream(png));
+        Assert.assertEquals("image/png", resolver.detectMimeType(in));
+        // the stream is reset to its beginning
+        Assert.assertArrayEquals(png, IOUtils.toByteArray(in));
+
+        Assert.assertEquals(
+                "application/pdf", resolver.detectMimeType(new ByteArrayInputStream("%PDF-1.7\n".getBytes("UTF-8"))));
+        Assert.assertEquals(
+                MimeTypeResolver.MT_APP_OCTET,
+                resolver.detectMimeType(new ByteArrayInputStream("plain".getBytes("UTF-8"))));
+        Assert.assertEquals(
+                MimeTypeResolver.MT_APP_OCTET, resolver.detectMimeType(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void testDetectDisabled() {
+        final DefaultMimeTypeResolver resolver = new DefaultMimeTypeResolver();
+        Assert.assertEquals(MimeTypeResolver.MT_APP_OCTET, resolver.getMimeType(null, null, "upload"));
+    }
+}
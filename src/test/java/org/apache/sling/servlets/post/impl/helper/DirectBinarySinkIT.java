@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Execute with maven-failsafe-plugin as this requires a slightly patched classpath
+ * to make the test runnable with Java 17+ which requires a newer Oak version than we are supporting with the actual bundle
+ */
+public class DirectBinarySinkIT {
+
+    private static final byte[] CONTENT = "some uploaded content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+    @Test
+    public void testDirectWrite() throws Exception {
+        final Resource resource = createFileContent();
+        final ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+
+        final DirectBinarySink sink = new DirectBinarySink(JCRSupport.INSTANCE, 0);
+        final InputStream in = new ByteArrayInputStream(CONTENT);
+        assertTrue(sink.write(resource, mvm, JcrConstants.JCR_DATA, in, CONTENT.length));
+        assertEquals(-1, in.read());
+
+        context.resourceResolver().commit();
+        assertContent(resource.getPath());
+    }
+
+    @Test
+    public void testBelowThreshold() throws Exception {
+        final Resource resource = createFileContent();
+        final ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+
+        final DirectBinarySink sink = new DirectBinarySink(JCRSupport.INSTANCE, CONTENT.length + 1);
+        assertFalse(
+                sink.write(resource, mvm, JcrConstants.JCR_DATA, new ByteArrayInputStream(CONTENT), CONTENT.length));
+
+        context.resourceResolver().commit();
+        assertContent(resource.getPath());
+    }
+
+    private Resource createFileContent() throws IOException {
+        final Resource file = context.resourceResolver()
+                .create(
+                        context.create().resource("/upload"),
+                        "test.txt",
+                        Collections.singletonMap(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE));
+        final Map<String, Object> props = new HashMap<>();
+        props.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE);
+        props.put(JcrConstants.JCR_DATA, new ByteArrayInputStream(new byte[0]));
+        return context.resourceResolver().create(file, JcrConstants.JCR_CONTENT, props);
+    }
+
+    private void assertContent(final String path) throws IOException {
+        final Resource resource = context.resourceResolver().getResource(path);
+        try (InputStream in = resource.getValueMap().get(JcrConstants.JCR_DATA, InputStream.class)) {
+            assertEquals(new String(CONTENT, StandardCharsets.UTF_8), IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+}
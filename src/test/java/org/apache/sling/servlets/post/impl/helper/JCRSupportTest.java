@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import javax.jcr.Node;
+import javax.jcr.security.AccessControlList;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
+
+import java.security.Principal;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.resource.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class JCRSupportTest {
+
+    private static final String PATH = "/var/sling/post/jobs/job";
+
+    @Test
+    public void testGrantRead() throws Exception {
+        final Principal principal = () -> "alice";
+        final Authorizable user = Mockito.mock(Authorizable.class);
+        Mockito.when(user.getPrincipal()).thenReturn(principal);
+        final UserManager userManager = Mockito.mock(UserManager.class);
+        Mockito.when(userManager.getAuthorizable("alice")).thenReturn(user);
+
+        final Privilege read = Mockito.mock(Privilege.class);
+        final AccessControlList acl = Mockito.mock(AccessControlList.class);
+        final AccessControlPolicyIterator policies = Mockito.mock(AccessControlPolicyIterator.class);
+        Mockito.when(policies.hasNext()).thenReturn(true, false);
+        Mockito.when(policies.nextAccessControlPolicy()).thenReturn(acl);
+        final AccessControlManager acm = Mockito.mock(AccessControlManager.class);
+        Mockito.when(acm.getApplicablePolicies(PATH)).thenReturn(policies);
+        Mockito.when(acm.privilegeFromName(Privilege.JCR_READ)).thenReturn(read);
+
+        final JackrabbitSession session = Mockito.mock(JackrabbitSession.class);
+        Mockito.when(session.getUserManager()).thenReturn(userManager);
+        Mockito.when(session.getAccessControlManager()).thenReturn(acm);
+        final Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getPath()).thenReturn(PATH);
+        Mockito.when(node.getSession()).thenReturn(session);
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.adaptTo(Node.class)).thenReturn(node);
+
+        Assert.assertTrue(JCRSupport.INSTANCE.grantRead(resource, "alice"));
+        Mockito.verify(acl).addAccessControlEntry(principal, new Privilege[] {read});
+        Mockito.verify(acm).setPolicy(PATH, acl);
+
+        // unknown users and resources without node get no access
+        Assert.assertFalse(JCRSupport.INSTANCE.grantRead(resource, "bob"));
+        Assert.assertFalse(JCRSupport.INSTANCE.grantRead(Mockito.mock(Resource.class), "alice"));
+        Mockito.verify(acm).setPolicy(ArgumentMatchers.anyString(), ArgumentMatchers.any());
+    }
+}
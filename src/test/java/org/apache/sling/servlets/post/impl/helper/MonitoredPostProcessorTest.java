@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.impl.DefaultSlingPostMetrics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MonitoredPostProcessorTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final SlingJakartaPostProcessor slowProcessor = (request, changes) -> {
+        calls.incrementAndGet();
+        Thread.sleep(20);
+    };
+
+    private SlingJakartaHttpServletRequest request;
+
+    @Before
+    public void setup() {
+        final Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn("/content");
+        request = Builders.newRequestBuilder(resource).buildJakartaRequest();
+    }
+
+    @Test
+    public void testSkipNonCritical() throws Exception {
+        final MonitoredPostProcessor processor = new MonitoredPostProcessor(slowProcessor, "slow", false);
+        processor.setBudget(5, 60000);
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        new RequestMetrics(metrics, "modify").set(request);
+
+        processor.process(request, new ArrayList<>());
+        processor.process(request, new ArrayList<>());
+        processor.process(request, new ArrayList<>());
+
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, processor.getOverruns());
+        Assert.assertEquals(2, processor.getSkips());
+        Assert.assertEquals(
+                1, metrics.getStatistics().get("modify.processor.slow").getCount());
+        Assert.assertEquals(
+                2, metrics.getStatistics().get("modify.skippedProcessors").getTotal());
+
+        // skipping ends with a new configuration
+        processor.setBudget(0, 0);
+        processor.process(request, new ArrayList<>());
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testNeverSkipCritical() throws Exception {
+        final MonitoredPostProcessor processor = new MonitoredPostProcessor(slowProcessor, "slow", true);
+        processor.setBudget(5, 60000);
+
+        processor.process(request, new ArrayList<>());
+        processor.process(request, new ArrayList<>());
+
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(2, processor.getOverruns());
+        Assert.assertEquals(0, processor.getSkips());
+    }
+}
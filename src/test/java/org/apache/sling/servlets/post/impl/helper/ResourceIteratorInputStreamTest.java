@@ -18,8 +18,11 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -75,4 +78,81 @@ public class ResourceIteratorInputStreamTest {
         }
         Assert.assertEquals(10, cycle);
     }
+
+    @Test
+    public void testBulkRead() throws IOException {
+        final List<CloseTrackingInputStream> streams = new ArrayList<>();
+        final ResourceIteratorInputStream in = new ResourceIteratorInputStream(
+                chunkResources(streams, "chunk1-", "chunk2-", "", "chunk3").iterator());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        Assert.assertEquals("chunk1-chunk2-chunk3", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        for (CloseTrackingInputStream stream : streams) {
+            Assert.assertTrue(stream.closed);
+        }
+        Assert.assertEquals(0, in.available());
+    }
+
+    @Test
+    public void testSkipAndTransferTo() throws IOException {
+        final List<CloseTrackingInputStream> streams = new ArrayList<>();
+        final ResourceIteratorInputStream in = new ResourceIteratorInputStream(
+                chunkResources(streams, "abc", "def", "ghi").iterator());
+        Assert.assertEquals(4, in.skip(4));
+        Assert.assertTrue(streams.get(0).closed);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(5, in.transferTo(out));
+        Assert.assertEquals("efghi", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals(-1, in.read());
+        Assert.assertEquals(0, in.skip(10));
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        final List<CloseTrackingInputStream> streams = new ArrayList<>();
+        final ResourceIteratorInputStream in = new ResourceIteratorInputStream(
+                chunkResources(streams, "abc", "def").iterator());
+        Assert.assertEquals('a', in.read());
+        in.close();
+        Assert.assertTrue(streams.get(0).closed);
+        // the second chunk has never been opened
+        Assert.assertEquals(1, streams.size());
+        Assert.assertEquals(-1, in.read());
+    }
+
+    private List<Resource> chunkResources(final List<CloseTrackingInputStream> streams, final String... chunks) {
+        final List<Resource> resources = new ArrayList<>();
+        for (final String chunk : chunks) {
+            resources.add(new MockResource(null, null, null) {
+                @Override
+                public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                    if (InputStream.class.equals(type)) {
+                        final CloseTrackingInputStream in =
+                                new CloseTrackingInputStream(chunk.getBytes(StandardCharsets.UTF_8));
+                        streams.add(in);
+                        return (AdapterType) in;
+                    }
+                    return super.adaptTo(type);
+                }
+            });
+        }
+        return resources;
+    }
+
+    private static class CloseTrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        CloseTrackingInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
 }
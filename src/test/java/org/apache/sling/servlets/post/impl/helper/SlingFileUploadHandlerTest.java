@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.apache.sling.servlets.post.SlingPostMetrics;
+import org.apache.sling.servlets.post.impl.DefaultSlingPostMetrics;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SlingFileUploadHandlerTest {
+
+    private static final byte[] CONTENT = "some uploaded content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final SlingContext context = new SlingContext();
+
+    @Test
+    public void testUploadMetrics() throws Exception {
+        final Resource parent = context.create().resource("/content/upload");
+        final RequestParameter file = Mockito.mock(RequestParameter.class);
+        Mockito.when(file.isFormField()).thenReturn(false);
+        Mockito.when(file.getSize()).thenReturn((long) CONTENT.length);
+        Mockito.when(file.getFileName()).thenReturn("test.txt");
+        Mockito.when(file.getContentType()).thenReturn("text/plain");
+        Mockito.when(file.getInputStream()).thenReturn(new ByteArrayInputStream(CONTENT));
+        final RequestProperty prop = new RequestProperty("/content/upload/test.txt");
+        prop.setValues(new RequestParameter[] {file});
+
+        final DefaultSlingPostMetrics metrics = new DefaultSlingPostMetrics();
+        new SlingFileUploadHandler()
+                .setFile(
+                        parent,
+                        prop,
+                        new ArrayList<>(),
+                        new RequestMetrics(metrics, SlingPostMetrics.OPERATION_MODIFY));
+
+        Assert.assertEquals(
+                1,
+                metrics.getStatistics()
+                        .get("modify." + SlingPostMetrics.PHASE_UPLOAD)
+                        .getCount());
+        Assert.assertEquals(
+                CONTENT.length,
+                metrics.getStatistics()
+                        .get("modify." + SlingPostMetrics.COUNT_UPLOAD_BYTES)
+                        .getTotal());
+        Assert.assertNotNull(context.resourceResolver().getResource("/content/upload/test.txt/jcr:content"));
+    }
+
+    @Test
+    public void testStreamClosedIfWriteFails() throws Exception {
+        final Resource parent = context.create().resource("/content/upload");
+        final boolean[] closed = new boolean[1];
+        final RequestParameter file = Mockito.mock(RequestParameter.class);
+        Mockito.when(file.isFormField()).thenReturn(false);
+        Mockito.when(file.getSize()).thenReturn((long) CONTENT.length);
+        Mockito.when(file.getFileName()).thenReturn("test.txt");
+        Mockito.when(file.getContentType()).thenReturn("text/plain");
+        Mockito.when(file.getInputStream()).thenReturn(new ByteArrayInputStream(CONTENT) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        });
+        final RequestProperty prop = new RequestProperty("/content/upload/test.txt");
+        prop.setValues(new RequestParameter[] {file});
+
+        final SlingFileUploadHandler handler = new SlingFileUploadHandler();
+        handler.setBinarySink((resource, properties, name, in, size) -> {
+            throw new IOException("failed");
+        });
+        try {
+            handler.setFile(parent, prop, new ArrayList<>(), RequestMetrics.NONE);
+            Assert.fail("the failure of the sink is reported");
+        } catch (final PersistenceException expected) {
+            Assert.assertTrue(closed[0]);
+        }
+    }
+
+    @Test
+    public void testDigestVerifiedBeforeCommit() throws Exception {
+        // a persistence reading the stream only on commit
+        final Map<String, Object> properties = new HashMap<>();
+        final Resource content = Mockito.mock(Resource.class);
+        Mockito.when(content.getPath()).thenReturn("/content/upload/test.txt/jcr:content");
+        Mockito.when(content.adaptTo(ModifiableValueMap.class)).thenReturn(new ModifiableValueMapDecorator(properties));
+        final Resource file = Mockito.mock(Resource.class);
+        Mockito.when(file.getChild(JcrConstants.JCR_CONTENT)).thenReturn(content);
+        final Resource parent = Mockito.mock(Resource.class);
+        Mockito.when(parent.getChild("test.txt")).thenReturn(file);
+
+        final RequestParameter value = Mockito.mock(RequestParameter.class);
+        Mockito.when(value.isFormField()).thenReturn(false);
+        Mockito.when(value.getSize()).thenReturn((long) CONTENT.length);
+        Mockito.when(value.getFileName()).thenReturn("test.txt");
+        Mockito.when(value.getContentType()).thenReturn("text/plain");
+        Mockito.when(value.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(CONTENT));
+        final RequestProperty prop = new RequestProperty("/content/upload/test.txt");
+        prop.setValues(new RequestParameter[] {value});
+        prop.setDigest("MD5="
+                + Base64.getEncoder()
+                        .encodeToString(MessageDigest.getInstance("MD5").digest(CONTENT)));
+
+        new SlingFileUploadHandler().setFile(parent, prop, new ArrayList<>(), RequestMetrics.NONE);
+
+        Assert.assertArrayEquals(
+                new String[] {
+                    "MD5:"
+                            + UploadDigester.toHex(
+                                    MessageDigest.getInstance("MD5").digest(CONTENT))
+                },
+                (String[]) properties.get(UploadDigester.PN_DIGESTS));
+        try (final InputStream data = (InputStream) properties.get(JcrConstants.JCR_DATA)) {
+            Assert.assertArrayEquals(CONTENT, IOUtils.toByteArray(data));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.exceptions.PreconditionViolatedPersistenceException;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Execute with maven-failsafe-plugin as this requires a slightly patched classpath
+ * to make the test runnable with Java 17+ which requires a newer Oak version than we are supporting with the actual bundle
+ */
+public class UploadDigesterIT {
+
+    private static final byte[] CONTENT = "some uploaded content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+    @Test
+    public void testStoreDigests() throws Exception {
+        final Resource resource = createFileContent();
+        final ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+        final UploadDigester digester = new UploadDigester(new String[] {"sha-256", "unknown"});
+
+        upload(digester, resource, mvm, null);
+        context.resourceResolver().commit();
+
+        assertArrayEquals(
+                new String[] {"SHA-256:" + UploadDigester.toHex(digest("SHA-256"))},
+                context.resourceResolver()
+                        .getResource(resource.getPath())
+                        .getValueMap()
+                        .get(UploadDigester.PN_DIGESTS, String[].class));
+    }
+
+    @Test
+    public void testVerifyContentMD5() throws Exception {
+        final Resource resource = createFileContent();
+        final ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+        final String contentMD5 = Base64.getEncoder().encodeToString(digest("MD5"));
+
+        upload(UploadDigester.NONE, resource, mvm, UploadDigester.fromContentMD5(contentMD5));
+        context.resourceResolver().commit();
+
+        assertArrayEquals(
+                new String[] {"MD5:" + UploadDigester.toHex(digest("MD5"))},
+                context.resourceResolver()
+                        .getResource(resource.getPath())
+                        .getValueMap()
+                        .get(UploadDigester.PN_DIGESTS, String[].class));
+    }
+
+    @Test(expected = PreconditionViolatedPersistenceException.class)
+    public void testRejectMismatch() throws Exception {
+        final Resource resource = createFileContent();
+        final ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+
+        upload(UploadDigester.NONE, resource, mvm, "SHA-256=" + UploadDigester.toHex(new byte[32]));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        assertNull(UploadDigester.NONE.wrap(new ByteArrayInputStream(CONTENT), null));
+    }
+
+    private void upload(
+            final UploadDigester digester, final Resource resource, final ModifiableValueMap mvm, final String expected)
+            throws Exception {
+        final List<Modification> changes = new ArrayList<>();
+        final DigestingInputStream in = digester.wrap(new ByteArrayInputStream(CONTENT), expected);
+        mvm.put(JcrConstants.JCR_DATA, in);
+        digester.apply(resource, mvm, in, expected, changes);
+    }
+
+    private static byte[] digest(final String algorithm) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(CONTENT);
+    }
+
+    private Resource createFileContent() throws IOException {
+        final Resource file = context.resourceResolver()
+                .create(
+                        context.create().resource("/upload"),
+                        "test.txt",
+                        Collections.singletonMap(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE));
+        final Map<String, Object> props = new HashMap<>();
+        props.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE);
+        props.put(JcrConstants.JCR_DATA, new ByteArrayInputStream(new byte[0]));
+        return context.resourceResolver().create(file, JcrConstants.JCR_CONTENT, props);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.VersioningConfiguration;
+import org.apache.sling.servlets.post.exceptions.TemporaryPersistenceException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AbstractPostOperationTest {
+
+    private ResourceResolver resolver;
+
+    private SlingJakartaHttpServletRequest request;
+
+    @Before
+    public void setup() {
+        resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.hasChanges()).thenReturn(true);
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn("/content/test");
+        Mockito.when(resource.getResourceResolver()).thenReturn(resolver);
+        request = Builders.newRequestBuilder(resource).buildJakartaRequest();
+    }
+
+    @Test
+    public void testRetryOnConflict() throws Exception {
+        Mockito.doThrow(new TemporaryPersistenceException("conflict", null))
+                .doNothing()
+                .when(resolver)
+                .commit();
+        final TestOperation operation = new TestOperation(true);
+        operation.setRetryPolicy(new RetryPolicy(2, 0));
+
+        final AtomicInteger reported = new AtomicInteger();
+        final JakartaJSONResponse response = new JakartaJSONResponse() {
+            @Override
+            public void onChange(final String type, final String... arguments) {
+                reported.incrementAndGet();
+            }
+        };
+        operation.run(request, response, new SlingJakartaPostProcessor[0]);
+
+        Assert.assertEquals(2, operation.runs.get());
+        Mockito.verify(resolver, Mockito.times(2)).commit();
+        Mockito.verify(resolver).refresh();
+        // changes of the failed attempt are not reported
+        Assert.assertEquals(1, reported.get());
+    }
+
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        Mockito.doThrow(new TemporaryPersistenceException("conflict", null))
+                .when(resolver)
+                .commit();
+        final TestOperation operation = new TestOperation(true);
+        operation.setRetryPolicy(new RetryPolicy(2, 1));
+
+        try {
+            operation.run(request, new JakartaJSONResponse(), new SlingJakartaPostProcessor[0]);
+            Assert.fail("Expected conflict");
+        } catch (final TemporaryPersistenceException expected) {
+            // expected
+        }
+        Assert.assertEquals(3, operation.runs.get());
+    }
+
+    @Test
+    public void testNoRetryIfNotReplayable() throws Exception {
+        Mockito.doThrow(new TemporaryPersistenceException("conflict", null))
+                .doNothing()
+                .when(resolver)
+                .commit();
+        final TestOperation operation = new TestOperation(false);
+        operation.setRetryPolicy(new RetryPolicy(2, 0));
+
+        try {
+            operation.run(request, new JakartaJSONResponse(), new SlingJakartaPostProcessor[0]);
+            Assert.fail("Expected conflict");
+        } catch (final TemporaryPersistenceException expected) {
+            // expected
+        }
+        Assert.assertEquals(1, operation.runs.get());
+    }
+
+    @Test
+    public void testNoRetryOnOtherFailure() throws Exception {
+        Mockito.doThrow(new PersistenceException("failed"))
+                .doNothing()
+                .when(resolver)
+                .commit();
+        final TestOperation operation = new TestOperation(true);
+        operation.setRetryPolicy(new RetryPolicy(2, 0));
+
+        try {
+            operation.run(request, new JakartaJSONResponse(), new SlingJakartaPostProcessor[0]);
+            Assert.fail("Expected failure");
+        } catch (final PersistenceException expected) {
+            // expected
+        }
+        Assert.assertEquals(1, operation.runs.get());
+    }
+
+    @Test
+    public void testReplayAfterConcurrentCreate() throws Exception {
+        Mockito.doThrow(new TemporaryPersistenceException("conflict", null))
+                .doNothing()
+                .when(resolver)
+                .commit();
+        // the resource is created by a concurrent request between the attempts
+        Mockito.when(resolver.getResource("/content/test")).thenReturn(null).thenReturn(Mockito.mock(Resource.class));
+        final AbstractPostOperation operation = new AbstractPostOperation() {
+            @Override
+            protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+                return true;
+            }
+
+            @Override
+            protected void doRun(
+                    final SlingJakartaHttpServletRequest request,
+                    final JakartaPostResponse response,
+                    final List<Modification> changes) {
+                if (request.getResourceResolver().getResource("/content/test") == null) {
+                    response.setCreateRequest(true);
+                    changes.add(Modification.onCreated("/content/test"));
+                    ((JakartaJSONResponse) response).setProperty(ModifyOperation.PN_CHECKPOINT, "/content/test");
+                }
+                changes.add(Modification.onModified("/content/test/title"));
+            }
+        };
+        operation.setRetryPolicy(new RetryPolicy(2, 0));
+
+        final JakartaJSONResponse response = new JakartaJSONResponse();
+        operation.run(request, response, new SlingJakartaPostProcessor[0]);
+
+        Mockito.verify(resolver, Mockito.times(2)).commit();
+        Assert.assertFalse(response.isCreateRequest());
+        Assert.assertEquals("/content/test", response.getPath());
+        Assert.assertNull(response.getProperty(ModifyOperation.PN_CHECKPOINT));
+        Assert.assertEquals(200, response.getStatusCode());
+    }
+
+    @Test
+    public void testModifiableVersioningConfiguration() {
+        final VersioningConfiguration shared = VersioningConfiguration.valueOf(false, true, true);
+        request.setAttribute(VersioningConfiguration.class.getName(), shared);
+        final TestOperation operation = new TestOperation(true);
+
+        Assert.assertSame(shared, operation.getVersioningConfiguration(request));
+        final VersioningConfiguration cfg = operation.getModifiableVersioningConfiguration(request);
+        Assert.assertNotSame(shared, cfg);
+        Assert.assertTrue(cfg.isAutoCheckout());
+        cfg.setAutoCheckin(false);
+
+        // the copy replaces the shared configuration of the request
+        Assert.assertSame(cfg, operation.getVersioningConfiguration(request));
+        Assert.assertSame(cfg, operation.getModifiableVersioningConfiguration(request));
+        Assert.assertTrue(shared.isAutoCheckin());
+    }
+
+    @Test
+    public void testBackoff() {
+        final RetryPolicy policy = new RetryPolicy(3, 100);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(policy.getBackoff(1) <= 100);
+            Assert.assertTrue(policy.getBackoff(3) <= 400);
+        }
+        Assert.assertEquals(0, new RetryPolicy(3, 0).getBackoff(2));
+    }
+
+    private static final class TestOperation extends AbstractPostOperation {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        private final boolean replayable;
+
+        TestOperation(final boolean replayable) {
+            this.replayable = replayable;
+        }
+
+        @Override
+        protected boolean isReplayable(final SlingJakartaHttpServletRequest request) {
+            return replayable;
+        }
+
+        @Override
+        protected void doRun(
+                final SlingJakartaHttpServletRequest request,
+                final JakartaPostResponse response,
+                final List<Modification> changes) {
+            runs.incrementAndGet();
+            changes.add(Modification.onModified("/content/test/title"));
+        }
+    }
+}
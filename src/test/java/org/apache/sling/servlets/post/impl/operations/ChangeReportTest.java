@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ChangeReportTest {
+
+    @Test
+    public void testFull() {
+        final RecordingResponse response = new RecordingResponse();
+        final ChangeReport report = new ChangeReport(request(null), response);
+        for (int i = 0; i < 30; i++) {
+            report.report(Modification.onModified("/a/p" + i));
+        }
+        report.report(Modification.onMoved("/a/b", "/a/c"));
+        report.finish();
+
+        Assert.assertEquals(31, response.changes.size());
+        Assert.assertEquals("moved /a/b /a/c", response.changes.get(30));
+    }
+
+    @Test
+    public void testSummary() {
+        final RecordingResponse response = new RecordingResponse();
+        final ChangeReport report = new ChangeReport(request(SlingPostConstants.CHANGES_VALUE_SUMMARY), response);
+        report.report(Modification.onCreated("/a"));
+        for (int i = 0; i < 30; i++) {
+            report.report(Modification.onModified("/a/p" + i));
+        }
+        report.report("checkin", "/a");
+        report.finish();
+
+        // first and last changes followed by the summary
+        Assert.assertEquals(2 * ChangeReport.SUMMARY_CHANGES + 1, response.changes.size());
+        Assert.assertEquals("created /a", response.changes.get(0));
+        Assert.assertEquals("modified /a/p8", response.changes.get(9));
+        Assert.assertEquals("modified /a/p21", response.changes.get(10));
+        Assert.assertEquals("checkin /a", response.changes.get(19));
+        Assert.assertEquals("summary created:1 modified:30 checkin:1 omitted:12", response.changes.get(20));
+    }
+
+    @Test
+    public void testSummaryUsesTypedCallbacks() {
+        final List<String> typed = new ArrayList<>();
+        final RecordingResponse response = new RecordingResponse() {
+            @Override
+            public void onModified(final String path) {
+                typed.add(path);
+            }
+
+            @Override
+            public void onMoved(final String srcPath, final String dstPath) {
+                typed.add(srcPath + ">" + dstPath);
+            }
+        };
+        final ChangeReport report = new ChangeReport(request(SlingPostConstants.CHANGES_VALUE_SUMMARY), response);
+        for (int i = 0; i < 30; i++) {
+            report.report(Modification.onModified("/a/p" + i));
+        }
+        report.report(Modification.onMoved("/a/b", "/a/c"));
+        report.finish();
+
+        Assert.assertEquals(2 * ChangeReport.SUMMARY_CHANGES, typed.size());
+        Assert.assertEquals("/a/p0", typed.get(0));
+        Assert.assertEquals("/a/b>/a/c", typed.get(typed.size() - 1));
+        Assert.assertEquals(Collections.singletonList("summary modified:30 moved:1 omitted:11"), response.changes);
+    }
+
+    @Test
+    public void testSummaryOfFewChanges() {
+        final RecordingResponse response = new RecordingResponse();
+        final ChangeReport report = new ChangeReport(request(SlingPostConstants.CHANGES_VALUE_SUMMARY), response);
+        report.report(Modification.onModified("/a/p"));
+        report.finish();
+
+        Assert.assertEquals(2, response.changes.size());
+        Assert.assertEquals("summary modified:1", response.changes.get(1));
+    }
+
+    @Test
+    public void testNone() {
+        final RecordingResponse response = new RecordingResponse();
+        final ChangeReport report = new ChangeReport(request(SlingPostConstants.CHANGES_VALUE_NONE), response);
+        report.report(Modification.onDeleted("/a"));
+        report.report("checkin", "/b");
+        report.finish();
+
+        Assert.assertTrue(response.changes.isEmpty());
+    }
+
+    private static SlingJakartaHttpServletRequest request(final String changes) {
+        final Resource resource = Mockito.mock(Resource.class);
+        if (changes == null) {
+            return Builders.newRequestBuilder(resource).buildJakartaRequest();
+        }
+        return Builders.newRequestBuilder(resource)
+                .withParameter(SlingPostConstants.RP_CHANGES, changes)
+                .buildJakartaRequest();
+    }
+
+    private static class RecordingResponse extends AbstractJakartaPostResponse {
+
+        final List<String> changes = new ArrayList<>();
+
+        @Override
+        public void onChange(final String type, final String... arguments) {
+            changes.add(type + " " + String.join(" ", arguments));
+        }
+
+        @Override
+        protected void doSend(final HttpServletResponse response) {
+            // nothing to send
+        }
+    }
+}
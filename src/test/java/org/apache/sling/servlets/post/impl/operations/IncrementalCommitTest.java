@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
+import org.apache.sling.servlets.post.Modification;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class IncrementalCommitTest {
+
+    @Test
+    public void testGetInterval() {
+        Assert.assertEquals(0, IncrementalCommit.getInterval(null, 1000));
+        Assert.assertEquals(0, IncrementalCommit.getInterval("100", 0));
+        Assert.assertEquals(0, IncrementalCommit.getInterval("-1", 1000));
+        Assert.assertEquals(0, IncrementalCommit.getInterval("many", 1000));
+        Assert.assertEquals(100, IncrementalCommit.getInterval("100", 1000));
+        Assert.assertEquals(1000, IncrementalCommit.getInterval("100000", 1000));
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.hasChanges()).thenReturn(true);
+        final List<Modification> changes = new ArrayList<>();
+        final IncrementalCommit commit = new IncrementalCommit(resolver, changes, 10);
+
+        for (int i = 0; i < 25; i++) {
+            changes.add(Modification.onModified("/a/p" + i));
+            commit.checkpoint();
+        }
+        Mockito.verify(resolver, Mockito.times(2)).commit();
+        Assert.assertEquals(2, commit.getCommits());
+        Assert.assertEquals("/a/p19", commit.getCheckpoint().getSource());
+
+        final SlingJakartaHttpServletRequest request =
+                Builders.newRequestBuilder(Mockito.mock(Resource.class)).buildJakartaRequest();
+        final JakartaJSONResponse response = new JakartaJSONResponse();
+        commit.report(request, response);
+        Assert.assertEquals(2, response.getProperty(ModifyOperation.PN_COMMITS));
+        Assert.assertEquals("/a/p19", response.getProperty(ModifyOperation.PN_CHECKPOINT));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.hasChanges()).thenReturn(true);
+        final List<Modification> changes = new ArrayList<>();
+        final IncrementalCommit commit = new IncrementalCommit(resolver, changes, 0);
+
+        for (int i = 0; i < 25; i++) {
+            changes.add(Modification.onModified("/a/p" + i));
+            commit.checkpoint();
+        }
+        Mockito.verify(resolver, Mockito.never()).commit();
+        Assert.assertNull(commit.getCheckpoint());
+    }
+}
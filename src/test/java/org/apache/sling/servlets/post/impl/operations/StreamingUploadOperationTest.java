@@ -21,10 +21,13 @@ package org.apache.sling.servlets.post.impl.operations;
 import javax.jcr.RepositoryException;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +37,7 @@ import java.util.Map;
 
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Part;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.request.builder.Builders;
@@ -45,8 +49,10 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.commons.testing.sling.MockResourceResolver;
 import org.apache.sling.servlets.post.AbstractJakartaPostResponse;
+import org.apache.sling.servlets.post.JakartaJSONResponse;
 import org.apache.sling.servlets.post.JakartaPostResponse;
 import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.ModificationType;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -122,6 +128,11 @@ public class StreamingUploadOperationTest {
         final Iterator<Part> partsIterator = partsList.iterator();
         final Map<String, Resource> repository = new HashMap<>();
         final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
             @Override
             public Resource getResource(String path) {
 
@@ -306,6 +317,11 @@ public class StreamingUploadOperationTest {
         final Iterator<Part> partsIterator = partsList.iterator();
         final Map<String, Resource> repository = new HashMap<>();
         final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
             @Override
             public Resource getResource(String path) {
 
@@ -510,6 +526,11 @@ public class StreamingUploadOperationTest {
         final Iterator<Part> partsIterator = partsList.iterator();
         final Map<String, Resource> repository = new HashMap<>();
         final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
             @Override
             public Resource getResource(String path) {
 
@@ -651,6 +672,496 @@ public class StreamingUploadOperationTest {
         }
     }
 
+    @Test
+    public void testGroupedCommits() throws PersistenceException, UnsupportedEncodingException {
+        List<Modification> changes = new ArrayList<>();
+        JakartaJSONResponse response = new JakartaJSONResponse();
+        response.setPath("/test/upload/location");
+
+        List<Part> partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "a.txt",
+                "text/plain",
+                "a.txt",
+                1,
+                new ByteArrayInputStream("a".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "b.txt",
+                "text/plain",
+                "b.txt",
+                1,
+                new ByteArrayInputStream("b".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "large.txt",
+                "text/plain",
+                "large.txt",
+                5,
+                new ByteArrayInputStream("large".getBytes("UTF-8")),
+                mapOf("Content-Length", "5")));
+        partsList.add(new MockPart(
+                "c.txt",
+                "text/plain",
+                "c.txt",
+                1,
+                new ByteArrayInputStream("c".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        final Iterator<Part> partsIterator = partsList.iterator();
+        final Map<String, Resource> repository = new HashMap<>();
+        final List<String> commits = new ArrayList<>();
+        final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
+            @Override
+            public Resource getResource(String path) {
+                Resource resource = repository.get(path);
+                if (resource == null && "/test/upload/location".equals(path)) {
+                    resource = new MockRealResource(this, path, "sling:Folder");
+                    repository.put(path, resource);
+                }
+                return resource;
+            }
+
+            @Override
+            public Resource create(Resource resource, String s, Map<String, Object> map) throws PersistenceException {
+                Resource newResource = new MockRealResource(
+                        this, resource.getPath() + "/" + s, (String) map.get("jcr:primaryType"), map);
+                repository.put(newResource.getPath(), newResource);
+                return newResource;
+            }
+
+            @Override
+            public void commit() throws PersistenceException {
+                for (Resource r : repository.values()) {
+                    ModifiableValueMap vm = r.adaptTo(ModifiableValueMap.class);
+                    for (Map.Entry<String, Object> me : vm.entrySet()) {
+                        if (me.getValue() instanceof InputStream) {
+                            try {
+                                vm.put(me.getKey(), IOUtils.toString((InputStream) me.getValue(), "UTF-8"));
+                                commits.add(r.getParent().getName());
+                            } catch (IOException e) {
+                                throw new PersistenceException("Failed to commit input stream", e);
+                            }
+                        }
+                    }
+                }
+                commits.add("commit");
+            }
+        };
+
+        SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(
+                        resourceResolver.getResource("/test/upload/location"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsIterator);
+        streamedUplodOperation.setCommitPolicy(4, 2, 1024);
+        streamedUplodOperation.doRun(request, response, changes);
+
+        Assert.assertEquals(
+                Arrays.asList("a.txt", "b.txt", "commit", "large.txt", "commit", "c.txt", "commit"), commits);
+        Assert.assertEquals(3, ((Number) response.getProperty(StreamedUploadOperation.PN_COMMITS)).intValue());
+        Assert.assertEquals(
+                "large",
+                repository
+                        .get("/test/upload/location/large.txt/jcr:content")
+                        .getValueMap()
+                        .get("jcr:data"));
+    }
+
+    @Test
+    public void testFormFields() throws PersistenceException, UnsupportedEncodingException {
+        List<Modification> changes = new ArrayList<>();
+        JakartaJSONResponse response = new JakartaJSONResponse();
+        response.setPath("/test/upload/location/*");
+
+        List<Part> partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                ":nameHint", null, null, 0, new ByteArrayInputStream("doc".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./title", null, null, 0, new ByteArrayInputStream("Hello".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./removed@Delete",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "*",
+                "text/plain",
+                "data.txt",
+                4,
+                new ByteArrayInputStream("test".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./after",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("trailing".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        final Iterator<Part> partsIterator = partsList.iterator();
+        final Map<String, Resource> repository = new HashMap<>();
+        final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
+            @Override
+            public Resource getResource(String path) {
+                Resource resource = repository.get(path);
+                if (resource == null && "/test/upload/location".equals(path)) {
+                    resource = new MockRealResource(this, path, "sling:Folder");
+                    repository.put(path, resource);
+                }
+                return resource;
+            }
+
+            @Override
+            public Resource create(Resource resource, String s, Map<String, Object> map) throws PersistenceException {
+                Resource newResource = new MockRealResource(
+                        this, resource.getPath() + "/" + s, (String) map.get("jcr:primaryType"), map);
+                repository.put(newResource.getPath(), newResource);
+                return newResource;
+            }
+
+            @Override
+            public void commit() throws PersistenceException {
+                for (Resource r : repository.values()) {
+                    ModifiableValueMap vm = r.adaptTo(ModifiableValueMap.class);
+                    for (Map.Entry<String, Object> me : vm.entrySet()) {
+                        if (me.getValue() instanceof InputStream) {
+                            try {
+                                vm.put(me.getKey(), IOUtils.toString((InputStream) me.getValue(), "UTF-8"));
+                            } catch (IOException e) {
+                                throw new PersistenceException("Failed to commit input stream", e);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+
+        SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(
+                        resourceResolver.getResource("/test/upload/location"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsIterator);
+        streamedUplodOperation.doRun(request, response, changes);
+
+        Assert.assertEquals("/test/upload/location/doc", response.getPath());
+        Assert.assertTrue(response.isCreateRequest());
+        ValueMap m = repository.get("/test/upload/location/doc").getValueMap();
+        Assert.assertEquals("Hello", m.get("title"));
+        Assert.assertEquals("trailing", m.get("after"));
+        Assert.assertFalse(m.containsKey("removed@Delete"));
+        Assert.assertEquals(
+                "test",
+                repository
+                        .get("/test/upload/location/doc/data.txt/jcr:content")
+                        .getValueMap()
+                        .get("jcr:data"));
+    }
+
+    @Test
+    public void testFormFieldLimits() throws PersistenceException, UnsupportedEncodingException {
+        final Map<String, Resource> repository = new HashMap<>();
+        final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
+            @Override
+            public Resource getResource(String path) {
+                Resource resource = repository.get(path);
+                if (resource == null && "/test/upload/location".equals(path)) {
+                    resource = new MockRealResource(this, path, "sling:Folder");
+                    repository.put(path, resource);
+                }
+                return resource;
+            }
+
+            @Override
+            public void commit() throws PersistenceException {}
+        };
+        streamedUplodOperation.setFormFieldLimits(16, 24);
+
+        // multi byte characters within the limits are decoded
+        List<Part> partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "./title",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("H\u00e4llo W\u00f6rld".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(
+                        resourceResolver.getResource("/test/upload/location"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsList.iterator());
+        streamedUplodOperation.doRun(request, newResponse("/test/upload/location"), new ArrayList<>());
+        Assert.assertEquals(
+                "H\u00e4llo W\u00f6rld",
+                repository.get("/test/upload/location").getValueMap().get("title"));
+
+        // the total of the fields exceeds the limit
+        partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "./a", null, null, 0, new ByteArrayInputStream("0123456789".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./b", null, null, 0, new ByteArrayInputStream("0123456789".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./c", null, null, 0, new ByteArrayInputStream("0123456789".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        request = Builders.newRequestBuilder(resourceResolver.getResource("/test/upload/location"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsList.iterator());
+        try {
+            streamedUplodOperation.doRun(request, newResponse("/test/upload/location"), new ArrayList<>());
+            Assert.fail("expected the request to be rejected");
+        } catch (PayloadTooLargeException e) {
+            // expected
+        }
+
+        // a single field exceeds the limit
+        partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "./a",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("0123456789abcdefg".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        request = Builders.newRequestBuilder(resourceResolver.getResource("/test/upload/location"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsList.iterator());
+        try {
+            streamedUplodOperation.doRun(request, newResponse("/test/upload/location"), new ArrayList<>());
+            Assert.fail("expected the request to be rejected");
+        } catch (PayloadTooLargeException e) {
+            // expected
+        }
+        Assert.assertEquals(3, streamedUplodOperation.getStreamedRequests());
+        Assert.assertEquals(2, streamedUplodOperation.getRejectedRequests());
+    }
+
+    @Test
+    public void testCreateMissingParents() throws PersistenceException, UnsupportedEncodingException {
+        List<Modification> changes = new ArrayList<>();
+        JakartaPostResponse response = newResponse("/test/upload/new/folder");
+
+        List<Part> partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "./jcr:primaryType",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("sling:Folder".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "*",
+                "text/plain",
+                "data.txt",
+                4,
+                new ByteArrayInputStream("test".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        final Map<String, Resource> repository = new HashMap<>();
+        final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
+            @Override
+            public Resource getResource(String path) {
+                Resource resource = repository.get(path);
+                if (resource == null && ("/".equals(path) || "/test".equals(path) || "/test/upload".equals(path))) {
+                    resource = new MockRealResource(this, path, "sling:Folder");
+                    repository.put(path, resource);
+                }
+                return resource;
+            }
+
+            @Override
+            public Resource create(Resource resource, String s, Map<String, Object> map) throws PersistenceException {
+                Resource newResource = new MockRealResource(
+                        this, resource.getPath() + "/" + s, (String) map.get("jcr:primaryType"), map);
+                repository.put(newResource.getPath(), newResource);
+                return newResource;
+            }
+
+            @Override
+            public void commit() throws PersistenceException {}
+        };
+
+        SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(
+                        resourceResolver.getResource("/test/upload"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsList.iterator());
+        streamedUplodOperation.doRun(request, response, changes);
+
+        Assert.assertTrue(response.isCreateRequest());
+        Assert.assertNotNull(repository.get("/test/upload/new"));
+        Assert.assertEquals(
+                "sling:Folder", repository.get("/test/upload/new/folder").getResourceType());
+        Assert.assertNotNull(repository.get("/test/upload/new/folder/data.txt/jcr:content"));
+        List<String> created = new ArrayList<>();
+        for (Modification m : changes) {
+            if (m.getType() == ModificationType.CREATE) {
+                created.add(m.getSource());
+            }
+        }
+        Assert.assertTrue(created.contains("/test/upload/new"));
+        Assert.assertTrue(created.contains("/test/upload/new/folder"));
+    }
+
+    @Test
+    public void testMoveCopyAndOrderFields() throws PersistenceException, UnsupportedEncodingException {
+        List<Modification> changes = new ArrayList<>();
+        JakartaPostResponse response = newResponse("/test/upload");
+
+        List<Part> partsList = new ArrayList<>();
+        partsList.add(new MockPart(
+                "./moved@MoveFrom",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("/test/source/a".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "*",
+                "text/plain",
+                "data.txt",
+                4,
+                new ByteArrayInputStream("test".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                "./copied@CopyFrom",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("/test/source/b".getBytes("UTF-8")),
+                Collections.EMPTY_MAP));
+        partsList.add(new MockPart(
+                ":order", null, null, 0, new ByteArrayInputStream("last".getBytes("UTF-8")), Collections.EMPTY_MAP));
+        final Map<String, Resource> repository = new HashMap<>();
+        final ResourceResolver resourceResolver = new MockResourceResolver() {
+            @Override
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return null;
+            }
+
+            @Override
+            public Resource getResource(String path) {
+                Resource resource = repository.get(path);
+                if (resource == null
+                        && ("/".equals(path)
+                                || "/test".equals(path)
+                                || "/test/upload".equals(path)
+                                || path.startsWith("/test/source"))) {
+                    resource = new MockRealResource(this, path, "sling:Folder");
+                    repository.put(path, resource);
+                }
+                return resource;
+            }
+
+            @Override
+            public Resource create(Resource resource, String s, Map<String, Object> map) throws PersistenceException {
+                Resource newResource = new MockRealResource(
+                        this, resource.getPath() + "/" + s, (String) map.get("jcr:primaryType"), map);
+                repository.put(newResource.getPath(), newResource);
+                return newResource;
+            }
+
+            @Override
+            public boolean orderBefore(Resource parent, String name, String followingSiblingName) {
+                return true;
+            }
+
+            @Override
+            public void commit() throws PersistenceException {}
+        };
+
+        SlingJakartaHttpServletRequest request = Builders.newRequestBuilder(
+                        resourceResolver.getResource("/test/upload"))
+                .buildJakartaRequest();
+        request.setAttribute("request-parts-iterator", partsList.iterator());
+        streamedUplodOperation.doRun(request, response, changes);
+
+        List<String> moved = new ArrayList<>();
+        List<String> copied = new ArrayList<>();
+        List<String> ordered = new ArrayList<>();
+        for (Modification m : changes) {
+            if (m.getType() == ModificationType.MOVE) {
+                moved.add(m.getSource() + ">" + m.getDestination());
+            } else if (m.getType() == ModificationType.COPY) {
+                copied.add(m.getSource() + ">" + m.getDestination());
+            } else if (m.getType() == ModificationType.ORDER) {
+                ordered.add(m.getSource());
+            }
+        }
+        Assert.assertEquals(Collections.singletonList("/test/source/a>/test/upload/moved"), moved);
+        Assert.assertEquals(Collections.singletonList("/test/source/b>/test/upload/copied"), copied);
+        Assert.assertEquals(Collections.singletonList("/test/upload"), ordered);
+        Assert.assertNotNull(repository.get("/test/upload/data.txt/jcr:content"));
+    }
+
+    private JakartaJSONResponse newResponse(String path) {
+        JakartaJSONResponse response = new JakartaJSONResponse();
+        response.setPath(path);
+        return response;
+    }
+
+    @Test
+    public void testContentLength() {
+        Assert.assertEquals(12, StreamedUploadOperation.getContentLength(part(mapOf("Content-Length", " 12 "))));
+        Assert.assertEquals(-1, StreamedUploadOperation.getContentLength(part(mapOf("Content-Length", "12abc"))));
+        Assert.assertEquals(-1, StreamedUploadOperation.getContentLength(part(mapOf("Content-Length", "-1"))));
+        Assert.assertEquals(-1, StreamedUploadOperation.getContentLength(part(Collections.emptyMap())));
+    }
+
+    @Test
+    public void testFormFieldInvalidContentLength() throws IOException {
+        final FormFieldReader reader = new FormFieldReader(16, 24);
+        final Part field = new MockPart(
+                "./title",
+                null,
+                null,
+                0,
+                new ByteArrayInputStream("value".getBytes(StandardCharsets.UTF_8)),
+                mapOf("Content-Length", "invalid"));
+        Assert.assertEquals("value", reader.read(field));
+        try {
+            reader.read(new MockPart(
+                    "./text", null, null, 0, new ByteArrayInputStream(new byte[0]), mapOf("Content-Length", "17")));
+            Assert.fail("expected the declared length to be rejected");
+        } catch (PayloadTooLargeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBufferedPartWrite() throws IOException {
+        final StreamedUploadOperation.BufferedPart buffered = new StreamedUploadOperation.BufferedPart(
+                part(Collections.emptyMap()),
+                "head".getBytes(StandardCharsets.UTF_8),
+                new ByteArrayInputStream(" and rest".getBytes(StandardCharsets.UTF_8)));
+        final File file = File.createTempFile("buffered", ".txt");
+        try {
+            buffered.write(file.getAbsolutePath());
+            Assert.assertEquals("head and rest", FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Part part(final Map<String, Object> headers) {
+        return new MockPart("test.txt", "text/plain", "test.txt", -1, new ByteArrayInputStream(new byte[0]), headers);
+    }
+
     private Map<String, Object> mapOf(String... s) {
         Map<String, Object> m = new HashMap<>();
         for (int i = 0; i < s.length; i += 2) {
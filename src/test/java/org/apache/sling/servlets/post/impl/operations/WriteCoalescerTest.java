@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestParameterMap;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
+import org.apache.sling.servlets.post.JakartaHtmlResponse;
+import org.apache.sling.servlets.post.JakartaPostResponse;
+import org.apache.sling.servlets.post.SlingJakartaPostProcessor;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class WriteCoalescerTest {
+
+    @Test
+    public void testMerge() {
+        final Map<String, String[]> first = new LinkedHashMap<>();
+        first.put("count", new String[] {"1"});
+        first.put("tags", new String[] {"a", "b"});
+        first.put("members", new String[] {"+x"});
+        first.put("members@Patch", new String[] {"true"});
+        final Map<String, String[]> second = new LinkedHashMap<>();
+        second.put("count", new String[] {"2"});
+        second.put("count@TypeHint", new String[] {"Long"});
+        second.put("tags", new String[] {"+c", "-a"});
+        second.put("tags@Patch", new String[] {"true"});
+        second.put("members", new String[] {"+y", "-x"});
+        second.put("members@Patch", new String[] {"true"});
+
+        final Map<String, String[]> merged = WriteCoalescer.merge(Arrays.asList(first, second));
+        Assert.assertArrayEquals(new String[] {"2"}, merged.get("count"));
+        Assert.assertArrayEquals(new String[] {"Long"}, merged.get("count@TypeHint"));
+        // patch applied to the values set before
+        Assert.assertArrayEquals(new String[] {"b", "c"}, merged.get("tags"));
+        Assert.assertNull(merged.get("tags@Patch"));
+        // patches appended
+        Assert.assertArrayEquals(new String[] {"+x", "+y", "-x"}, merged.get("members"));
+        Assert.assertArrayEquals(new String[] {"true"}, merged.get("members@Patch"));
+    }
+
+    @Test
+    public void testAccepts() {
+        final WriteCoalescer coalescer =
+                new WriteCoalescer(new ModifyOperation(), Pattern.compile("/content/counters/.*"), 0);
+        Assert.assertTrue(coalescer.accepts(request("/content/counters/a", "count", "1")));
+        Assert.assertTrue(coalescer.accepts(request("/content/counters/a", "tags@Patch", "true")));
+        Assert.assertFalse(coalescer.accepts(request("/content/other", "count", "1")));
+        Assert.assertFalse(coalescer.accepts(request("/content/counters/*", "count", "1")));
+        Assert.assertFalse(coalescer.accepts(request("/content/counters/a", "count@Delete", "")));
+        Assert.assertFalse(coalescer.accepts(request("/content/counters/a", SlingPostConstants.RP_ORDER, "first")));
+    }
+
+    @Test
+    public void testSharedOutcome() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicReference<String> count = new AtomicReference<>();
+        final ModifyOperation operation = Mockito.mock(ModifyOperation.class);
+        Mockito.doAnswer(invocation -> {
+                    runs.incrementAndGet();
+                    final SlingJakartaHttpServletRequest merged = invocation.getArgument(0);
+                    final JakartaPostResponse response = invocation.getArgument(1);
+                    count.set(merged.getParameter("count"));
+                    response.setPath("/content/counters/a");
+                    response.onModified("/content/counters/a/count=" + merged.getParameter("count"));
+                    return null;
+                })
+                .when(operation)
+                .run(Mockito.any(), Mockito.any(), Mockito.any());
+        final WriteCoalescer coalescer = new WriteCoalescer(operation, Pattern.compile("/content/counters/.*"), 500);
+
+        final JakartaHtmlResponse first = new JakartaHtmlResponse();
+        final CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+            try {
+                coalescer.run(request("/content/counters/a", "count", "1"), first, new SlingJakartaPostProcessor[0]);
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        final JakartaHtmlResponse second = new JakartaHtmlResponse();
+        coalescer.run(request("/content/counters/a", "count", "2"), second, new SlingJakartaPostProcessor[0]);
+        leader.get();
+
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals("2", count.get());
+        Assert.assertEquals("/content/counters/a", first.getPath());
+        Assert.assertEquals("/content/counters/a", second.getPath());
+    }
+
+    @Test
+    public void testFailureBeforeRun() throws Exception {
+        final ModifyOperation operation = Mockito.mock(ModifyOperation.class);
+        final WriteCoalescer coalescer = new WriteCoalescer(operation, Pattern.compile("/content/counters/.*"), 500);
+
+        // the parameters of the first request fail when merging the batch
+        final AtomicInteger calls = new AtomicInteger();
+        final SlingJakartaHttpServletRequest failing =
+                new SlingJakartaHttpServletRequestWrapper(request("/content/counters/a", "count", "1")) {
+                    @Override
+                    public RequestParameterMap getRequestParameterMap() {
+                        if (calls.incrementAndGet() > 1) {
+                            throw new IllegalStateException("failed");
+                        }
+                        return super.getRequestParameterMap();
+                    }
+                };
+        final CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+            try {
+                coalescer.run(failing, new JakartaHtmlResponse(), new SlingJakartaPostProcessor[0]);
+            } catch (final PersistenceException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        try {
+            coalescer.run(
+                    request("/content/counters/a", "count", "2"),
+                    new JakartaHtmlResponse(),
+                    new SlingJakartaPostProcessor[0]);
+            Assert.fail("expected the failure of the batch");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        try {
+            leader.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the failure of the batch");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals("failed", e.getCause().getMessage());
+        }
+        Mockito.verify(operation, Mockito.never()).run(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    private static SlingJakartaHttpServletRequest request(final String path, final String name, final String value) {
+        final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.getUserID()).thenReturn("editor");
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn(path);
+        Mockito.when(resource.getResourceResolver()).thenReturn(resolver);
+        return Builders.newRequestBuilder(resource).withParameter(name, value).buildJakartaRequest();
+    }
+}